@@ -0,0 +1,422 @@
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compressed binary snapshot of a graph. Vertices are numbered in name order
+ * and every neighbour list is stored sorted and gap encoded with varints: the
+ * degree, the first neighbour relative to the vertex itself, then the
+ * distance to the previous neighbour minus one. An offset index locates the
+ * list and the name of every vertex, so one list can be read without
+ * decoding the rest. Layout, big-endian:
+ *
+ * <pre>
+ * 0  int  magic "SNG1"
+ * 4  int  number of vertices n
+ * 8  long number of edges
+ * 16 long position of the name index, n + 1 offsets into the name data
+ * 24 long position of the name data, UTF-8
+ * 32 long position of the adjacency index, n + 1 offsets into the lists
+ * 40 long position of the adjacency lists
+ * </pre>
+ *
+ * @author Zhaoyi
+ */
+public class AdjacencyFile implements Closeable {
+	public static final String EXTENSION = ".sng";
+
+	static final int MAGIC = 0x534E4731;
+	static final int HEADER = 48;
+
+	private FileChannel channel;
+	private String[] names;
+	private long[] index;
+	private long lists;
+	private long edges;
+
+	/**
+	 * Open a file for random access, reading only its indexes and names
+	 *
+	 * @param file - file
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	public AdjacencyFile(File file) throws IOException {
+		super();
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = read(0, HEADER);
+			int n = checkHeader(header);
+			edges = header.getLong(8);
+			long nameIndex = header.getLong(16);
+			long nameData = header.getLong(24);
+			long adjIndex = header.getLong(32);
+			lists = header.getLong(40);
+
+			long[] offsets = readLongs(nameIndex, n + 1);
+			ByteBuffer data = read(nameData, (int) offsets[n]);
+			names = new String[n];
+			for (int v = 0; v < n; v++)
+				names[v] = new String(data.array(), (int) offsets[v],
+						(int) (offsets[v + 1] - offsets[v]),
+						StandardCharsets.UTF_8);
+			index = readLongs(adjIndex, n + 1);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Write a snapshot of a graph
+	 *
+	 * @param g    - graph
+	 * @param file - file to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Graph g, File file) throws IOException {
+		write(CsrGraph.of(g), file);
+	}
+
+	/**
+	 * Write a snapshot of a graph
+	 *
+	 * @param g    - graph
+	 * @param file - file to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(CsrGraph g, File file) throws IOException {
+		try (OutputStream out = new FileOutputStream(file)) {
+			write(g, out);
+		}
+	}
+
+	/**
+	 * Write a snapshot of a graph to a stream, leaving it open
+	 *
+	 * @param g      - graph
+	 * @param stream - output
+	 * @throws IOException if the output cannot be written
+	 */
+	public static void write(CsrGraph g, OutputStream stream)
+			throws IOException {
+		int n = g.order();
+
+		// renumber vertices in name order
+		Integer[] order = new Integer[n];
+		for (int v = 0; v < n; v++)
+			order[v] = v;
+		String[] names = new String[n];
+		for (int v = 0; v < n; v++)
+			names[v] = g.name(v);
+		Arrays.sort(order, (a, b) -> names[a].compareTo(names[b]));
+		int[] rank = new int[n];
+		for (int i = 0; i < n; i++)
+			rank[order[i]] = i;
+
+		// names
+		byte[][] encoded = new byte[n][];
+		long[] nameOffsets = new long[n + 1];
+		for (int i = 0; i < n; i++) {
+			encoded[i] = names[order[i]].getBytes(StandardCharsets.UTF_8);
+			nameOffsets[i + 1] = nameOffsets[i] + encoded[i].length;
+		}
+
+		// gap encoded neighbour lists
+		Varints out = new Varints();
+		long[] adjOffsets = new long[n + 1];
+		int[] list = new int[16];
+		for (int i = 0; i < n; i++) {
+			int v = order[i];
+			int degree = g.degree(v);
+			if (list.length < degree)
+				list = new int[Math.max(degree, list.length * 2)];
+			for (int k = 0; k < degree; k++)
+				list[k] = rank[g.targets[g.offsets[v] + k]];
+			Arrays.sort(list, 0, degree);
+			out.write(degree);
+			for (int k = 0; k < degree; k++)
+				out.write(k == 0 ? zigzag(list[0] - i) : list[k] - list[k - 1] - 1);
+			adjOffsets[i + 1] = out.size;
+		}
+
+		long nameIndex = HEADER;
+		long nameData = nameIndex + 8L * (n + 1);
+		long adjIndex = nameData + nameOffsets[n];
+		long adjData = adjIndex + 8L * (n + 1);
+		DataOutputStream dos = new DataOutputStream(
+				new BufferedOutputStream(stream, 1 << 16));
+		dos.writeInt(MAGIC);
+		dos.writeInt(n);
+		dos.writeLong(g.size());
+		dos.writeLong(nameIndex);
+		dos.writeLong(nameData);
+		dos.writeLong(adjIndex);
+		dos.writeLong(adjData);
+		for (long offset : nameOffsets)
+			dos.writeLong(offset);
+		for (byte[] name : encoded)
+			dos.write(name);
+		for (long offset : adjOffsets)
+			dos.writeLong(offset);
+		dos.write(out.buf, 0, out.size);
+		dos.flush();
+	}
+
+	/**
+	 * Read a whole snapshot into memory
+	 *
+	 * @param file - file
+	 * @return graph
+	 * @throws IOException if the file cannot be read or is not a snapshot
+	 */
+	public static CsrGraph read(File file) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		int n = checkHeader(buf);
+		long nameIndex = buf.getLong(16);
+		int nameData = (int) buf.getLong(24);
+		buf.position((int) buf.getLong(40));
+
+		// names go from the file to the dictionary without strings
+		NameDictionary names = new NameDictionary(n,
+				(int) buf.getLong((int) nameIndex + 8 * n));
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[(int) (buf.getLong(8) * 2)];
+		for (int v = 0; v < n; v++) {
+			int from = (int) buf.getLong((int) nameIndex + 8 * v);
+			int to = (int) buf.getLong((int) nameIndex + 8 * (v + 1));
+			if (names.add(buf.array(), nameData + from, to - from) != v)
+				throw new IOException("duplicate name in " + file.getName());
+			offsets[v + 1] = decode(buf, v, targets, offsets[v]);
+		}
+		return new CsrGraph(names, offsets, targets);
+	}
+
+	/**
+	 * Add every vertex and edge of a snapshot to a graph
+	 *
+	 * @param snapshot - snapshot
+	 * @param g        - graph to add to
+	 */
+	public static void addTo(CsrGraph snapshot, Graph g) {
+		String[] names = new String[snapshot.order()];
+		for (int v = 0; v < names.length; v++)
+			g.addVertex(names[v] = snapshot.name(v));
+		for (int v = 0; v < names.length; v++)
+			for (int k = snapshot.offsets[v]; k < snapshot.offsets[v + 1]; k++)
+				if (v < snapshot.targets[k])
+					g.addEdge(names[v], names[snapshot.targets[k]]);
+	}
+
+	/**
+	 * Check if a file is named as a snapshot
+	 *
+	 * @param file - file
+	 * @return true if the file has the snapshot extension
+	 */
+	public static boolean isSnapshot(File file) {
+		return file.getName().toLowerCase().endsWith(EXTENSION);
+	}
+
+	/**
+	 * Return number of vertices
+	 *
+	 * @return number of vertices
+	 */
+	public int order() {
+		return names.length;
+	}
+
+	/**
+	 * Return number of edges
+	 *
+	 * @return number of edges
+	 */
+	public long size() {
+		return edges;
+	}
+
+	/**
+	 * Find the id of a vertex
+	 *
+	 * @param str - vertex name
+	 * @return vertex id or -1 if not found
+	 */
+	public int id(String str) {
+		int v = Arrays.binarySearch(names, str);
+		return v < 0 ? -1 : v;
+	}
+
+	/**
+	 * Find the name of a vertex
+	 *
+	 * @param v - vertex id
+	 * @return vertex name
+	 */
+	public String name(int v) {
+		return names[v];
+	}
+
+	/**
+	 * Read the neighbours of one vertex
+	 *
+	 * @param v - vertex id
+	 * @return neighbour ids, ascending
+	 * @throws IOException if the file cannot be read
+	 */
+	public int[] neighbours(int v) throws IOException {
+		ByteBuffer buf = read(lists + index[v], (int) (index[v + 1] - index[v]));
+		int degree = readVarint(buf);
+		buf.rewind();
+		int[] targets = new int[degree];
+		decode(buf, v, targets, 0);
+		return targets;
+	}
+
+	/**
+	 * Read the neighbours of one vertex
+	 *
+	 * @param str - vertex name
+	 * @return neighbour names or an empty list if the vertex is not in graph
+	 * @throws IOException if the file cannot be read
+	 */
+	public List<String> getAdjacent(String str) throws IOException {
+		int v = id(str);
+		List<String> adjacent = new ArrayList<String>();
+		if (v != -1)
+			for (int u : neighbours(v))
+				adjacent.add(names[u]);
+		return adjacent;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Decode the neighbour list at the position of a buffer
+	 *
+	 * @param buf     - buffer positioned at the list
+	 * @param v       - vertex id
+	 * @param targets - array to decode into
+	 * @param k       - index to decode into
+	 * @return index after the last neighbour
+	 */
+	static int decode(ByteBuffer buf, int v, int[] targets, int k) {
+		int degree = readVarint(buf);
+		int prev = 0;
+		for (int i = 0; i < degree; i++) {
+			int x = readVarint(buf);
+			prev = i == 0 ? v + ((x >>> 1) ^ -(x & 1)) : prev + x + 1;
+			targets[k++] = prev;
+		}
+		return k;
+	}
+
+	/**
+	 * Read an unsigned varint
+	 *
+	 * @param buf - buffer
+	 * @return value
+	 */
+	static int readVarint(ByteBuffer buf) {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = buf.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	/**
+	 * Check the header of a snapshot
+	 *
+	 * @param header - buffer starting with the header
+	 * @return number of vertices
+	 * @throws IOException if this is not a snapshot
+	 */
+	static int checkHeader(ByteBuffer header) throws IOException {
+		if (header.limit() < HEADER || header.getInt(0) != MAGIC)
+			throw new IOException("not a graph snapshot");
+		return header.getInt(4);
+	}
+
+	/**
+	 * Map a signed number to an unsigned one, small magnitudes first
+	 *
+	 * @param x - number
+	 * @return zigzag encoding
+	 */
+	private static int zigzag(int x) {
+		return (x << 1) ^ (x >> 31);
+	}
+
+	/**
+	 * Read bytes at a position of the file
+	 *
+	 * @param position - position
+	 * @param length   - number of bytes
+	 * @return buffer holding the bytes
+	 * @throws IOException if the file is too short
+	 */
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while (buf.hasRemaining())
+			if (channel.read(buf, position + buf.position()) < 0)
+				throw new IOException("truncated graph snapshot");
+		buf.flip();
+		return buf;
+	}
+
+	/**
+	 * Read longs at a position of the file
+	 *
+	 * @param position - position
+	 * @param count    - number of longs
+	 * @return longs
+	 * @throws IOException if the file is too short
+	 */
+	private long[] readLongs(long position, int count) throws IOException {
+		long[] longs = new long[count];
+		read(position, 8 * count).asLongBuffer().get(longs);
+		return longs;
+	}
+
+	/**
+	 * Growable buffer of varints
+	 */
+	private static class Varints {
+		byte[] buf = new byte[1 << 12];
+		int size;
+
+		/**
+		 * Append an unsigned varint
+		 *
+		 * @param x - value
+		 */
+		void write(int x) {
+			if (size + 5 > buf.length)
+				buf = Arrays.copyOf(buf, buf.length * 2);
+			while ((x & ~0x7F) != 0) {
+				buf[size++] = (byte) ((x & 0x7F) | 0x80);
+				x >>>= 7;
+			}
+			buf[size++] = (byte) x;
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AnalyticsTest {
+	private SocialNetwork sn;
+
+	// path A-B-C-D-E, triangle F-G-H, isolated I
+	private void addAll() {
+		sn.addEdge("A", "B");
+		sn.addEdge("B", "C");
+		sn.addEdge("C", "D");
+		sn.addEdge("D", "E");
+		sn.addEdge("F", "G");
+		sn.addEdge("G", "H");
+		sn.addEdge("H", "F");
+		sn.addVertex("I");
+	}
+
+	@BeforeEach
+	public void setup() {
+		sn = new SocialNetwork();
+		addAll();
+	}
+
+	@Test
+	public void test01_separation_exact() {
+		SeparationStats stats = SeparationStats.exact(CsrGraph.of(sn));
+		// ordered pairs: path 8/6/4/2 at 1..4, triangle 6 at 1
+		assertArrayEquals(new long[] { 0, 14, 6, 4, 2 }, stats.histogram());
+		assertEquals(4, stats.diameter());
+		assertEquals(4, stats.eccentricity("A"));
+		assertEquals(2, stats.eccentricity("C"));
+		assertEquals(1, stats.eccentricity("G"));
+		assertEquals(0, stats.eccentricity("I"));
+		assertEquals((14 + 12 + 12 + 8) / 26.0, stats.averageDistance(),
+				1e-9);
+	}
+
+	@Test
+	public void test02_separation_sampled() {
+		for (int i = 0; i < 200; i++)
+			sn.addEdge("E", "x" + i);
+		CsrGraph g = CsrGraph.of(sn);
+		SeparationStats stats = SeparationStats.sampled(g, 70, 42);
+		assertEquals(70, stats.sources());
+		assertEquals(false, stats.isExact());
+		SeparationStats exact = SeparationStats.exact(g);
+		assertEquals(5, exact.diameter());
+		assertEquals(true, stats.diameter() <= exact.diameter());
+	}
+
+	@Test
+	public void test03_betweenness() {
+		Centrality c = Centrality.betweenness(CsrGraph.of(sn));
+		assertEquals(0, c.score("A"), 1e-9);
+		assertEquals(3, c.score("B"), 1e-9);
+		assertEquals(4, c.score("C"), 1e-9);
+		assertEquals(3, c.score("D"), 1e-9);
+		assertEquals(0, c.score("G"), 1e-9);
+		assertEquals(Arrays.asList("C"), c.top(1));
+		assertEquals(1, c.normalized("C"), 1e-9);
+	}
+
+	@Test
+	public void test04_pagerank() {
+		CsrGraph g = CsrGraph.of(sn);
+		Centrality c = Centrality.pageRank(g);
+		double sum = 0;
+		for (int v = 0; v < g.order(); v++)
+			sum += c.score(v);
+		assertEquals(1, sum, 1e-6);
+		assertEquals(true, c.score("A") < c.score("B"));
+		assertEquals(c.score("F"), c.score("G"), 1e-9);
+		assertEquals(3, c.top(3).size());
+	}
+
+	@Test
+	public void test05_louvain() {
+		// two cliques joined by one edge
+		for (String a : new String[] { "p", "q", "r", "s" })
+			for (String b : new String[] { "p", "q", "r", "s" })
+				if (a.compareTo(b) < 0) {
+					sn.addEdge(a, b);
+					sn.addEdge(a.toUpperCase() + 1, b.toUpperCase() + 1);
+				}
+		sn.addEdge("p", "P1");
+		Communities c = Communities.louvain(CsrGraph.of(sn));
+		assertEquals(c.community("p"), c.community("s"));
+		assertEquals(c.community("P1"), c.community("S1"));
+		assertNotEquals(c.community("p"), c.community("P1"));
+		assertEquals(c.community("F"), c.community("H"));
+		assertNotEquals(c.community("F"), c.community("I"));
+		assertEquals(true, c.modularity() > 0.5);
+		assertEquals(1, c.sizes()[c.count() - 1]);
+	}
+
+	@Test
+	public void test06_label_propagation() {
+		Communities c = Communities.labelPropagation(CsrGraph.of(sn), 20, 7);
+		assertEquals(c.community("F"), c.community("G"));
+		assertEquals(c.community("F"), c.community("H"));
+		assertNotEquals(c.community("F"), c.community("A"));
+		assertNotEquals(c.community("I"), c.community("A"));
+		int total = 0;
+		for (int size : c.sizes())
+			total += size;
+		assertEquals(9, total);
+	}
+
+	@Test
+	public void test07_pregel() {
+		Random random = new Random(3);
+		for (int i = 0; i < 300; i++)
+			sn.addEdge("p" + random.nextInt(200), "p" + random.nextInt(200));
+		CsrGraph g = CsrGraph.of(sn);
+
+		double[] labels = Pregel.components(g);
+		assertEquals(sn.components(),
+				Arrays.stream(labels).distinct().count());
+		for (int v = 0; v < g.order(); v++)
+			for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++)
+				assertEquals(labels[v], labels[g.targets[k]]);
+
+		int a = g.id("A");
+		double[] dist = Pregel.distances(g, a);
+		assertEquals(4, dist[g.id("E")]);
+		assertEquals(Double.POSITIVE_INFINITY, dist[g.id("I")]);
+		int p = g.id("p0");
+		double[] hops = Pregel.distances(g, p);
+		for (int v = 0; v < g.order(); v++)
+			assertEquals(sn.connection("p0", g.name(v)).size() - 1.0,
+					Double.isInfinite(hops[v]) ? -1 : hops[v]);
+
+		double[] rank = Pregel.pageRank(g, 0.85, 30);
+		Centrality expected = Centrality.pageRank(g, 0.85, 0, 30);
+		for (int v = 0; v < g.order(); v++)
+			assertEquals(expected.score(v), rank[v], 1e-12);
+	}
+
+	@Test
+	public void test08_generator() {
+		GraphGenerator generator = new GraphGenerator(5000, 40000, 11)
+				.communities(20).mixing(0.2);
+		CsrGraph g = generator.toCsr();
+		assertEquals(5000, g.order());
+		assertEquals(40000, g.size());
+		assertArrayEquals(g.targets,
+				new GraphGenerator(5000, 40000, 11).communities(20).mixing(0.2)
+						.toCsr().targets);
+
+		// heavy tail and mostly friendships inside communities
+		int max = 0;
+		long inside = 0;
+		for (int v = 0; v < g.order(); v++) {
+			max = Math.max(max, g.degree(v));
+			for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++)
+				if (generator.community(v) == generator
+						.community(g.targets[k]))
+					inside++;
+		}
+		assertEquals(true, max > 10 * 16);
+		assertEquals(0.8, inside / (double) g.targets.length, 0.05);
+
+		SocialNetwork generated = new SocialNetwork();
+		generator.addTo(generated);
+		assertEquals(40000, generated.size());
+		assertEquals(g.degree(g.id("p0")), generated.degree("p0"));
+
+		// more friendships than the communities hold
+		generator = new GraphGenerator(100, 1000, 1).communities(30).mixing(0);
+		assertEquals(1000, generator.toCsr().size());
+	}
+
+	@Test
+	public void test09_bfs() {
+		CsrGraph small = CsrGraph.of(sn);
+		Bfs bfs = new Bfs(small);
+		assertEquals(sn.connection("A", "E"), bfs.connection("A", "E"));
+		assertEquals(0, bfs.connection("A", "F").size());
+		int[] abc = { small.id("A"), small.id("B"), small.id("C") };
+		Arrays.sort(abc);
+		assertArrayEquals(abc, bfs.within(small.id("A"), 2));
+		assertEquals(sn.components(), Bfs.count(small));
+
+		// large enough to search in parallel and bottom up
+		GraphGenerator generator = new GraphGenerator(20000, 200000, 5);
+		SocialNetwork large = new SocialNetwork();
+		generator.addTo(large);
+		large.addVertex("alone");
+		CsrGraph g = large.snapshot();
+		assertEquals(large.size(), g.size());
+		bfs = new Bfs(g);
+		int source = g.id("p0");
+		int[] distance = distances(g, source);
+		for (int t = 1; t < 20000; t += 997) {
+			int[] path = bfs.path(source, t);
+			assertEquals(distance[t] + 1, path.length);
+			for (int i = 1; i < path.length; i++)
+				assertEquals(true, Arrays.binarySearch(g.targets,
+						g.offsets[path[i - 1]], g.offsets[path[i - 1] + 1],
+						path[i]) >= 0);
+		}
+		bfs.search(source, -1, Integer.MAX_VALUE);
+		assertEquals(true, bfs.bottomUpLevels() > 0);
+		int[] within = bfs.within(source, 2);
+		int expected = 0;
+		for (int d : distance)
+			if (d >= 0 && d <= 2)
+				expected++;
+		assertEquals(expected, within.length);
+		for (int v : within)
+			assertEquals(true, distance[v] <= 2);
+
+		QueryCache cache = new QueryCache(large, 4, QueryCache.Policy.LRU);
+		assertEquals(large.components(), cache.components());
+		assertEquals(large.connection("p0", "p7").size(),
+				cache.connection("p0", "p7").size());
+		assertEquals(expected, cache.within("p0", 2).size());
+		assertEquals(0, cache.within("nobody", 2).size());
+		assertEquals(List.of(), cache.connection("nobody", "nobody"));
+		assertEquals(List.of("p0"), cache.connection("p0", "p0"));
+	}
+
+	// plain queue search, -1 for unreachable vertices
+	private static int[] distances(CsrGraph g, int source) {
+		int[] distance = new int[g.order()];
+		Arrays.fill(distance, -1);
+		int[] queue = new int[g.order()];
+		int head = 0, tail = 0;
+		queue[tail++] = source;
+		distance[source] = 0;
+		while (head < tail) {
+			int v = queue[head++];
+			for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++)
+				if (distance[g.targets[k]] == -1) {
+					distance[g.targets[k]] = distance[v] + 1;
+					queue[tail++] = g.targets[k];
+				}
+		}
+		return distance;
+	}
+
+	@Test
+	public void test10_hyperanf() {
+		HyperAnf small = HyperAnf.compute(CsrGraph.of(sn), 10, 100, 1);
+		assertEquals(4, small.hops());
+		assertEquals(1, small.reach("A", 0), 0.1);
+		assertEquals(3, small.reach("C", 1), 0.1);
+		assertEquals(5, small.reach("A", 9), 0.1);
+		assertEquals(3, small.reach("H", 1), 0.1);
+		assertEquals(1, small.reach("I", 4), 0.1);
+		assertEquals(-1, small.reach("nobody", 1), 0);
+
+		GraphGenerator generator = new GraphGenerator(5000, 25000, 3);
+		CsrGraph g = generator.toCsr();
+		HyperAnf anf = HyperAnf.compute(g, 8, 100, 7);
+		double error = 0;
+		double pairs = 0;
+		for (int v = 0; v < g.order(); v++) {
+			int within = 0;
+			for (int d : distances(g, v))
+				if (d >= 0 && d <= 2)
+					within++;
+			error += Math.abs(anf.reach(v, 2) - within) / within;
+			pairs += within;
+		}
+		// within a few standard errors on average and in total
+		assertEquals(0, error / g.order(), 2 * anf.relativeError());
+		assertEquals(1, anf.neighbourhoodFunction()[2] / pairs,
+				anf.relativeError());
+		assertEquals(g.order(), anf.reach(0, anf.hops()),
+				3 * anf.relativeError() * g.order());
+		assertEquals(2L * g.order() * 256, anf.memory());
+	}
+
+	@Test
+	public void test11_workspace() {
+		Workspace ws = new Workspace();
+		ws.add("last week", sn);
+		sn.addEdge("E", "F"); // merges the path and the triangle
+		sn.removeEdge("B", "C"); // splits off A-B
+		sn.addEdge("J", "K"); // new component
+		sn.removeVertex("I");
+		ws.add("this week", sn);
+
+		assertEquals(9, ws.order("last week"));
+		assertEquals(10, ws.order("this week"));
+		assertEquals(4, ws.shared("last week", "this week")); // A, D, G, H
+		Workspace.Diff diff = ws.diff("last week", "this week");
+		assertEquals(Set.of("J", "K"), Set.copyOf(diff.addedPeople()));
+		assertEquals(Arrays.asList("I"), diff.removedPeople());
+		assertEquals(Set.of("E-F", "J-K"), pairs(diff.addedEdges()));
+		assertEquals(Set.of("B-C"), pairs(diff.removedEdges()));
+		assertEquals(Set.of(Set.of("A", "B"), Set.of("C", "D", "E", "F", "G",
+				"H"), Set.of("J", "K")), Set.copyOf(diff.newComponents()));
+		assertEquals(0, ws.diff("this week", "this week").newComponents()
+				.size());
+
+		// the graphs come back out unchanged
+		SocialNetwork copy = new SocialNetwork();
+		AdjacencyFile.addTo(ws.graph("this week"), copy);
+		assertEquals(sn.getAllVertices(), copy.getAllVertices());
+		for (String v : sn.getAllVertices())
+			assertEquals(sn.getAdjacent(v), copy.getAdjacent(v));
+
+		// a small change to a large graph shares almost every list
+		GraphGenerator generator = new GraphGenerator(20000, 100000, 9);
+		SocialNetwork large = new SocialNetwork();
+		generator.addTo(large);
+		ws.add("before", large);
+		long before = ws.memory();
+		large.addEdge("p1", "new");
+		ws.add("after", large);
+		assertEquals(20000 - 1, ws.shared("before", "after"));
+		assertEquals(true, ws.memory() - before < 25 * 20001);
+		diff = ws.diff("before", "after");
+		assertEquals(1, diff.addedEdgeCount());
+		assertEquals(0, diff.removedEdgeCount());
+		assertEquals(1, diff.newComponents().size());
+	}
+
+	private static Set<String> pairs(List<String[]> edges) {
+		Set<String> pairs = new HashSet<String>();
+		for (String[] e : edges)
+			pairs.add(e[0].compareTo(e[1]) < 0 ? e[0] + "-" + e[1]
+					: e[1] + "-" + e[0]);
+		return pairs;
+	}
+}
@@ -0,0 +1,342 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Direction-optimizing breadth-first search over a graph snapshot. The
+ * frontier and the visited vertices are bitsets. A level is expanded top
+ * down, from the frontier to its unvisited neighbours, while the frontier
+ * is small; once the edges out of the frontier outweigh those of the
+ * unvisited vertices, levels are expanded bottom up instead: every
+ * unvisited vertex looks for any neighbour in the frontier and stops at the
+ * first one, which on small-world graphs skips most edges. It goes back to
+ * top down when the frontier becomes small again. Each level is split
+ * across cores by ranges of 64 vertices; top-down claims vertices by an
+ * atomic update of the visited bitset, bottom-up needs none as every range
+ * only writes its own vertices.
+ *
+ * @author Zhaoyi
+ */
+public class Bfs {
+	// top down while the frontier has fewer edges than unvisited / ALPHA,
+	// back from bottom up once it has fewer vertices than all / BETA
+	private static final int ALPHA = 14;
+	private static final int BETA = 24;
+	private static final int PARALLEL = 1 << 14; // vertices worth splitting
+
+	private CsrGraph g;
+	private int n;
+	private int words;
+	private int blocks; // ranges of words searched in parallel
+
+	// result of the latest search
+	private int[] parent; // -1 if not reached
+	private long[] frontier;
+	private AtomicLongArray next;
+	private AtomicLongArray visited;
+	private long[] found; // vertices found by every range in a level
+	private long[] edges; // and their edges
+	private int depth; // levels expanded
+	private int topDown;
+	private int bottomUp;
+
+	/**
+	 * Construct a search over a graph
+	 *
+	 * @param g - graph
+	 */
+	public Bfs(CsrGraph g) {
+		super();
+		this.g = g;
+		n = g.order();
+		words = (n + 63) >>> 6;
+		blocks = n < PARALLEL ? 1
+				: Math.min(words, 8 * ForkJoinPool.getCommonPoolParallelism());
+		parent = new int[n];
+		frontier = new long[words];
+		next = new AtomicLongArray(words);
+		visited = new AtomicLongArray(words);
+		found = new long[blocks];
+		edges = new long[blocks];
+	}
+
+	/**
+	 * Search from a source until a target is reached or a depth is expanded
+	 *
+	 * @param source   - source id
+	 * @param target   - id to stop at, or -1 to search everything
+	 * @param maxDepth - maximum number of levels
+	 * @return this search
+	 */
+	public Bfs search(int source, int target, int maxDepth) {
+		Arrays.fill(parent, -1);
+		Arrays.fill(frontier, 0);
+		for (int w = 0; w < words; w++) {
+			next.set(w, 0);
+			visited.set(w, 0);
+		}
+		depth = topDown = bottomUp = 0;
+		parent[source] = source;
+		frontier[source >>> 6] = 1L << source;
+		visited.set(source >>> 6, 1L << source);
+
+		long unexplored = g.targets.length - g.degree(source); // edges
+		long frontierEdges = g.degree(source);
+		long frontierSize = 1;
+		boolean up = false;
+		while (frontierSize > 0 && depth < maxDepth
+				&& (target == -1 || parent[target] == -1)) {
+			if (!up && frontierEdges > unexplored / ALPHA)
+				up = true;
+			else if (up && frontierSize < n / BETA)
+				up = false;
+			if (up)
+				IntStream.range(0, blocks).parallel().forEach(this::bottomUp);
+			else
+				IntStream.range(0, blocks).parallel().forEach(this::topDown);
+			frontierSize = frontierEdges = 0;
+			for (int b = 0; b < blocks; b++) {
+				frontierSize += found[b];
+				frontierEdges += edges[b];
+			}
+			unexplored -= frontierEdges;
+			for (int w = 0; w < words; w++)
+				frontier[w] = next.getAndSet(w, 0);
+			if (up)
+				bottomUp++;
+			else
+				topDown++;
+			depth++;
+		}
+		return this;
+	}
+
+	/**
+	 * Find a shortest path
+	 *
+	 * @param source - source id
+	 * @param target - target id
+	 * @return ids along the path, empty if not connected
+	 */
+	public int[] path(int source, int target) {
+		search(source, target, Integer.MAX_VALUE);
+		if (parent[target] == -1)
+			return new int[0];
+		int length = 1;
+		for (int v = target; v != source; v = parent[v])
+			length++;
+		int[] path = new int[length];
+		for (int v = target, i = length - 1; i >= 0; v = parent[v], i--)
+			path[i] = v;
+		return path;
+	}
+
+	/**
+	 * Find a shortest path between two named vertices
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @return names along the path, empty if not connected
+	 */
+	public List<String> connection(String str1, String str2) {
+		int s = g.id(str1), t = g.id(str2);
+		if (s == -1 || t == -1)
+			return Collections.emptyList();
+		List<String> path = new ArrayList<String>();
+		for (int v : path(s, t))
+			path.add(g.name(v));
+		return path;
+	}
+
+	/**
+	 * Find the vertices within a number of hops
+	 *
+	 * @param source - source id
+	 * @param k      - maximum number of hops
+	 * @return ids at distance at most k, ascending, the source included
+	 */
+	public int[] within(int source, int k) {
+		search(source, -1, k);
+		int count = 0;
+		for (int w = 0; w < words; w++)
+			count += Long.bitCount(visited.get(w));
+		int[] ids = new int[count];
+		int i = 0;
+		for (int w = 0; w < words; w++)
+			for (long word = visited.get(w); word != 0; word &= word - 1)
+				ids[i++] = w << 6 | Long.numberOfTrailingZeros(word);
+		return ids;
+	}
+
+	/**
+	 * Return the graph searched
+	 *
+	 * @return graph
+	 */
+	public CsrGraph graph() {
+		return g;
+	}
+
+	/**
+	 * Return the parent of a vertex in the latest search
+	 *
+	 * @param v - vertex id
+	 * @return parent, the source for itself, -1 if not reached
+	 */
+	public int parent(int v) {
+		return parent[v];
+	}
+
+	/**
+	 * Return number of levels expanded top down in the latest search
+	 *
+	 * @return number of levels
+	 */
+	public int topDownLevels() {
+		return topDown;
+	}
+
+	/**
+	 * Return number of levels expanded bottom up in the latest search
+	 *
+	 * @return number of levels
+	 */
+	public int bottomUpLevels() {
+		return bottomUp;
+	}
+
+	/**
+	 * Label every vertex with a component: the component of the vertex of
+	 * highest degree, normally the giant one, is found by a
+	 * direction-optimizing search, the small remaining ones by a plain queue
+	 *
+	 * @param g - graph
+	 * @return component of every vertex, numbered from 0
+	 */
+	public static int[] components(CsrGraph g) {
+		int n = g.order();
+		int[] label = new int[n];
+		Arrays.fill(label, -1);
+		if (n == 0)
+			return label;
+		int hub = 0;
+		for (int v = 1; v < n; v++)
+			if (g.degree(v) > g.degree(hub))
+				hub = v;
+		Bfs bfs = new Bfs(g).search(hub, -1, Integer.MAX_VALUE);
+		for (int v = 0; v < n; v++)
+			if (bfs.parent[v] != -1)
+				label[v] = 0;
+
+		int components = 1;
+		int[] queue = new int[n];
+		for (int s = 0; s < n; s++) {
+			if (label[s] != -1)
+				continue;
+			int head = 0, tail = 0;
+			queue[tail++] = s;
+			label[s] = components;
+			while (head < tail) {
+				int v = queue[head++];
+				for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++)
+					if (label[g.targets[k]] == -1) {
+						label[g.targets[k]] = components;
+						queue[tail++] = g.targets[k];
+					}
+			}
+			components++;
+		}
+		return label;
+	}
+
+	/**
+	 * Count the connected components
+	 *
+	 * @param g - graph
+	 * @return number of components
+	 */
+	public static int count(CsrGraph g) {
+		int count = 0;
+		for (int label : components(g))
+			count = Math.max(count, label + 1);
+		return count;
+	}
+
+	/**
+	 * Expand the frontier of a range of words to its unvisited neighbours
+	 *
+	 * @param b - range
+	 */
+	private void topDown(int b) {
+		long found = 0, edges = 0;
+		for (int w = from(b); w < from(b + 1); w++)
+			for (long word = frontier[w]; word != 0; word &= word - 1) {
+				int u = w << 6 | Long.numberOfTrailingZeros(word);
+				for (int k = g.offsets[u]; k < g.offsets[u + 1]; k++) {
+					int v = g.targets[k];
+					long bit = 1L << v;
+					if ((visited.get(v >>> 6) & bit) != 0
+							|| (visited.getAndAccumulate(v >>> 6, bit,
+									(x, y) -> x | y) & bit) != 0)
+						continue; // visited, or claimed by another range
+					parent[v] = u;
+					next.accumulateAndGet(v >>> 6, bit, (x, y) -> x | y);
+					found++;
+					edges += g.degree(v);
+				}
+			}
+		this.found[b] = found;
+		this.edges[b] = edges;
+	}
+
+	/**
+	 * Let the unvisited vertices of a range of words find a parent in the
+	 * frontier
+	 *
+	 * @param b - range
+	 */
+	private void bottomUp(int b) {
+		long found = 0, edges = 0;
+		for (int w = from(b); w < from(b + 1); w++) {
+			long unvisited = ~visited.get(w);
+			if (w == words - 1 && (n & 63) != 0)
+				unvisited &= (1L << (n & 63)) - 1;
+			long discovered = 0;
+			for (; unvisited != 0; unvisited &= unvisited - 1) {
+				int v = w << 6 | Long.numberOfTrailingZeros(unvisited);
+				for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++) {
+					int u = g.targets[k];
+					if ((frontier[u >>> 6] & 1L << u) != 0) {
+						parent[v] = u;
+						discovered |= 1L << v;
+						found++;
+						edges += g.degree(v);
+						break;
+					}
+				}
+			}
+			if (discovered != 0) { // the range owns these words
+				visited.set(w, visited.get(w) | discovered);
+				next.set(w, discovered);
+			}
+		}
+		this.found[b] = found;
+		this.edges[b] = edges;
+	}
+
+	/**
+	 * Find the first word of a range
+	 *
+	 * @param b - range
+	 * @return word index
+	 */
+	private int from(int b) {
+		return (int) ((long) words * b / blocks);
+	}
+}
@@ -0,0 +1,296 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * Centrality scores of every vertex of a graph snapshot: betweenness by
+ * Brandes' algorithm, with sources split across a fork-join pool, and
+ * PageRank by parallel power iteration
+ *
+ * @author Zhaoyi
+ */
+public class Centrality {
+	private CsrGraph g;
+	private double[] scores;
+	private double max; // highest score
+
+	/**
+	 * Construct centrality scores
+	 *
+	 * @param g      - graph
+	 * @param scores - score of every vertex
+	 */
+	private Centrality(CsrGraph g, double[] scores) {
+		super();
+		this.g = g;
+		this.scores = scores;
+		for (double s : scores)
+			max = Math.max(max, s);
+	}
+
+	/**
+	 * Compute exact betweenness centrality
+	 *
+	 * @param g - graph
+	 * @return betweenness of every vertex
+	 */
+	public static Centrality betweenness(CsrGraph g) {
+		int[] sources = new int[g.order()];
+		for (int i = 0; i < sources.length; i++)
+			sources[i] = i;
+		return new Centrality(g, brandes(g, sources, 1));
+	}
+
+	/**
+	 * Approximate betweenness centrality from randomly chosen sources,
+	 * scaled up to estimate the exact values
+	 *
+	 * @param g       - graph
+	 * @param samples - number of sources
+	 * @param seed    - random seed
+	 * @return estimated betweenness of every vertex
+	 */
+	public static Centrality betweenness(CsrGraph g, int samples,
+			long seed) {
+		int n = g.order();
+		if (samples >= n)
+			return betweenness(g);
+		int[] ids = new int[n];
+		for (int i = 0; i < n; i++)
+			ids[i] = i;
+		Random random = new Random(seed);
+		for (int i = 0; i < samples; i++) {
+			int j = i + random.nextInt(n - i);
+			int t = ids[i];
+			ids[i] = ids[j];
+			ids[j] = t;
+		}
+		return new Centrality(g, brandes(g, Arrays.copyOf(ids, samples),
+				(double) n / samples));
+	}
+
+	/**
+	 * Compute PageRank, treating every friendship as links both ways
+	 *
+	 * @param g          - graph
+	 * @param damping    - probability of following a link
+	 * @param tolerance  - stop once the total change is below this
+	 * @param iterations - maximum number of iterations
+	 * @return PageRank of every vertex, summing to 1
+	 */
+	public static Centrality pageRank(CsrGraph g, double damping,
+			double tolerance, int iterations) {
+		int n = g.order();
+		double[] rank = new double[n];
+		double[] next = new double[n];
+		double[] share = new double[n];
+		Arrays.fill(rank, 1.0 / n);
+		for (int it = 0; it < iterations; it++) {
+			double[] r = rank;
+			// rank of people without friends is spread over everyone
+			double dangling = IntStream.range(0, n).parallel().mapToDouble(v -> {
+				int degree = g.degree(v);
+				share[v] = degree == 0 ? 0 : r[v] / degree;
+				return degree == 0 ? r[v] : 0;
+			}).sum();
+			double base = (1 - damping) / n + damping * dangling / n;
+			double[] out = next;
+			double change = IntStream.range(0, n).parallel().mapToDouble(v -> {
+				double sum = 0;
+				for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++)
+					sum += share[g.targets[k]];
+				out[v] = base + damping * sum;
+				return Math.abs(out[v] - r[v]);
+			}).sum();
+			next = rank;
+			rank = out;
+			if (change < tolerance)
+				break;
+		}
+		return new Centrality(g, rank);
+	}
+
+	/**
+	 * Compute PageRank with the usual damping of 0.85
+	 *
+	 * @param g - graph
+	 * @return PageRank of every vertex
+	 */
+	public static Centrality pageRank(CsrGraph g) {
+		return pageRank(g, 0.85, 1e-9, 100);
+	}
+
+	/**
+	 * Run Brandes' algorithm from the given sources in parallel
+	 *
+	 * @param g       - graph
+	 * @param sources - sources
+	 * @param scale   - factor applied to the result
+	 * @return betweenness of every vertex
+	 */
+	private static double[] brandes(CsrGraph g, int[] sources, double scale) {
+		int leaf = Math.max(1, sources.length
+				/ (4 * ForkJoinPool.getCommonPoolParallelism()));
+		double[] scores = ForkJoinPool.commonPool()
+				.invoke(new Brandes(g, sources, 0, sources.length, leaf));
+		for (int v = 0; v < scores.length; v++)
+			scores[v] *= scale / 2; // every path was counted from both ends
+		return scores;
+	}
+
+	/**
+	 * Return the score of a vertex
+	 *
+	 * @param v - vertex id
+	 * @return score
+	 */
+	public double score(int v) {
+		return scores[v];
+	}
+
+	/**
+	 * Return the score of a vertex
+	 *
+	 * @param str - vertex name
+	 * @return score or 0 if the vertex is not in graph
+	 */
+	public double score(String str) {
+		int v = g.id(str);
+		return v == -1 ? 0 : scores[v];
+	}
+
+	/**
+	 * Return the score of a vertex relative to the highest score
+	 *
+	 * @param str - vertex name
+	 * @return score between 0 and 1
+	 */
+	public double normalized(String str) {
+		return max == 0 ? 0 : score(str) / max;
+	}
+
+	/**
+	 * Find the vertices with the highest scores
+	 *
+	 * @param k - number of vertices
+	 * @return names, highest score first
+	 */
+	public List<String> top(int k) {
+		// keep the k best in a min-heap
+		PriorityQueue<Integer> best = new PriorityQueue<Integer>(k + 1,
+				(a, b) -> Double.compare(scores[a], scores[b]));
+		for (int v = 0; v < scores.length; v++) {
+			best.offer(v);
+			if (best.size() > k)
+				best.poll();
+		}
+		List<String> top = new ArrayList<String>(best.size());
+		while (!best.isEmpty())
+			top.add(g.name(best.poll()));
+		Collections.reverse(top);
+		return top;
+	}
+
+	/**
+	 * Brandes' algorithm over a range of sources, split in halves until the
+	 * range is small enough
+	 */
+	private static class Brandes extends RecursiveTask<double[]> {
+		private static final long serialVersionUID = 1L;
+
+		private CsrGraph g;
+		private int[] sources;
+		private int lo;
+		private int hi;
+		private int leaf;
+
+		/**
+		 * Construct a task
+		 *
+		 * @param g       - graph
+		 * @param sources - all sources
+		 * @param lo      - first source of the range
+		 * @param hi      - one past the last source of the range
+		 * @param leaf    - largest range run without splitting
+		 */
+		Brandes(CsrGraph g, int[] sources, int lo, int hi, int leaf) {
+			this.g = g;
+			this.sources = sources;
+			this.lo = lo;
+			this.hi = hi;
+			this.leaf = leaf;
+		}
+
+		@Override
+		protected double[] compute() {
+			if (hi - lo > leaf) {
+				int mid = (lo + hi) >>> 1;
+				Brandes left = new Brandes(g, sources, lo, mid, leaf);
+				left.fork();
+				double[] right = new Brandes(g, sources, mid, hi, leaf)
+						.compute();
+				double[] sum = left.join();
+				for (int v = 0; v < sum.length; v++)
+					sum[v] += right[v];
+				return sum;
+			}
+
+			int n = g.order();
+			double[] scores = new double[n];
+			double[] sigma = new double[n]; // number of shortest paths
+			double[] delta = new double[n]; // dependency
+			int[] dist = new int[n];
+			int[] order = new int[n]; // vertices in visiting order
+			Arrays.fill(dist, -1);
+			for (int i = lo; i < hi; i++) {
+				int s = sources[i];
+				int head = 0, tail = 0;
+				order[tail++] = s;
+				dist[s] = 0;
+				sigma[s] = 1;
+				while (head < tail) {
+					int v = order[head++];
+					for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++) {
+						int w = g.targets[k];
+						if (dist[w] < 0) {
+							dist[w] = dist[v] + 1;
+							order[tail++] = w;
+						}
+						if (dist[w] == dist[v] + 1)
+							sigma[w] += sigma[v];
+					}
+				}
+
+				// accumulate dependencies farthest first; predecessors are
+				// the neighbours one level closer
+				for (int j = tail - 1; j > 0; j--) {
+					int w = order[j];
+					double coeff = (1 + delta[w]) / sigma[w];
+					for (int k = g.offsets[w]; k < g.offsets[w + 1]; k++) {
+						int v = g.targets[k];
+						if (dist[v] == dist[w] - 1)
+							delta[v] += sigma[v] * coeff;
+					}
+					scores[w] += delta[w];
+				}
+
+				// reset only what was touched
+				for (int j = 0; j < tail; j++) {
+					int v = order[j];
+					dist[v] = -1;
+					sigma[v] = 0;
+					delta[v] = 0;
+				}
+			}
+			return scores;
+		}
+	}
+}
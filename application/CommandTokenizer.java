@@ -0,0 +1,264 @@
+package application;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Byte-level tokenizer for the text command format, one command per line:
+ * "a x" and "a x y" add, "r x" and "r x y" remove, "s x" searches. Lines are
+ * scanned in place without regular expressions or intermediate arrays and
+ * names are interned through a shared table. Malformed lines are skipped and
+ * reported with their line numbers.
+ *
+ * @author Zhaoyi
+ */
+public class CommandTokenizer {
+	public static final byte ADD = 'a';
+	public static final byte REMOVE = 'r';
+	public static final byte SEARCH = 's';
+
+	private static final int MAX_ERRORS = 100; // error messages kept
+
+	private InputStream in;
+	private NameTable names;
+
+	// read buffer
+	private byte[] buf;
+	private int pos;
+	private int limit;
+	private long bytesRead;
+
+	// current line, in the read buffer or copied when it spans two reads
+	private byte[] line;
+	private int offset;
+	private int length;
+	private byte[] spill;
+	private int lineNumber;
+
+	// current command
+	private byte command;
+	private int argc;
+	private String[] args;
+	private int[] start;
+	private int[] end;
+
+	// errors
+	private int errorCount;
+	private List<String> errors;
+
+	/**
+	 * Construct a tokenizer
+	 *
+	 * @param in    - input, UTF-8 encoded
+	 * @param names - table to intern names through
+	 */
+	public CommandTokenizer(InputStream in, NameTable names) {
+		super();
+		this.in = in;
+		this.names = names;
+		buf = new byte[1 << 16];
+		spill = new byte[256];
+		args = new String[2];
+		start = new int[3];
+		end = new int[3];
+		errors = new ArrayList<String>();
+	}
+
+	/**
+	 * Advance to the next well-formed command, skipping empty lines and
+	 * recording malformed ones
+	 *
+	 * @return false at the end of the input
+	 * @throws IOException if the input cannot be read
+	 */
+	public boolean next() throws IOException {
+		while (readLine()) {
+			if (length == 0) // ignore empty line
+				continue;
+
+			// find up to three fields, count all of them
+			int fields = 0;
+			int stop = offset + length;
+			for (int i = offset; i < stop;) {
+				while (i < stop && isSpace(line[i]))
+					i++;
+				if (i == stop)
+					break;
+				if (fields < 3)
+					start[fields] = i;
+				while (i < stop && !isSpace(line[i]))
+					i++;
+				if (fields < 3)
+					end[fields] = i;
+				fields++;
+			}
+			if (fields > 3 || fields < 2) {
+				error("expected a command and one or two names");
+				continue;
+			}
+			byte c = line[start[0]];
+			if (end[0] - start[0] != 1 || c != ADD && c != REMOVE && c != SEARCH) {
+				error("unknown command");
+				continue;
+			}
+			if (c == SEARCH && fields != 2) {
+				error("search takes one name");
+				continue;
+			}
+			command = c;
+			argc = fields - 1;
+			for (int i = 0; i < argc; i++)
+				args[i] = names.intern(line, start[i + 1],
+						end[i + 1] - start[i + 1]);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Return the current command
+	 *
+	 * @return ADD, REMOVE or SEARCH
+	 */
+	public byte command() {
+		return command;
+	}
+
+	/**
+	 * Return number of names of the current command
+	 *
+	 * @return 1 or 2
+	 */
+	public int argc() {
+		return argc;
+	}
+
+	/**
+	 * Return a name of the current command
+	 *
+	 * @param i - index of the name, 0 or 1
+	 * @return interned name
+	 */
+	public String arg(int i) {
+		return args[i];
+	}
+
+	/**
+	 * Return the number of the current line, starting at 1
+	 *
+	 * @return line number
+	 */
+	public int line() {
+		return lineNumber;
+	}
+
+	/**
+	 * Return number of bytes consumed so far
+	 *
+	 * @return bytes read
+	 */
+	public long bytesRead() {
+		return bytesRead - (limit - pos);
+	}
+
+	/**
+	 * Record an error at the current line
+	 *
+	 * @param msg - message
+	 */
+	public void error(String msg) {
+		errorCount++;
+		if (errors.size() < MAX_ERRORS)
+			errors.add("line " + lineNumber + ": " + msg);
+	}
+
+	/**
+	 * Return number of errors
+	 *
+	 * @return number of errors
+	 */
+	public int errorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Return messages of the first errors
+	 *
+	 * @return error messages with line numbers
+	 */
+	public List<String> errors() {
+		return errors;
+	}
+
+	/**
+	 * Find the next line, without its terminator; it stays in the read buffer
+	 * unless it spans two reads
+	 *
+	 * @return false at the end of the input
+	 * @throws IOException if the input cannot be read
+	 */
+	private boolean readLine() throws IOException {
+		// common case: the whole line is already buffered
+		for (int i = pos; i < limit; i++) {
+			if (buf[i] == '\n') {
+				line = buf;
+				offset = pos;
+				length = i - pos;
+				pos = i + 1;
+				return terminate();
+			}
+		}
+
+		// copy the buffered part and keep reading
+		line = spill;
+		offset = 0;
+		length = 0;
+		boolean any = pos < limit;
+		while (true) {
+			if (pos == limit) {
+				limit = in.read(buf, 0, buf.length);
+				pos = 0;
+				if (limit <= 0) {
+					limit = 0;
+					if (!any)
+						return false;
+					break;
+				}
+				bytesRead += limit;
+			}
+			any = true;
+			byte b = buf[pos++];
+			if (b == '\n')
+				break;
+			if (length == spill.length)
+				line = spill = Arrays.copyOf(spill, length * 2);
+			spill[length++] = b;
+		}
+		return terminate();
+	}
+
+	/**
+	 * Drop a carriage return ending the current line and count it
+	 *
+	 * @return true
+	 */
+	private boolean terminate() {
+		if (length > 0 && line[offset + length - 1] == '\r')
+			length--;
+		lineNumber++;
+		return true;
+	}
+
+	/**
+	 * Check if a byte is white space
+	 *
+	 * @param b - byte
+	 * @return true if white space
+	 */
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+	}
+}
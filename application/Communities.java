@@ -0,0 +1,385 @@
+package application;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Community assignment of every vertex of a graph snapshot, found by
+ * parallel label propagation or by Louvain modularity optimization.
+ * Communities are numbered 0..count-1, largest first.
+ *
+ * @author Zhaoyi
+ */
+public class Communities {
+	private CsrGraph g;
+	private int[] community;
+	private int[] sizes;
+
+	/**
+	 * Construct an assignment, renumbering communities by decreasing size
+	 *
+	 * @param g     - graph
+	 * @param label - any label per vertex, equal for the same community
+	 */
+	private Communities(CsrGraph g, int[] label) {
+		super();
+		this.g = g;
+		int n = label.length;
+
+		// dense ids for labels
+		int[] dense = new int[n];
+		Arrays.fill(dense, -1);
+		int count = 0;
+		int[] counts = new int[n];
+		for (int v = 0; v < n; v++) {
+			if (dense[label[v]] == -1)
+				dense[label[v]] = count++;
+			counts[dense[label[v]]]++;
+		}
+
+		// order by size, ties by first appearance
+		Integer[] order = new Integer[count];
+		for (int c = 0; c < count; c++)
+			order[c] = c;
+		Arrays.sort(order, (a, b) -> counts[a] != counts[b]
+				? Integer.compare(counts[b], counts[a])
+				: Integer.compare(a, b));
+		int[] rank = new int[count];
+		sizes = new int[count];
+		for (int r = 0; r < count; r++) {
+			rank[order[r]] = r;
+			sizes[r] = counts[order[r]];
+		}
+		community = new int[n];
+		for (int v = 0; v < n; v++)
+			community[v] = rank[dense[label[v]]];
+	}
+
+	/**
+	 * Find communities by label propagation: every vertex repeatedly adopts
+	 * the label most common among its neighbours, keeping its own on ties.
+	 * Vertices are updated in parallel, in a random order each round.
+	 *
+	 * @param g          - graph
+	 * @param iterations - maximum number of rounds
+	 * @param seed       - random seed
+	 * @return communities
+	 */
+	public static Communities labelPropagation(CsrGraph g, int iterations,
+			long seed) {
+		int n = g.order();
+		int[] label = new int[n];
+		int[] order = new int[n];
+		for (int v = 0; v < n; v++)
+			label[v] = order[v] = v;
+		Random random = new Random(seed);
+		ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> new int[16]);
+		for (int it = 0; it < iterations; it++) {
+			for (int i = n - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int t = order[i];
+				order[i] = order[j];
+				order[j] = t;
+			}
+			long salt = random.nextLong();
+			int changed = IntStream.range(0, n).parallel().map(i -> {
+				int v = order[i];
+				int degree = g.degree(v);
+				if (degree == 0)
+					return 0;
+
+				// sort neighbour labels and count runs
+				int[] buf = scratch.get();
+				if (buf.length < degree)
+					scratch.set(buf = new int[Math.max(degree, buf.length * 2)]);
+				for (int k = 0; k < degree; k++)
+					buf[k] = label[g.targets[g.offsets[v] + k]];
+				Arrays.sort(buf, 0, degree);
+				int best = label[v], bestCount = 0, own = 0;
+				long bestHash = 0;
+				for (int k = 0; k < degree;) {
+					int l = buf[k], run = 0;
+					while (k < degree && buf[k] == l) {
+						k++;
+						run++;
+					}
+					if (l == label[v])
+						own = run;
+					long hash = mix(l ^ salt); // random tie-break
+					if (run > bestCount || run == bestCount && hash < bestHash) {
+						best = l;
+						bestCount = run;
+						bestHash = hash;
+					}
+				}
+				if (own == bestCount || best == label[v])
+					return 0;
+				label[v] = best;
+				return 1;
+			}).sum();
+			if (changed == 0)
+				break;
+		}
+		return new Communities(g, label);
+	}
+
+	/**
+	 * Find communities by the Louvain method: vertices greedily move to the
+	 * neighbouring community with the best modularity gain, then every
+	 * community is merged into one vertex, until nothing moves
+	 *
+	 * @param g - graph
+	 * @return communities
+	 */
+	public static Communities louvain(CsrGraph g) {
+		int n = g.order();
+		double[] w = new double[g.targets.length];
+		Arrays.fill(w, 1);
+		Level level = new Level(n, g.offsets, g.targets, w);
+		int[] member = new int[n]; // community of every original vertex
+		for (int v = 0; v < n; v++)
+			member[v] = v;
+		while (true) {
+			int[] c = level.move();
+			int count = 0;
+			int[] dense = new int[level.n];
+			Arrays.fill(dense, -1);
+			for (int v = 0; v < level.n; v++)
+				if (dense[c[v]] == -1)
+					dense[c[v]] = count++;
+			for (int v = 0; v < level.n; v++)
+				c[v] = dense[c[v]];
+			for (int v = 0; v < n; v++)
+				member[v] = c[member[v]];
+			if (count == level.n) // nothing merged
+				break;
+			level = level.aggregate(c, count);
+		}
+		return new Communities(g, member);
+	}
+
+	/**
+	 * Return number of communities
+	 *
+	 * @return number of communities
+	 */
+	public int count() {
+		return sizes.length;
+	}
+
+	/**
+	 * Return the community of a vertex
+	 *
+	 * @param v - vertex id
+	 * @return community
+	 */
+	public int community(int v) {
+		return community[v];
+	}
+
+	/**
+	 * Return the community of a vertex
+	 *
+	 * @param str - vertex name
+	 * @return community or -1 if the vertex is not in graph
+	 */
+	public int community(String str) {
+		int v = g.id(str);
+		return v == -1 ? -1 : community[v];
+	}
+
+	/**
+	 * Find the vertices of a community
+	 *
+	 * @param c - community
+	 * @return vertex ids, ascending
+	 */
+	public int[] members(int c) {
+		int[] members = new int[sizes[c]];
+		for (int v = 0, i = 0; v < community.length; v++)
+			if (community[v] == c)
+				members[i++] = v;
+		return members;
+	}
+
+	/**
+	 * Return the size of every community
+	 *
+	 * @return sizes, largest first
+	 */
+	public int[] sizes() {
+		return sizes.clone();
+	}
+
+	/**
+	 * Compute the modularity of the assignment
+	 *
+	 * @return modularity between -0.5 and 1
+	 */
+	public double modularity() {
+		double m2 = g.targets.length; // twice the number of edges
+		if (m2 == 0)
+			return 0;
+		double[] inside = new double[sizes.length];
+		double[] total = new double[sizes.length];
+		for (int v = 0; v < g.order(); v++) {
+			total[community[v]] += g.degree(v);
+			for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++)
+				if (community[g.targets[k]] == community[v])
+					inside[community[v]]++;
+		}
+		double q = 0;
+		for (int c = 0; c < sizes.length; c++)
+			q += inside[c] / m2 - (total[c] / m2) * (total[c] / m2);
+		return q;
+	}
+
+	/**
+	 * Scramble the bits of a number
+	 *
+	 * @param x - number
+	 * @return scrambled number
+	 */
+	private static long mix(long x) {
+		x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+		x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return x ^ (x >>> 33);
+	}
+
+	/**
+	 * Weighted graph of one Louvain level; a self loop holds the weight
+	 * inside a merged community, counted in both directions
+	 */
+	private static class Level {
+		int n;
+		int[] off;
+		int[] adj;
+		double[] w;
+		double[] k; // weighted degree
+		double m2; // total weight, counted in both directions
+
+		/**
+		 * Construct a level
+		 *
+		 * @param n   - number of vertices
+		 * @param off - neighbour offsets
+		 * @param adj - neighbours
+		 * @param w   - edge weights
+		 */
+		Level(int n, int[] off, int[] adj, double[] w) {
+			this.n = n;
+			this.off = off;
+			this.adj = adj;
+			this.w = w;
+			k = new double[n];
+			for (int v = 0; v < n; v++)
+				for (int e = off[v]; e < off[v + 1]; e++)
+					k[v] += w[e];
+			for (double d : k)
+				m2 += d;
+		}
+
+		/**
+		 * Move vertices between communities while modularity improves
+		 *
+		 * @return community of every vertex
+		 */
+		int[] move() {
+			int[] c = new int[n];
+			double[] tot = new double[n]; // total degree of each community
+			for (int v = 0; v < n; v++) {
+				c[v] = v;
+				tot[v] = k[v];
+			}
+			if (m2 == 0)
+				return c;
+			double[] links = new double[n]; // weight to each community
+			int[] touched = new int[n];
+			boolean moved = true;
+			for (int pass = 0; moved && pass < 100; pass++) {
+				moved = false;
+				for (int v = 0; v < n; v++) {
+					int count = 0;
+					for (int e = off[v]; e < off[v + 1]; e++) {
+						int u = adj[e];
+						if (u == v)
+							continue;
+						if (links[c[u]] == 0)
+							touched[count++] = c[u];
+						links[c[u]] += w[e];
+					}
+					int old = c[v];
+					tot[old] -= k[v];
+					int best = old;
+					double gain = links[old] - tot[old] * k[v] / m2;
+					for (int i = 0; i < count; i++) {
+						int t = touched[i];
+						double g = links[t] - tot[t] * k[v] / m2;
+						if (g > gain + 1e-12) {
+							gain = g;
+							best = t;
+						}
+					}
+					tot[best] += k[v];
+					c[v] = best;
+					if (best != old)
+						moved = true;
+					for (int i = 0; i < count; i++)
+						links[touched[i]] = 0;
+					links[old] = 0;
+				}
+			}
+			return c;
+		}
+
+		/**
+		 * Merge every community into one vertex
+		 *
+		 * @param c     - dense community of every vertex
+		 * @param count - number of communities
+		 * @return coarser level
+		 */
+		Level aggregate(int[] c, int count) {
+			// group vertices by community
+			int[] start = new int[count + 1];
+			for (int v = 0; v < n; v++)
+				start[c[v] + 1]++;
+			for (int i = 0; i < count; i++)
+				start[i + 1] += start[i];
+			int[] members = new int[n];
+			int[] fill = Arrays.copyOf(start, count);
+			for (int v = 0; v < n; v++)
+				members[fill[c[v]]++] = v;
+
+			// sum weights between communities
+			int[] noff = new int[count + 1];
+			int[] nadj = new int[adj.length];
+			double[] nw = new double[adj.length];
+			double[] links = new double[count];
+			int[] touched = new int[count];
+			int size = 0;
+			for (int a = 0; a < count; a++) {
+				int touchedCount = 0;
+				for (int i = start[a]; i < start[a + 1]; i++) {
+					int v = members[i];
+					for (int e = off[v]; e < off[v + 1]; e++) {
+						int b = c[adj[e]];
+						if (links[b] == 0)
+							touched[touchedCount++] = b;
+						links[b] += w[e];
+					}
+				}
+				Arrays.sort(touched, 0, touchedCount);
+				for (int i = 0; i < touchedCount; i++) {
+					nadj[size] = touched[i];
+					nw[size++] = links[touched[i]];
+					links[touched[i]] = 0;
+				}
+				noff[a + 1] = size;
+			}
+			return new Level(count, noff, Arrays.copyOf(nadj, size),
+					Arrays.copyOf(nw, size));
+		}
+	}
+}
@@ -4,9 +4,8 @@ import static application.CtrlFactory.createButton;
 import static application.CtrlFactory.createLabel;
 import static java.lang.String.format;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -16,8 +15,10 @@ import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
+import javafx.application.Platform;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.geometry.Pos;
@@ -26,6 +27,7 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Tooltip;
 import javafx.scene.layout.GridPane;
@@ -47,6 +49,13 @@ public class ControlPane extends GridPane {
 	// private final String INPUT_FORMAT = "[a-zA-Z_0-9'_]+";
 	private final String INPUT_FORMAT = "\\S+";
 
+	private final int TOP = 5; // number of people listed by analyses
+	private final int SAMPLES = 256; // sources of estimated betweenness
+	private final int UNDO_ACTIONS = 100; // actions that can be undone
+	private final int UNDO_CHANGES = 1 << 20; // primitive changes kept
+	private final int CHUNK = 4096; // commands committed together by a load
+	private final long STATUS_MILLIS = 250; // status refresh during a load
+
 	private final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat(
 			"yyyy-MM-dd_");
 	// number of files saved
@@ -65,12 +74,24 @@ public class ControlPane extends GridPane {
 	private TextField input1;
 	private TextField input2;
 
+	// controls changing or saving the network, disabled during a load
+	private Button[] modifiers;
+	private Button loadButton;
+	private Button saveButton;
+	private ProgressBar progress;
+
 	// data structures
 	private SocialNetwork sn;
+	private QueryCache queries;
+	private History history;
 	private List<String> log;
 
 	// parser
 	private Parser p;
+	private ProgressiveLoader loading; // load in progress, or null
+	private long statusShown; // time the status was last refreshed
+	private GraphSaver saving; // save in progress, or null
+	private Runnable afterSave; // runs once the save in progress ends
 
 	/**
 	 * Construct a control pane
@@ -91,6 +112,8 @@ public class ControlPane extends GridPane {
 		this.statusPane = status;
 		this.explorer = explorer;
 		this.sn = sn;
+		queries = new QueryCache(sn, 256, QueryCache.Policy.LRU);
+		history = new History(sn, UNDO_ACTIONS, UNDO_CHANGES);
 		log = new LinkedList<String>();
 		p = new Parser(sn, network);
 		createControls();
@@ -114,6 +137,11 @@ public class ControlPane extends GridPane {
 		Button remove = createButton("Remove", "Remove a person or relation",
 				this::remove);
 		Button clear = createButton("Clear", "Clear all people", this::clear);
+		Label edit = createLabel("Edit:");
+		Button undo = createButton("Undo", "Undo the latest change",
+				this::undo);
+		Button redo = createButton("Redo", "Redo the latest undone change",
+				this::redo);
 
 		Label query = createLabel("Query:");
 		Button search = createButton("Search",
@@ -127,9 +155,22 @@ public class ControlPane extends GridPane {
 		Label io = createLabel("I/O:");
 		Button load = createButton("Load",
 				"Load a external data file into the network", this::load);
+		progress = new ProgressBar(0);
+		progress.setMaxWidth(Double.MAX_VALUE);
+		progress.setVisible(false);
 		Button save = createButton("Save",
 				"Save the current network as a data file", this::save);
 
+		Label analyze = createLabel("Analyze:");
+		Button overview = createButton("Overview",
+				"Display the whole network", this::overview);
+		Button influencers = createButton("Influencers",
+				"Emphasize people with the highest PageRank", this::influencers);
+		Button brokers = createButton("Brokers",
+				"Emphasize people on the most shortest paths", this::brokers);
+		Button communities = createButton("Communities",
+				"Color people by their communities", this::communities);
+
 		// row 1
 		setConstraints(input, 0, 0);
 		setConstraints(input1, 1, 0, 3, 1);
@@ -150,9 +191,26 @@ public class ControlPane extends GridPane {
 		setConstraints(load, 9, 1);
 		setConstraints(save, 10, 1);
 
+		// row 3
+		setConstraints(analyze, 0, 2);
+		setConstraints(overview, 1, 2);
+		setConstraints(influencers, 2, 2);
+		setConstraints(brokers, 3, 2);
+		setConstraints(communities, 4, 2);
+		setConstraints(progress, 5, 2, 3, 1);
+
+		setConstraints(edit, 8, 2);
+		setConstraints(undo, 9, 2);
+		setConstraints(redo, 10, 2);
+
 		// add all controls
 		getChildren().addAll(input, input1, input2, modify, add, remove, clear,
-				query, search, mutual, connection, io, load, save);
+				query, search, mutual, connection, io, load, save, analyze,
+				overview, influencers, brokers, communities, progress, edit, undo,
+				redo);
+		modifiers = new Button[] { add, remove, clear, undo, redo, save };
+		loadButton = load;
+		saveButton = save;
 	}
 
 	/**
@@ -166,23 +224,27 @@ public class ControlPane extends GridPane {
 		boolean i1 = validateInput(s1);
 		boolean i2 = validateInput(s2);
 		if (i1 && i2) { // add edge
+			history.begin(format("Add relation %s-%s", s1, s2));
+			boolean added = sn.addEdge(s1, s2);
 			changeHistory(format("Add relation\n%s-%s", s1, s2),
-					sn.addEdge(s1, s2) ? "Success" : "Fail");
+					added ? "Success" : "Fail");
 			log.add(format("a %s %s", s1, s2)); // log
 
-			// determine if repaint is needed
-			if (s1.equals(network.central))
-				network.repaint(sn.getAdjacent(s1));
-			else if (s2.equals(network.central))
-				network.repaint(sn.getAdjacent(s2));
+			// draw the new friend of the central user
+			if (added && s1.equals(network.central))
+				network.addFriend(s2);
+			else if (added && s2.equals(network.central))
+				network.addFriend(s1);
 		} else if (!i1 && !i2) { // invalid input
 			error("Invalid inputs");
 		} else { // add vertex
 			String name = i1 ? s1 : s2;
+			history.begin(format("Add person %s", name));
 			changeHistory(format("Add person\n%s", name),
 					sn.addVertex(name) ? "Success" : "Fail");
 			log.add(format("a %s", name)); // log
 		}
+		history.end();
 		changeStatus();
 		clearInput();
 	}
@@ -198,26 +260,29 @@ public class ControlPane extends GridPane {
 		boolean i1 = validateInput(s1);
 		boolean i2 = validateInput(s2);
 		if (i1 && i2) { // remove edge
+			history.begin(format("Remove relation %s-%s", s1, s2));
+			boolean removed = sn.removeEdge(s1, s2);
 			changeHistory(format("Remove relation\n%s-%s", s1, s2),
-					sn.removeEdge(s1, s2) ? "Success" : "Fail");
+					removed ? "Success" : "Fail");
 
-			// determine if repaint is needed
-			if (s1.equals(network.central))
-				network.repaint(sn.getAdjacent(s1));
-			else if (s2.equals(network.central))
-				network.repaint(sn.getAdjacent(s2));
+			// erase the former friend of the central user
+			if (removed && s1.equals(network.central))
+				network.removeFriend(s2);
+			else if (removed && s2.equals(network.central))
+				network.removeFriend(s1);
 			log.add(format("r %s %s", s1, s2)); // log
 		} else if (!i1 && !i2) { // invalid input
 			error("Invalid inputs");
 		} else { // remove vertex
 			String name = i1 ? s1 : s2;
 			boolean repaint = sn.getAdjacent(network.central).contains(name);
+			history.begin(format("Remove person %s", name));
 			changeHistory(format("Remove person\n%s", name),
 					sn.removeVertex(name) ? "Success" : "Fail");
 
-			// repaint the network if necessary
+			// erase him if he was a friend of the central user
 			if (repaint)
-				network.repaint(sn.getAdjacent(network.central));
+				network.removeFriend(name);
 
 			// clear if the central is removed
 			if (name.equals(network.central)) {
@@ -226,6 +291,7 @@ public class ControlPane extends GridPane {
 			}
 			log.add(format("r %s", name)); // log
 		}
+		history.end();
 		changeStatus();
 		clearInput();
 	}
@@ -236,13 +302,66 @@ public class ControlPane extends GridPane {
 	 * @param e - unused
 	 */
 	private void clear(ActionEvent e) {
+		network.highlight(null);
+		network.colorBy(null);
 		network.clear();
+		history.begin("Clear network");
 		sn.clear();
+		history.end();
 		changeHistory("Clear network", "Success");
 		changeStatus();
 		clearInput();
 	}
 
+	/**
+	 * Handler for undo
+	 * 
+	 * @param e - unused
+	 */
+	private void undo(ActionEvent e) {
+		String action = history.undo(log::add);
+		if (action == null)
+			error("Nothing to undo");
+		else {
+			changeHistory("Undo\n" + action, "Success");
+			refresh();
+		}
+		changeStatus();
+		clearInput();
+	}
+
+	/**
+	 * Handler for redo
+	 * 
+	 * @param e - unused
+	 */
+	private void redo(ActionEvent e) {
+		String action = history.redo(log::add);
+		if (action == null)
+			error("Nothing to redo");
+		else {
+			changeHistory("Redo\n" + action, "Success");
+			refresh();
+		}
+		changeStatus();
+		clearInput();
+	}
+
+	/**
+	 * Repaint the central person after changes made elsewhere, or clear the
+	 * drawing if the person is gone
+	 */
+	private void refresh() {
+		if (network.central.isEmpty())
+			return;
+		if (sn.getAllVertices().contains(network.central))
+			network.repaint(sn.getAdjacent(network.central));
+		else {
+			network.clear();
+			network.central = "";
+		}
+	}
+
 	/**
 	 * Handler for search
 	 * 
@@ -279,7 +398,7 @@ public class ControlPane extends GridPane {
 		String s1 = input1.getText();
 		String s2 = input2.getText();
 		if (validateInput(s1) && validateInput(s2)) { // valid
-			Set<String> mutual = sn.mutual(s1, s2);
+			Set<String> mutual = queries.mutual(s1, s2);
 			StringBuilder sb = new StringBuilder();
 			if (mutual.size() == 0)
 				sb.append("No mutual friends");
@@ -303,7 +422,7 @@ public class ControlPane extends GridPane {
 		String s1 = input1.getText();
 		String s2 = input2.getText();
 		if (validateInput(s1) && validateInput(s2)) { // valid
-			List<String> connection = sn.connection(s1, s2);
+			List<String> connection = queries.connection(s1, s2);
 			StringBuilder sb = new StringBuilder();
 			if (connection.size() == 2)
 				sb.append("They are already friends");
@@ -321,30 +440,192 @@ public class ControlPane extends GridPane {
 		clearInput();
 	}
 
+	/**
+	 * Handler for overview
+	 * 
+	 * @param e - unused
+	 */
+	private void overview(ActionEvent e) {
+		network.paintAll();
+		changeHistory("Overview",
+				format("%d people\n%d relations", sn.order(), sn.size()));
+		clearInput();
+	}
+
+	/**
+	 * Handler for influencers
+	 * 
+	 * @param e - unused
+	 */
+	private void influencers(ActionEvent e) {
+		showTop("Influencers\n(PageRank)",
+				Centrality.pageRank(CsrGraph.of(sn)));
+	}
+
+	/**
+	 * Handler for brokers
+	 * 
+	 * @param e - unused
+	 */
+	private void brokers(ActionEvent e) {
+		CsrGraph g = CsrGraph.of(sn);
+		// estimate from sampled sources on large networks
+		showTop("Brokers\n(betweenness)", g.order() > SAMPLES
+				? Centrality.betweenness(g, SAMPLES, 0)
+				: Centrality.betweenness(g));
+	}
+
+	/**
+	 * Handler for communities
+	 * 
+	 * @param e - unused
+	 */
+	private void communities(ActionEvent e) {
+		Communities c = Communities.louvain(CsrGraph.of(sn));
+		network.colorBy(c);
+		StringBuilder sb = new StringBuilder(
+				format("%d communities\nmodularity %.3f\nlargest:", c.count(),
+						c.modularity()));
+		int[] sizes = c.sizes();
+		for (int i = 0; i < Math.min(TOP, sizes.length); i++)
+			sb.append(format("\n%d people", sizes[i]));
+		changeHistory("Communities", sb.toString());
+		clearInput();
+	}
+
+	/**
+	 * Show the people with the highest scores and emphasize them
+	 * 
+	 * @param query  - query
+	 * @param scores - scores of people
+	 */
+	private void showTop(String query, Centrality scores) {
+		network.highlight(scores);
+		StringBuilder sb = new StringBuilder();
+		List<String> top = scores.top(TOP);
+		if (top.isEmpty())
+			sb.append("No people");
+		else
+			for (String name : top)
+				sb.append(format("%s %.4g\n", name, scores.score(name)));
+		changeHistory(query, sb.toString());
+		clearInput();
+	}
+
 	/**
 	 * Handler for load
 	 * 
 	 * @param e - unused
 	 */
 	private void load(ActionEvent e) {
+		if (loading != null) { // abort the load in progress
+			loading.abort();
+			return;
+		}
 		explorer.setTitle("Load");
 		File load = explorer.showOpenDialog(parent);
 		if (load == null)
 			error("No file is chosen");
-		else {
-			changeHistory("Load\n" + load.getName(),
-					p.load(load) ? "Success" : "Error occured");
-			String line = null;
-			try (BufferedReader br = new BufferedReader(new FileReader(load))) {
-				while ((line = br.readLine()) != null)
-					log.add(line);
+		else if (AdjacencyFile.isSnapshot(load)) {
+			history.begin("Load " + load.getName());
+			try {
+				CsrGraph g = AdjacencyFile.read(load);
+				AdjacencyFile.addTo(g, sn);
+				for (int v = 0; v < g.order(); v++) {
+					log.add("a " + g.name(v));
+					for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++)
+						if (v < g.targets[k])
+							log.add("a " + g.name(v) + " " + g.name(g.targets[k]));
+				}
+				changeHistory("Load\n" + load.getName(), format(
+						"%d people, %d relations", g.order(), g.size()));
 			} catch (Exception ex) {
 				error("Cannot read the file " + load.getName());
 			}
+		} else {
+			loadInBackground(load);
+			return;
 		}
+		history.end();
 		changeStatus();
 	}
 
+	/**
+	 * Load a command file in the background, committing it in chunks that
+	 * can be queried and undone together while the file is still read
+	 * 
+	 * @param file - file to load
+	 */
+	private void loadInBackground(File file) {
+		history.begin("Load " + file.getName());
+		changeHistory("Load\n" + file.getName(), "Loading...");
+		for (Button b : modifiers)
+			b.setDisable(true);
+		loadButton.setText("Abort");
+		progress.setProgress(0);
+		progress.setVisible(true);
+		statusShown = System.currentTimeMillis();
+		loading = new ProgressiveLoader(p, file, CHUNK, Platform::runLater,
+				new ProgressiveLoader.Listener() {
+					@Override
+					public void committed(long bytesRead, long length,
+							long commands) {
+						progress.setProgress(
+								length == 0 ? 1 : (double) bytesRead / length);
+						long now = System.currentTimeMillis();
+						if (now - statusShown >= STATUS_MILLIS) {
+							statusShown = now;
+							changeStatus();
+							refresh();
+						}
+					}
+
+					@Override
+					public void finished(boolean aborted) {
+						loaded(file, aborted);
+					}
+				}, log::add);
+		loading.start();
+	}
+
+	/**
+	 * Finish a load in the background
+	 * 
+	 * @param file    - loaded file
+	 * @param aborted - true if the load was aborted
+	 */
+	private void loaded(File file, boolean aborted) {
+		ProgressiveLoader l = loading;
+		loading = null;
+		history.end();
+		for (Button b : modifiers)
+			b.setDisable(false);
+		loadButton.setText("Load");
+		progress.setVisible(false);
+		String result = l.getErrorCount() == 0 ? "Success"
+				: loadErrors(l.getErrorCount(), l.getErrors());
+		changeHistory("Load\n" + file.getName(), aborted
+				? format("Aborted after %d commands\n%s", l.commands(), result)
+				: result);
+		changeStatus();
+		refresh();
+	}
+
+	/**
+	 * Summarize the errors of a load
+	 * 
+	 * @param count  - number of errors
+	 * @param errors - first error messages
+	 * @return number of errors and the first messages
+	 */
+	private String loadErrors(int count, List<String> errors) {
+		StringBuilder sb = new StringBuilder(
+				format("%d errors occured", count));
+		for (int i = 0; i < Math.min(TOP, errors.size()); i++)
+			sb.append("\n" + errors.get(i));
+		return sb.toString();
+	}
+
 	/**
 	 * Handler for save
 	 * 
@@ -357,8 +638,72 @@ public class ControlPane extends GridPane {
 		if (save == null)
 			error("No file is chosen");
 		else
-			changeHistory("Save\n" + save.getName(),
-					logTo(save) ? "Success" : "Error occured");
+			saveInBackground(save, null);
+	}
+
+	/**
+	 * Save the network as it is now to a file in the background, as commands
+	 * or as a snapshot if the file has the snapshot extension; the network
+	 * can be changed while the file is written
+	 * 
+	 * @param file - file to save to
+	 * @param then - receives true if the file was saved, or null
+	 */
+	public void saveInBackground(File file, Consumer<Boolean> then) {
+		changeHistory("Save\n" + file.getName(), "Saving...");
+		saveButton.setDisable(true);
+		loadButton.setDisable(true);
+		progress.setProgress(0);
+		progress.setVisible(true);
+		saving = new GraphSaver(sn.snapshot(), file, Platform::runLater,
+				new GraphSaver.Listener() {
+					@Override
+					public void written(int vertices, int order) {
+						progress.setProgress(
+								order == 0 ? 1 : (double) vertices / order);
+					}
+
+					@Override
+					public void finished(IOException error) {
+						saving = null;
+						saveButton.setDisable(false);
+						loadButton.setDisable(false);
+						progress.setVisible(false);
+						changeHistory("Save\n" + file.getName(), error == null
+								? "Success"
+								: "Error occured\n" + error.getMessage());
+						if (then != null)
+							then.accept(error == null);
+						if (afterSave != null) {
+							Runnable after = afterSave;
+							afterSave = null;
+							after.run();
+						}
+					}
+				});
+		saving.start();
+	}
+
+	/**
+	 * Check if a save is in progress
+	 * 
+	 * @return true if saving
+	 */
+	public boolean isSaving() {
+		return saving != null;
+	}
+
+	/**
+	 * Run an action once the save in progress has finished, or at once if
+	 * nothing is being saved
+	 * 
+	 * @param action - action to run on the application thread
+	 */
+	public void afterSave(Runnable action) {
+		if (saving == null)
+			action.run();
+		else
+			afterSave = action;
 	}
 
 	/**
@@ -408,7 +753,8 @@ public class ControlPane extends GridPane {
 		((Label) status.get(1)).setText("Number of\npeople: " + sn.order());
 		((Label) status.get(2)).setText("Number of\nrelations: " + sn.size());
 		((Label) status.get(3))
-				.setText("Connected\nComponents: " + sn.components());
+				.setText("Connected\nComponents: " + queries.components());
+		((Label) status.get(4)).setText(network.frameStats());
 	}
 
 	/**
@@ -426,21 +772,4 @@ public class ControlPane extends GridPane {
 		log.clear();
 		return true;
 	}
-
-	/**
-	 * 
-	 * Save logs to the specified file
-	 * 
-	 * @param file - file to save to
-	 * @return true if no exception occurred
-	 */
-	public boolean logTo(File file) {
-		Path out = Paths.get(file.getName());
-		try {
-			Files.write(out, log, Charset.defaultCharset());
-		} catch (Exception e) {
-			return false;
-		}
-		return true;
-	}
 }
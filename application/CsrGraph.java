@@ -0,0 +1,188 @@
+package application;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable snapshot of a graph in compressed sparse row form. Vertices are
+ * interned to ids 0..n-1 and the neighbours of vertex v are
+ * targets[offsets[v]] .. targets[offsets[v + 1] - 1], sorted ascending.
+ * Names are kept in a dictionary rather than as strings, so name(v) decodes
+ * a new string on every call.
+ *
+ * @author Zhaoyi
+ */
+public class CsrGraph {
+	// vertex names, their dictionary ids being the vertex ids
+	final NameDictionary names;
+
+	// start of the neighbours of each vertex, with a trailing sentinel
+	final int[] offsets;
+
+	// neighbours of all vertices, each edge appears in both directions
+	final int[] targets;
+
+	/**
+	 * Construct a snapshot from its arrays
+	 *
+	 * @param names   - distinct vertex names
+	 * @param offsets - neighbour offsets
+	 * @param targets - neighbours
+	 */
+	CsrGraph(String[] names, int[] offsets, int[] targets) {
+		this(dictionary(names), offsets, targets);
+	}
+
+	/**
+	 * Construct a snapshot from its arrays
+	 *
+	 * @param names   - vertex names with ids 0..n-1
+	 * @param offsets - neighbour offsets
+	 * @param targets - neighbours
+	 */
+	CsrGraph(NameDictionary names, int[] offsets, int[] targets) {
+		super();
+		names.trim();
+		this.names = names;
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	/**
+	 * Take a snapshot of a graph
+	 *
+	 * @param g - graph
+	 * @return snapshot
+	 */
+	public static CsrGraph of(Graph g) {
+		Collection<String> vertices = g.getAllVertices();
+		String[] names = vertices.toArray(new String[vertices.size()]);
+		NameDictionary ids = dictionary(names);
+
+		int[] offsets = new int[names.length + 1];
+		for (int i = 0; i < names.length; i++)
+			offsets[i + 1] = offsets[i] + g.degree(names[i]);
+		int[] targets = new int[offsets[names.length]];
+		int[] k = { 0 };
+		Consumer<String> put = neighbour -> targets[k[0]++] = ids.id(neighbour);
+		for (int i = 0; i < names.length; i++) {
+			g.forEachNeighbor(names[i], put);
+			Arrays.sort(targets, offsets[i], k[0]);
+		}
+		return new CsrGraph(ids, offsets, targets);
+	}
+
+	/**
+	 * Extract the subgraph induced by some vertices: the vertices and every
+	 * edge between two of them. Only the neighbour lists of those vertices
+	 * are read, and names are copied encoded.
+	 *
+	 * @param vertices - distinct vertex ids
+	 * @return subgraph, vertex i being the i-th smallest of the ids
+	 */
+	public CsrGraph induced(int[] vertices) {
+		int[] sorted = vertices.clone();
+		Arrays.sort(sorted);
+		int[] map = new int[order()];
+		Arrays.fill(map, -1);
+		for (int i = 0; i < sorted.length; i++)
+			map[sorted[i]] = i;
+
+		// ascending ids map to ascending ids, so lists stay sorted
+		NameDictionary sub = new NameDictionary(sorted.length,
+				sorted.length * 8);
+		int[] subOffsets = new int[sorted.length + 1];
+		for (int i = 0; i < sorted.length; i++) {
+			if (sub.add(names, sorted[i]) != i)
+				throw new IllegalArgumentException(
+						"duplicate vertex " + sorted[i]);
+			int degree = 0;
+			for (int k = offsets[sorted[i]]; k < offsets[sorted[i] + 1]; k++)
+				if (map[targets[k]] != -1)
+					degree++;
+			subOffsets[i + 1] = subOffsets[i] + degree;
+		}
+		int[] subTargets = new int[subOffsets[sorted.length]];
+		for (int i = 0, j = 0; i < sorted.length; i++)
+			for (int k = offsets[sorted[i]]; k < offsets[sorted[i] + 1]; k++)
+				if (map[targets[k]] != -1)
+					subTargets[j++] = map[targets[k]];
+		return new CsrGraph(sub, subOffsets, subTargets);
+	}
+
+	/**
+	 * Put distinct names in a dictionary
+	 *
+	 * @param names - distinct names
+	 * @return dictionary giving name i the id i
+	 */
+	private static NameDictionary dictionary(String[] names) {
+		NameDictionary dictionary = new NameDictionary(names.length,
+				names.length * 8);
+		for (String name : names)
+			if (dictionary.add(name) != dictionary.size() - 1)
+				throw new IllegalArgumentException("duplicate name " + name);
+		return dictionary;
+	}
+
+	/**
+	 * Return number of vertices
+	 *
+	 * @return number of vertices
+	 */
+	public int order() {
+		return names.size();
+	}
+
+	/**
+	 * Return number of edges
+	 *
+	 * @return number of edges
+	 */
+	public int size() {
+		return targets.length / 2;
+	}
+
+	/**
+	 * Return number of neighbours of a vertex
+	 *
+	 * @param v - vertex id
+	 * @return degree
+	 */
+	public int degree(int v) {
+		return offsets[v + 1] - offsets[v];
+	}
+
+	/**
+	 * Visit every neighbour of a vertex
+	 *
+	 * @param v      - vertex id
+	 * @param action - action applied to each neighbour id, ascending
+	 */
+	public void forEachNeighbor(int v, IntConsumer action) {
+		for (int k = offsets[v]; k < offsets[v + 1]; k++)
+			action.accept(targets[k]);
+	}
+
+	/**
+	 * Find the id of a vertex
+	 *
+	 * @param str - vertex name
+	 * @return vertex id or -1 if not found
+	 */
+	public int id(String str) {
+		return names.id(str);
+	}
+
+	/**
+	 * Find the name of a vertex
+	 *
+	 * @param v - vertex id
+	 * @return vertex name
+	 */
+	public String name(int v) {
+		return names.name(v);
+	}
+}
@@ -0,0 +1,506 @@
+package application;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Pipeline applying a continuous stream of friendship events to a graph.
+ * Sources (a followed file, local socket connections or direct calls) put
+ * events into a bounded queue and block when it is full, so fast producers
+ * are slowed down instead of exhausting memory. One applier thread takes
+ * events in batches, closed by size or by a time window, keeps only the
+ * last event of every friendship in the batch and applies the batch under
+ * a single acquisition of the write lock. Readers of the graph take the
+ * read lock; with a fair lock they wait for at most one batch.
+ *
+ * Sources use the text command format, "a x y" to add and "r x y" to
+ * remove a friendship. Closing waits for events submitted or sources
+ * opened before it, and rejects those after it, so every event received
+ * is applied.
+ *
+ * @author Zhaoyi
+ */
+public class EdgeStream implements Closeable {
+	// how often a followed file is checked for new data
+	private static final long POLL_MILLIS = 50;
+
+	private Graph g;
+	private ReadWriteLock lock;
+	private BlockingQueue<Event> queue;
+	private int batchSize;
+	private long window;
+	private volatile boolean running;
+	private Thread applier;
+	private List<Closeable> sources;
+	private List<Thread> readers;
+	private List<Thread> acceptors;
+
+	// held shared while submitting or opening a source, exclusively to close
+	private ReentrantReadWriteLock gate;
+
+	// metrics
+	private AtomicLong received;
+	private AtomicLong rejected;
+	private long applied;
+	private long coalesced;
+	private long batches;
+	private long failed;
+
+	/**
+	 * Construct a pipeline and start applying events
+	 *
+	 * @param g         - graph to change
+	 * @param lock      - lock guarding the graph
+	 * @param capacity  - maximum number of queued events
+	 * @param batchSize - maximum number of events per batch
+	 * @param window    - maximum time to wait for a batch to fill, in ms
+	 */
+	public EdgeStream(Graph g, ReadWriteLock lock, int capacity,
+			int batchSize, long window) {
+		super();
+		this.g = g;
+		this.lock = lock;
+		this.batchSize = batchSize;
+		this.window = window;
+		queue = new ArrayBlockingQueue<Event>(capacity);
+		sources = new CopyOnWriteArrayList<Closeable>();
+		readers = new CopyOnWriteArrayList<Thread>();
+		acceptors = new CopyOnWriteArrayList<Thread>();
+		gate = new ReentrantReadWriteLock();
+		received = new AtomicLong();
+		rejected = new AtomicLong();
+		running = true;
+		applier = new Thread(this::run, "edge-stream");
+		applier.setDaemon(true);
+		applier.start();
+	}
+
+	/**
+	 * Queue an event, waiting while the queue is full
+	 *
+	 * @param add  - true to add the friendship, false to remove it
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void submit(boolean add, String str1, String str2)
+			throws InterruptedException {
+		if (str1 == null || str2 == null)
+			throw new IllegalArgumentException("names must not be null");
+		// the applier runs until the queue is drained after close
+		gate.readLock().lock();
+		try {
+			if (!running)
+				throw new IllegalStateException("stream is closed");
+			put(new Event(add, str1, str2));
+		} finally {
+			gate.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Follow a file like tail -f, queueing the commands already in it and
+	 * every command appended later, until the stream is closed
+	 *
+	 * @param file - file to follow
+	 * @throws IOException if the file cannot be opened
+	 */
+	public void follow(File file) throws IOException {
+		Tail tail = new Tail(file);
+		gate.readLock().lock();
+		try {
+			if (!running) {
+				tail.close();
+				throw new IllegalStateException("stream is closed");
+			}
+			sources.add(tail);
+			read(tail, tail, "edge-stream " + file.getName());
+		} finally {
+			gate.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Accept connections on the loopback interface and queue the commands
+	 * sent over each of them
+	 *
+	 * @param port - port, 0 for any free port
+	 * @return port listened on
+	 * @throws IOException if the port cannot be bound
+	 */
+	public int listen(int port) throws IOException {
+		ServerSocket server = new ServerSocket(port, 50,
+				InetAddress.getLoopbackAddress());
+		Thread acceptor = new Thread(() -> {
+			while (true) {
+				Socket socket;
+				try {
+					socket = server.accept();
+				} catch (IOException e) {
+					break; // server closed
+				}
+				if (!register(socket))
+					break;
+			}
+		}, "edge-stream :" + server.getLocalPort());
+		acceptor.setDaemon(true);
+		gate.readLock().lock();
+		try {
+			if (!running) {
+				server.close();
+				throw new IllegalStateException("stream is closed");
+			}
+			sources.add(server);
+			acceptors.add(acceptor);
+			acceptor.start();
+		} finally {
+			gate.readLock().unlock();
+		}
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Stop all sources, apply the events still queued and stop
+	 */
+	@Override
+	public void close() {
+		// no source is opened and no event submitted once this pass is done
+		gate.writeLock().lock();
+		try {
+			running = false;
+			for (Closeable source : sources) {
+				try {
+					source.close();
+				} catch (IOException e) {
+					// closing anyway
+				}
+			}
+		} finally {
+			gate.writeLock().unlock();
+		}
+		try {
+			for (Thread acceptor : acceptors)
+				acceptor.join();
+			for (Thread reader : readers)
+				reader.join();
+			applier.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Return number of events accepted from all sources
+	 *
+	 * @return number of events received
+	 */
+	public long getReceived() {
+		return received.get();
+	}
+
+	/**
+	 * Return number of malformed commands skipped by sources
+	 *
+	 * @return number of commands rejected
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * Return number of events applied to the graph
+	 *
+	 * @return number of events applied
+	 */
+	public synchronized long getApplied() {
+		return applied;
+	}
+
+	/**
+	 * Return number of events dropped because a later event of the same
+	 * batch replaced them
+	 *
+	 * @return number of events coalesced
+	 */
+	public synchronized long getCoalesced() {
+		return coalesced;
+	}
+
+	/**
+	 * Return number of batches applied
+	 *
+	 * @return number of batches
+	 */
+	public synchronized long getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Return number of events the graph failed to apply; the stream goes on
+	 * with the next events
+	 *
+	 * @return number of events failed
+	 */
+	public synchronized long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Queue an event, waiting while the queue is full
+	 *
+	 * @param e - event
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void put(Event e) throws InterruptedException {
+		queue.put(e);
+		received.incrementAndGet();
+	}
+
+	/**
+	 * Start reading an accepted connection, or close it if the stream was
+	 * closed meanwhile
+	 *
+	 * @param socket - connection
+	 * @return false if the stream was closed
+	 */
+	private boolean register(Socket socket) {
+		gate.readLock().lock();
+		try {
+			if (running) {
+				sources.add(socket);
+				read(socket.getInputStream(), socket,
+						"edge-stream " + socket.getRemoteSocketAddress());
+				return true;
+			}
+		} catch (IOException e) {
+			sources.remove(socket);
+		} finally {
+			gate.readLock().unlock();
+		}
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// closing anyway
+		}
+		return running;
+	}
+
+	/**
+	 * Parse commands from a stream on a new thread
+	 *
+	 * @param in     - input
+	 * @param source - source the input belongs to
+	 * @param name   - thread name
+	 */
+	private void read(InputStream in, Closeable source, String name) {
+		Thread reader = new Thread(() -> {
+			try (InputStream input = in) {
+				CommandTokenizer tok = new CommandTokenizer(input,
+						new NameTable());
+				int errors = 0; // malformed lines reported by the tokenizer
+				while (tok.next()) {
+					rejected.addAndGet(tok.errorCount() - errors);
+					errors = tok.errorCount();
+					if (tok.argc() != 2) {
+						rejected.incrementAndGet();
+						continue;
+					}
+					put(new Event(tok.command() == CommandTokenizer.ADD,
+							tok.arg(0), tok.arg(1)));
+				}
+				rejected.addAndGet(tok.errorCount() - errors);
+			} catch (IOException e) {
+				// source closed
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				sources.remove(source);
+			}
+		}, name);
+		reader.setDaemon(true);
+		readers.add(reader);
+		reader.start();
+	}
+
+	/**
+	 * Take and apply batches until closed and drained
+	 */
+	private void run() {
+		List<Event> batch = new ArrayList<Event>(batchSize);
+		try {
+			while (running || !queue.isEmpty()
+					|| readers.stream().anyMatch(Thread::isAlive)) {
+				Event first = queue.poll(window, TimeUnit.MILLISECONDS);
+				if (first == null)
+					continue;
+				batch.add(first);
+				long deadline = System.nanoTime()
+						+ TimeUnit.MILLISECONDS.toNanos(window);
+				while (batch.size() < batchSize) {
+					if (queue.drainTo(batch, batchSize - batch.size()) > 0)
+						continue;
+					long wait = deadline - System.nanoTime();
+					Event e = wait > 0
+							? queue.poll(wait, TimeUnit.NANOSECONDS)
+							: null;
+					if (e == null)
+						break;
+					batch.add(e);
+				}
+				apply(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Coalesce a batch and apply it under the write lock. Only the last
+	 * event of a friendship matters, except that an add replaced by a later
+	 * remove still creates both people, as applying them in order would.
+	 *
+	 * @param batch - events in arrival order
+	 */
+	private void apply(List<Event> batch) {
+		Map<Event, Event> last = new LinkedHashMap<Event, Event>();
+		for (Event e : batch) {
+			Event prev = last.put(e, e);
+			if (prev != null && !e.add)
+				e.create = prev.add || prev.create;
+		}
+		int errors = 0;
+		lock.writeLock().lock();
+		try {
+			for (Event e : last.values()) {
+				try {
+					if (e.add)
+						g.addEdge(e.str1, e.str2);
+					else {
+						if (e.create) {
+							g.addVertex(e.str1);
+							g.addVertex(e.str2);
+						}
+						g.removeEdge(e.str1, e.str2);
+					}
+				} catch (RuntimeException ex) {
+					errors++; // the applier must outlive a failing event
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		synchronized (this) {
+			applied += last.size() - errors;
+			failed += errors;
+			coalesced += batch.size() - last.size();
+			batches++;
+		}
+	}
+
+	/**
+	 * Friendship event, equal to any event on the same pair of people
+	 */
+	private static class Event {
+		boolean add;
+		boolean create; // create both people before removing
+		String str1;
+		String str2;
+
+		/**
+		 * Construct an event
+		 *
+		 * @param add  - true to add the friendship, false to remove it
+		 * @param str1 - vertex name
+		 * @param str2 - vertex name
+		 */
+		Event(boolean add, String str1, String str2) {
+			this.add = add;
+			this.str1 = str1;
+			this.str2 = str2;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Event))
+				return false;
+			Event e = (Event) o;
+			return str1.equals(e.str1) && str2.equals(e.str2)
+					|| str1.equals(e.str2) && str2.equals(e.str1);
+		}
+
+		@Override
+		public int hashCode() {
+			return str1.hashCode() ^ str2.hashCode();
+		}
+	}
+
+	/**
+	 * Input stream over a growing file, waiting for more data at its end
+	 * until closed
+	 */
+	private static class Tail extends InputStream {
+		private RandomAccessFile file;
+		private volatile boolean closed;
+
+		/**
+		 * Open a file
+		 *
+		 * @param file - file
+		 * @throws IOException if the file cannot be opened
+		 */
+		Tail(File file) throws IOException {
+			this.file = new RandomAccessFile(file, "r");
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			while (true) {
+				boolean last = closed; // read what is left after closing
+				int count = file.read(b, off, len);
+				if (count > 0)
+					return count;
+				if (last)
+					return -1;
+				try {
+					Thread.sleep(POLL_MILLIS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return -1;
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				file.close();
+				return;
+			}
+			closed = true; // the reader drains the file and closes it
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class EdgeStreamTest {
+	private SocialNetwork sn;
+	private ReentrantReadWriteLock lock;
+
+	@BeforeEach
+	public void setup() {
+		sn = new SocialNetwork();
+		lock = new ReentrantReadWriteLock(true);
+	}
+
+	private void await(LongSupplier count, long expected)
+			throws InterruptedException {
+		for (int i = 0; i < 200 && count.getAsLong() < expected; i++)
+			Thread.sleep(25);
+		assertEquals(expected, count.getAsLong());
+	}
+
+	@Test
+	public void test01_coalesce_batch() throws InterruptedException {
+		sn.addEdge("C", "D");
+		EdgeStream stream = new EdgeStream(sn, lock, 16, 1000, 200);
+		stream.submit(true, "A", "B");
+		stream.submit(false, "B", "A");
+		stream.submit(true, "C", "E");
+		stream.submit(false, "C", "D");
+		stream.submit(true, "D", "C");
+		stream.close();
+		assertEquals(Set.of("A", "B", "C", "D", "E"), sn.getAllVertices());
+		assertEquals(Set.of(), sn.getAdjacent("A"));
+		assertEquals(Set.of("D", "E"), sn.getAdjacent("C"));
+		assertEquals(5, stream.getReceived());
+		assertEquals(5, stream.getApplied() + stream.getCoalesced());
+	}
+
+	@Test
+	public void test02_backpressure() throws InterruptedException {
+		EdgeStream stream = new EdgeStream(sn, lock, 4, 8, 1);
+		lock.readLock().lock(); // stall the applier
+		Thread producer = new Thread(() -> {
+			try {
+				for (int i = 0; i < 100; i++)
+					stream.submit(true, "A", "B" + i);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		producer.start();
+		Thread.sleep(200);
+		assertTrue(stream.getReceived() <= 4 + 8);
+		lock.readLock().unlock();
+		producer.join();
+		stream.close();
+		assertEquals(100, sn.getAdjacent("A").size());
+		assertEquals(100, stream.getApplied());
+	}
+
+	@Test
+	public void test03_follow_and_listen() throws Exception {
+		File file = File.createTempFile("events", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), "a A B\nbad\n".getBytes());
+		EdgeStream stream = new EdgeStream(sn, lock, 64, 64, 10);
+		stream.follow(file);
+		await(stream::getApplied, 1);
+		Files.write(file.toPath(), "a B C\nr A B\n".getBytes(),
+				StandardOpenOption.APPEND);
+		await(stream::getReceived, 3);
+
+		int port = stream.listen(0);
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+				port)) {
+			OutputStream out = socket.getOutputStream();
+			out.write("a C D\ns C\na D E\n".getBytes(StandardCharsets.UTF_8));
+		}
+		await(stream::getReceived, 5);
+		stream.close();
+		assertEquals(Set.of("B", "D"), sn.getAdjacent("C"));
+		assertEquals(Set.of(), sn.getAdjacent("A"));
+		assertEquals(Set.of("C", "E"), sn.getAdjacent("D"));
+		assertEquals(2, stream.getRejected());
+	}
+
+	@Test
+	public void test04_failures_keep_applying() throws InterruptedException {
+		SocialNetwork failing = new SocialNetwork() {
+			@Override
+			public boolean addEdge(String str1, String str2) {
+				if (str1.equals("boom"))
+					throw new IllegalStateException("refused");
+				return super.addEdge(str1, str2);
+			}
+		};
+		EdgeStream stream = new EdgeStream(failing, lock, 4, 2, 1);
+		assertThrows(IllegalArgumentException.class,
+				() -> stream.submit(true, null, "B"));
+		stream.submit(true, "boom", "B");
+		for (int i = 0; i < 20; i++) // more than the queue holds
+			stream.submit(true, "A", "B" + i);
+		stream.close();
+		assertEquals(20, failing.getAdjacent("A").size());
+		assertEquals(1, stream.getFailed());
+		assertEquals(20, stream.getApplied());
+	}
+
+	@Test
+	public void test05_million_events() throws InterruptedException {
+		// 80% adds and 20% removes over 100k pairs, replayed in order too
+		int events = 1000000;
+		Random random = new Random(36);
+		boolean[] add = new boolean[events];
+		String[] names = new String[2 * events];
+		for (int i = 0; i < events; i++) {
+			add[i] = random.nextInt(5) != 0;
+			names[2 * i] = "p" + random.nextInt(450);
+			names[2 * i + 1] = "p" + random.nextInt(450);
+		}
+		SocialNetwork replayed = new SocialNetwork();
+		for (int i = 0; i < events; i++)
+			if (add[i])
+				replayed.addEdge(names[2 * i], names[2 * i + 1]);
+			else
+				replayed.removeEdge(names[2 * i], names[2 * i + 1]);
+
+		EdgeStream stream = new EdgeStream(sn, lock, 4096, 1024, 10);
+		for (int i = 0; i < events; i++)
+			stream.submit(add[i], names[2 * i], names[2 * i + 1]);
+		stream.close();
+		assertEquals(events, stream.getApplied() + stream.getCoalesced());
+		assertEquals(replayed.size(), sn.size());
+		for (String v : replayed.getAllVertices())
+			assertEquals(replayed.getAdjacent(v), sn.getAdjacent(v));
+	}
+
+	@Test
+	public void test06_close_while_connecting() {
+		assertTimeoutPreemptively(Duration.ofSeconds(20), () -> {
+			for (int round = 0; round < 20; round++) {
+				EdgeStream stream = new EdgeStream(new SocialNetwork(), lock,
+						4, 4, 1);
+				int port = stream.listen(0);
+				Thread client = new Thread(() -> {
+					for (int i = 0;; i++) {
+						try (Socket socket = new Socket(
+								InetAddress.getLoopbackAddress(), port)) {
+							socket.getOutputStream().write(("a A B" + i + "\n")
+									.getBytes(StandardCharsets.UTF_8));
+						} catch (IOException e) {
+							return; // server closed
+						}
+					}
+				});
+				client.start();
+				Thread.sleep(round % 5);
+				stream.close();
+				client.join();
+				assertEquals(stream.getReceived(), stream.getApplied()
+						+ stream.getCoalesced() + stream.getFailed());
+			}
+		});
+	}
+
+	@Test
+	public void test07_submit_while_closing() throws InterruptedException {
+		EdgeStream stream = new EdgeStream(sn, lock, 2, 2, 1);
+		Thread[] producers = new Thread[4];
+		for (int p = 0; p < producers.length; p++) {
+			String name = "P" + p;
+			producers[p] = new Thread(() -> {
+				try {
+					for (int i = 0;; i++)
+						stream.submit(true, name, "F" + i);
+				} catch (IllegalStateException | InterruptedException e) {
+					// closed
+				}
+			});
+			producers[p].start();
+		}
+		Thread.sleep(20);
+		stream.close();
+		for (Thread producer : producers)
+			producer.join();
+		// every event counted as received was applied
+		assertEquals(stream.getReceived(), stream.getApplied());
+		assertEquals(stream.getReceived(), sn.size());
+		assertThrows(IllegalStateException.class,
+				() -> stream.submit(true, "A", "B"));
+	}
+}
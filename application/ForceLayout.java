@@ -0,0 +1,496 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Multilevel force-directed layout of a whole graph. The graph is coarsened
+ * by repeatedly merging matched neighbours; the coarsest level is laid out
+ * first and every finer level starts from the positions of the level above.
+ * Repulsion is approximated with a Barnes-Hut quadtree, so an iteration costs
+ * O(n log n). The layout runs on a background thread and streams
+ * intermediate positions to a listener.
+ *
+ * @author Zhaoyi
+ */
+public class ForceLayout implements Runnable {
+	private static final double THETA = 1.2; // Barnes-Hut opening criterion
+	private static final double K = 1.0; // ideal edge length
+	private static final int COARSEST = 64; // stop coarsening below this
+	private static final int MAX_DEPTH = 24; // depth limit of the quadtree
+	private static final long FRAME_MS = 50; // time between streamed frames
+
+	/**
+	 * Receiver of layout positions, called on the layout thread
+	 */
+	public interface Listener {
+		/**
+		 * Receive positions of all vertices
+		 *
+		 * @param x    - x coordinates indexed by vertex id
+		 * @param y    - y coordinates indexed by vertex id
+		 * @param done - true if this is the final layout
+		 */
+		void update(double[] x, double[] y, boolean done);
+	}
+
+	private CsrGraph csr;
+	private Listener listener;
+	private volatile boolean cancelled;
+	private Random random;
+
+	// time the last frame was streamed
+	private long lastFrame;
+
+	/**
+	 * Construct a layout
+	 *
+	 * @param csr      - graph to lay out
+	 * @param listener - receiver of positions
+	 */
+	public ForceLayout(CsrGraph csr, Listener listener) {
+		super();
+		this.csr = csr;
+		this.listener = listener;
+		random = new Random(csr.order());
+	}
+
+	/**
+	 * Run the layout on a new background thread
+	 */
+	public void start() {
+		Thread worker = new Thread(this, "force-layout");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Stop the layout as soon as possible; no more frames are streamed
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Lay out the graph level by level, from the coarsest to the finest
+	 */
+	@Override
+	public void run() {
+		int n = csr.order();
+		if (n == 0)
+			return;
+		Level finest = new Level(n, csr.offsets, csr.targets, new double[n]);
+		Arrays.fill(finest.mass, 1);
+
+		// coarsen, remembering where every original vertex ends up
+		List<Level> levels = new ArrayList<Level>();
+		List<int[]> maps = new ArrayList<int[]>();
+		int[] identity = new int[n];
+		for (int i = 0; i < n; i++)
+			identity[i] = i;
+		levels.add(finest);
+		maps.add(identity);
+		for (Level next; !cancelled
+				&& (next = coarsen(levels.get(levels.size() - 1))) != null;) {
+			int[] prev = maps.get(maps.size() - 1);
+			int[] map = new int[n];
+			for (int i = 0; i < n; i++)
+				map[i] = levels.get(levels.size() - 1).parent[prev[i]];
+			levels.add(next);
+			maps.add(map);
+		}
+
+		for (int l = levels.size() - 1; l >= 0 && !cancelled; l--) {
+			Level level = levels.get(l);
+			double temperature;
+			int iterations;
+			if (l == levels.size() - 1) { // random start
+				double side = Math.sqrt(level.n) * K;
+				for (int i = 0; i < level.n; i++) {
+					level.x[i] = random.nextDouble() * side;
+					level.y[i] = random.nextDouble() * side;
+				}
+				temperature = side / 4;
+				iterations = 200;
+			} else { // start from the coarser level
+				Level coarse = levels.get(l + 1);
+				double scale = Math.sqrt((double) level.n / coarse.n);
+				for (int i = 0; i < level.n; i++) {
+					int p = level.parent[i];
+					level.x[i] = coarse.x[p] * scale
+							+ (random.nextDouble() - 0.5) * K;
+					level.y[i] = coarse.y[p] * scale
+							+ (random.nextDouble() - 0.5) * K;
+				}
+				temperature = 2 * K;
+				// large levels start close to converged and need few passes
+				iterations = Math.max(20, Math.min(80, 500000 / level.n));
+			}
+			iterate(level, maps.get(l), iterations, temperature);
+		}
+		if (!cancelled)
+			listener.update(finest.x.clone(), finest.y.clone(), true);
+	}
+
+	/**
+	 * Run force-directed iterations on a level
+	 *
+	 * @param level       - level to lay out
+	 * @param map         - level id of every original vertex
+	 * @param iterations  - number of iterations
+	 * @param temperature - initial maximum displacement
+	 */
+	private void iterate(Level level, int[] map, int iterations,
+			double temperature) {
+		double[] dx = new double[level.n];
+		double[] dy = new double[level.n];
+		for (int it = 0; it < iterations && !cancelled; it++) {
+			QuadTree tree = new QuadTree(level);
+			IntStream.range(0, level.n).parallel().forEach(i -> {
+				tree.repulsion(i, dx, dy);
+				double fx = dx[i];
+				double fy = dy[i];
+
+				// attraction along edges
+				for (int k = level.off[i]; k < level.off[i + 1]; k++) {
+					int j = level.adj[k];
+					double ex = level.x[j] - level.x[i];
+					double ey = level.y[j] - level.y[i];
+					double d = Math.sqrt(ex * ex + ey * ey);
+					fx += ex * d / K;
+					fy += ey * d / K;
+				}
+				dx[i] = fx;
+				dy[i] = fy;
+			});
+
+			// move, limited by the temperature
+			for (int i = 0; i < level.n; i++) {
+				double len = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+				if (len > 0) {
+					double step = Math.min(len, temperature) / len;
+					level.x[i] += dx[i] * step;
+					level.y[i] += dy[i] * step;
+				}
+			}
+			temperature *= 0.95;
+			stream(level, map);
+		}
+	}
+
+	/**
+	 * Stream the positions of a level to the listener if a frame is due
+	 *
+	 * @param level - current level
+	 * @param map   - level id of every original vertex
+	 */
+	private void stream(Level level, int[] map) {
+		long now = System.currentTimeMillis();
+		if (now - lastFrame < FRAME_MS || cancelled)
+			return;
+		lastFrame = now;
+		int n = map.length;
+		double[] x = new double[n];
+		double[] y = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = level.x[map[i]];
+			y[i] = level.y[map[i]];
+		}
+		listener.update(x, y, false);
+	}
+
+	/**
+	 * Merge matched pairs of neighbours into a coarser level
+	 *
+	 * @param fine - level to coarsen
+	 * @return coarser level or null if it would not shrink enough
+	 */
+	private Level coarsen(Level fine) {
+		int n = fine.n;
+		if (n <= COARSEST)
+			return null;
+
+		// visit vertices in random order, merge with the lightest neighbour
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+		int[] parent = new int[n];
+		Arrays.fill(parent, -1);
+		int m = 0;
+		for (int v : order) {
+			if (parent[v] != -1)
+				continue;
+			int best = -1;
+			for (int k = fine.off[v]; k < fine.off[v + 1]; k++) {
+				int u = fine.adj[k];
+				if (parent[u] == -1 && u != v
+						&& (best == -1 || fine.mass[u] < fine.mass[best]))
+					best = u;
+			}
+			parent[v] = m;
+			if (best != -1)
+				parent[best] = m;
+			m++;
+		}
+		if (m > n * 0.8) // matching is too sparse to be worth a level
+			return null;
+
+		// merge adjacency, dropping self loops and duplicates
+		double[] mass = new double[m];
+		int[] off = new int[m + 1];
+		for (int v = 0; v < n; v++) {
+			mass[parent[v]] += fine.mass[v];
+			off[parent[v] + 1] += fine.off[v + 1] - fine.off[v];
+		}
+		for (int c = 0; c < m; c++)
+			off[c + 1] += off[c];
+		int[] adj = new int[off[m]];
+		int[] fill = Arrays.copyOf(off, m);
+		for (int v = 0; v < n; v++)
+			for (int k = fine.off[v]; k < fine.off[v + 1]; k++) {
+				int a = parent[v];
+				int b = parent[fine.adj[k]];
+				if (a != b)
+					adj[fill[a]++] = b;
+			}
+		int size = 0;
+		int[] compact = new int[m + 1];
+		for (int c = 0; c < m; c++) {
+			Arrays.sort(adj, off[c], fill[c]);
+			compact[c] = size;
+			for (int k = off[c]; k < fill[c]; k++)
+				if (k == off[c] || adj[k] != adj[k - 1])
+					adj[size++] = adj[k];
+		}
+		compact[m] = size;
+
+		fine.parent = parent;
+		return new Level(m, compact, Arrays.copyOf(adj, size), mass);
+	}
+
+	/**
+	 * One level of the multilevel hierarchy
+	 */
+	private static class Level {
+		int n;
+		int[] off;
+		int[] adj;
+		double[] mass;
+		double[] x;
+		double[] y;
+
+		// vertex of the coarser level each vertex is merged into
+		int[] parent;
+
+		/**
+		 * Construct a level
+		 *
+		 * @param n    - number of vertices
+		 * @param off  - neighbour offsets
+		 * @param adj  - neighbours
+		 * @param mass - number of original vertices merged into each vertex
+		 */
+		Level(int n, int[] off, int[] adj, double[] mass) {
+			this.n = n;
+			this.off = off;
+			this.adj = adj;
+			this.mass = mass;
+			x = new double[n];
+			y = new double[n];
+		}
+	}
+
+	/**
+	 * Barnes-Hut quadtree stored in parallel arrays. Children of a node are
+	 * four consecutive nodes starting at child[node].
+	 */
+	private static class QuadTree {
+		private static final ThreadLocal<int[]> STACK = ThreadLocal
+				.withInitial(() -> new int[4 * MAX_DEPTH + 8]);
+
+		private Level level;
+		private int[] idx; // vertices, grouped by leaf
+		private int nodes;
+		private int[] child;
+		private int[] start;
+		private int[] count;
+		private double[] side;
+		private double[] mass;
+		private double[] cx;
+		private double[] cy;
+
+		/**
+		 * Build the quadtree over the positions of a level
+		 *
+		 * @param level - level
+		 */
+		QuadTree(Level level) {
+			this.level = level;
+			int n = level.n;
+			idx = new int[n];
+			double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+			double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+			for (int i = 0; i < n; i++) {
+				idx[i] = i;
+				minX = Math.min(minX, level.x[i]);
+				minY = Math.min(minY, level.y[i]);
+				maxX = Math.max(maxX, level.x[i]);
+				maxY = Math.max(maxY, level.y[i]);
+			}
+			int capacity = 4 * n + 1;
+			child = new int[capacity];
+			start = new int[capacity];
+			count = new int[capacity];
+			side = new double[capacity];
+			mass = new double[capacity];
+			cx = new double[capacity];
+			cy = new double[capacity];
+			nodes = 1;
+			build(0, 0, n, minX, minY,
+					Math.max(Math.max(maxX - minX, maxY - minY), 1e-9), 0);
+		}
+
+		/**
+		 * Build a subtree by partitioning its vertices into quadrants
+		 *
+		 * @param node  - node index
+		 * @param lo    - first vertex in idx
+		 * @param hi    - one past the last vertex in idx
+		 * @param x0    - left of the square
+		 * @param y0    - top of the square
+		 * @param s     - side of the square
+		 * @param depth - depth of the node
+		 */
+		private void build(int node, int lo, int hi, double x0, double y0,
+				double s, int depth) {
+			start[node] = lo;
+			count[node] = hi - lo;
+			side[node] = s;
+			child[node] = -1;
+			double m = 0, sx = 0, sy = 0;
+			for (int k = lo; k < hi; k++) {
+				int v = idx[k];
+				m += level.mass[v];
+				sx += level.x[v] * level.mass[v];
+				sy += level.y[v] * level.mass[v];
+			}
+			mass[node] = m;
+			cx[node] = m > 0 ? sx / m : 0;
+			cy[node] = m > 0 ? sy / m : 0;
+			if (hi - lo <= 1 || depth >= MAX_DEPTH)
+				return;
+
+			double h = s / 2;
+			int midY = partition(lo, hi, y0 + h, level.y);
+			int midTop = partition(lo, midY, x0 + h, level.x);
+			int midBottom = partition(midY, hi, x0 + h, level.x);
+			int c = allocate();
+			child[node] = c;
+			build(c, lo, midTop, x0, y0, h, depth + 1);
+			build(c + 1, midTop, midY, x0 + h, y0, h, depth + 1);
+			build(c + 2, midY, midBottom, x0, y0 + h, h, depth + 1);
+			build(c + 3, midBottom, hi, x0 + h, y0 + h, h, depth + 1);
+		}
+
+		/**
+		 * Reserve four consecutive nodes, growing the arrays if needed
+		 *
+		 * @return index of the first node
+		 */
+		private int allocate() {
+			if (nodes + 4 > child.length) {
+				int capacity = child.length * 2;
+				child = Arrays.copyOf(child, capacity);
+				start = Arrays.copyOf(start, capacity);
+				count = Arrays.copyOf(count, capacity);
+				side = Arrays.copyOf(side, capacity);
+				mass = Arrays.copyOf(mass, capacity);
+				cx = Arrays.copyOf(cx, capacity);
+				cy = Arrays.copyOf(cy, capacity);
+			}
+			nodes += 4;
+			return nodes - 4;
+		}
+
+		/**
+		 * Move vertices with a coordinate below the pivot to the front
+		 *
+		 * @param lo    - first vertex in idx
+		 * @param hi    - one past the last vertex in idx
+		 * @param pivot - pivot coordinate
+		 * @param coord - coordinates to compare
+		 * @return index of the first vertex not below the pivot
+		 */
+		private int partition(int lo, int hi, double pivot, double[] coord) {
+			int i = lo;
+			for (int k = lo; k < hi; k++)
+				if (coord[idx[k]] < pivot) {
+					int t = idx[i];
+					idx[i++] = idx[k];
+					idx[k] = t;
+				}
+			return i;
+		}
+
+		/**
+		 * Approximate the repulsion on a vertex from all other vertices
+		 *
+		 * @param i  - vertex
+		 * @param fx - receives the x component at index i
+		 * @param fy - receives the y component at index i
+		 */
+		void repulsion(int i, double[] fx, double[] fy) {
+			double xi = level.x[i];
+			double yi = level.y[i];
+			double sx = 0, sy = 0;
+			int[] stack = STACK.get();
+			int top = 0;
+			stack[top++] = 0;
+			while (top > 0) {
+				int node = stack[--top];
+				if (count[node] == 0)
+					continue;
+				if (child[node] == -1) { // leaf: exact pairwise forces
+					for (int k = start[node]; k < start[node] + count[node]; k++) {
+						int j = idx[k];
+						if (j == i)
+							continue;
+						double ex = xi - level.x[j];
+						double ey = yi - level.y[j];
+						double d2 = ex * ex + ey * ey;
+						if (d2 < 1e-12) { // coincident, push apart
+							ex = i < j ? 1e-3 : -1e-3;
+							d2 = 1e-6;
+						}
+						double f = level.mass[j] * K * K / d2;
+						sx += ex * f;
+						sy += ey * f;
+					}
+					continue;
+				}
+				double ex = xi - cx[node];
+				double ey = yi - cy[node];
+				double d2 = ex * ex + ey * ey;
+				if (side[node] * side[node] < THETA * THETA * d2) {
+					double f = mass[node] * K * K / d2; // far: use the centre
+					sx += ex * f;
+					sy += ey * f;
+				} else {
+					for (int c = 0; c < 4; c++)
+						stack[top++] = child[node] + c;
+				}
+			}
+			fx[i] = sx;
+			fy[i] = sy;
+		}
+	}
+}
@@ -0,0 +1,620 @@
+package application;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Friends of a person, stored in a representation chosen by degree. Up to
+ * SMALL friends are a sorted array of people, up to HUB friends an open
+ * addressing table of people keyed by id, and beyond that a compressed
+ * bitmap of ids: one container per 65536 ids, holding either the sorted low
+ * 16 bits of its ids or, once dense, a plain bitmap. The representation
+ * changes as the degree crosses the thresholds, with some slack so that a
+ * degree going up and down does not convert back and forth.
+ *
+ * Operations on a bitmap only know ids, so they take the people of the
+ * network indexed by id.
+ *
+ * @author Zhaoyi
+ */
+class FriendSet {
+	static final int SMALL = 32; // most people
+	static final int HUB = 4096; // larger sets become bitmaps
+
+	private static final byte SORTED = 0;
+	private static final byte TABLE = 1;
+	private static final byte BITMAP = 2;
+
+	private byte kind;
+	private Person[] items; // sorted by id, or hash table
+	private Container[] containers; // bitmap by high 16 bits of ids
+	private int size;
+	private int mods; // changes, to detect concurrent modification
+
+	/**
+	 * Construct an empty set
+	 */
+	FriendSet() {
+		super();
+		items = new Person[4];
+	}
+
+	/**
+	 * Return number of friends
+	 *
+	 * @return number of friends
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Check if a person is a friend
+	 *
+	 * @param p - person
+	 * @return true if a friend
+	 */
+	boolean contains(Person p) {
+		switch (kind) {
+			case SORTED:
+				return search(p.id) >= 0;
+			case TABLE:
+				return items[slot(p.id)] != null;
+			default:
+				Container c = container(p.id);
+				return c != null && c.contains((char) p.id);
+		}
+	}
+
+	/**
+	 * Add a friend
+	 *
+	 * @param p - person
+	 * @return true if not a friend before
+	 */
+	boolean add(Person p) {
+		if (kind == SORTED) {
+			int i = search(p.id);
+			if (i >= 0)
+				return false;
+			if (size == SMALL) {
+				toTable(2 * SMALL);
+				return add(p);
+			}
+			i = -i - 1;
+			if (size == items.length)
+				items = Arrays.copyOf(items, 2 * size);
+			System.arraycopy(items, i, items, i + 1, size - i);
+			items[i] = p;
+		} else if (kind == TABLE) {
+			int slot = slot(p.id);
+			if (items[slot] != null)
+				return false;
+			if (size == HUB) {
+				toBitmap();
+				return add(p);
+			}
+			items[slot] = p;
+			if ((size + 1) * 2 > items.length)
+				items = rehash(items, items.length * 2);
+		} else {
+			int high = p.id >>> 16;
+			if (high >= containers.length)
+				containers = Arrays.copyOf(containers,
+						Math.max(high + 1, 2 * containers.length));
+			if (containers[high] == null)
+				containers[high] = new Container();
+			if (!containers[high].add((char) p.id))
+				return false;
+		}
+		size++;
+		mods++;
+		return true;
+	}
+
+	/**
+	 * Remove a friend
+	 *
+	 * @param p      - person
+	 * @param people - people of the network by id
+	 * @return true if a friend before
+	 */
+	boolean remove(Person p, Person[] people) {
+		if (kind == SORTED) {
+			int i = search(p.id);
+			if (i < 0)
+				return false;
+			System.arraycopy(items, i + 1, items, i, size - i - 1);
+			items[size - 1] = null;
+		} else if (kind == TABLE) {
+			int slot = slot(p.id);
+			if (items[slot] == null)
+				return false;
+			delete(slot);
+		} else {
+			Container c = container(p.id);
+			if (c == null || !c.remove((char) p.id))
+				return false;
+			if (c.size == 0)
+				containers[p.id >>> 16] = null;
+		}
+		size--;
+		mods++;
+		if (kind == TABLE && size < SMALL / 2)
+			toSorted();
+		else if (kind == BITMAP && size < HUB / 2)
+			toTable(people);
+		return true;
+	}
+
+	/**
+	 * Visit every friend
+	 *
+	 * @param people - people of the network by id
+	 * @param action - action applied to each friend
+	 */
+	void forEach(Person[] people, Consumer<Person> action) {
+		int expected = mods;
+		if (kind == BITMAP) {
+			for (int high = 0; high < containers.length; high++)
+				if (containers[high] != null)
+					containers[high].forEach(high << 16, people, action,
+							this, expected);
+			return;
+		}
+		int stop = kind == SORTED ? size : items.length;
+		for (int i = 0; i < stop; i++) {
+			if (items[i] != null)
+				action.accept(items[i]);
+			if (mods != expected)
+				throw new ConcurrentModificationException();
+		}
+	}
+
+	/**
+	 * Iterate over the friends
+	 *
+	 * @param people - people of the network by id
+	 * @return iterator, failing fast if the set changes meanwhile
+	 */
+	Iterator<Person> iterator(Person[] people) {
+		return new Iterator<Person>() {
+			private int expected = mods;
+			private int i = -1; // index of the item, or id in a bitmap
+			private Person next = advance();
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Person next() {
+				if (next == null)
+					throw new NoSuchElementException();
+				if (mods != expected)
+					throw new ConcurrentModificationException();
+				Person p = next;
+				next = advance();
+				return p;
+			}
+
+			/**
+			 * Find the next friend
+			 *
+			 * @return friend or null at the end
+			 */
+			private Person advance() {
+				if (kind == BITMAP) {
+					i = nextId(i + 1);
+					return i == -1 ? null : people[i];
+				}
+				int stop = kind == SORTED ? size : items.length;
+				while (++i < stop)
+					if (items[i] != null)
+						return items[i];
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Visit the friends two sets have in common, using the representations
+	 * of both when they match
+	 *
+	 * @param a      - set
+	 * @param b      - set
+	 * @param people - people of the network by id
+	 * @param action - action applied to each mutual friend
+	 */
+	static void intersect(FriendSet a, FriendSet b, Person[] people,
+			Consumer<Person> action) {
+		if (a.size > b.size) { // visit the smaller set
+			FriendSet t = a;
+			a = b;
+			b = t;
+		}
+		if (a.kind == SORTED && b.kind == SORTED) { // merge
+			for (int i = 0, j = 0; i < a.size && j < b.size;) {
+				int d = Integer.compare(a.items[i].id, b.items[j].id);
+				if (d == 0)
+					action.accept(a.items[i]);
+				if (d <= 0)
+					i++;
+				if (d >= 0)
+					j++;
+			}
+		} else if (a.kind == BITMAP && b.kind == BITMAP) { // per container
+			int n = Math.min(a.containers.length, b.containers.length);
+			for (int high = 0; high < n; high++)
+				if (a.containers[high] != null && b.containers[high] != null)
+					a.containers[high].intersect(b.containers[high],
+							high << 16, people, action);
+		} else {
+			FriendSet other = b;
+			a.forEach(people, p -> {
+				if (other.contains(p))
+					action.accept(p);
+			});
+		}
+	}
+
+	/**
+	 * Estimate the memory taken by the set
+	 *
+	 * @return number of bytes
+	 */
+	long memory() {
+		long bytes = 32 + 16 + 4L * items.length;
+		if (containers != null) {
+			bytes += 16 + 4L * containers.length;
+			for (Container c : containers)
+				if (c != null)
+					bytes += c.memory();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Binary search a sorted array
+	 *
+	 * @param id - id
+	 * @return index, or -(insertion point) - 1 if absent
+	 */
+	private int search(int id) {
+		int lo = 0, hi = size - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int m = items[mid].id;
+			if (m < id)
+				lo = mid + 1;
+			else if (m > id)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -lo - 1;
+	}
+
+	/**
+	 * Find the slot of an id in the table, or the empty slot ending its
+	 * probe sequence
+	 *
+	 * @param id - id
+	 * @return slot
+	 */
+	private int slot(int id) {
+		int mask = items.length - 1;
+		int slot = mix(id) & mask;
+		for (Person p; (p = items[slot]) != null; slot = (slot + 1) & mask)
+			if (p.id == id)
+				return slot;
+		return slot;
+	}
+
+	/**
+	 * Empty a slot of the table, moving back later entries of the probe
+	 * sequence so that no tombstone is needed
+	 *
+	 * @param slot - slot
+	 */
+	private void delete(int slot) {
+		int mask = items.length - 1;
+		int hole = slot;
+		for (int i = (slot + 1) & mask; items[i] != null; i = (i + 1) & mask) {
+			int home = mix(items[i].id) & mask;
+			// move the entry if its home is not between the hole and it
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				items[hole] = items[i];
+				hole = i;
+			}
+		}
+		items[hole] = null;
+	}
+
+	/**
+	 * Convert to a table
+	 *
+	 * @param capacity - number of slots, a power of two
+	 */
+	private void toTable(int capacity) {
+		items = rehash(items, capacity);
+		kind = TABLE;
+	}
+
+	/**
+	 * Convert a bitmap to a table
+	 *
+	 * @param people - people of the network by id
+	 */
+	private void toTable(Person[] people) {
+		Person[] table = new Person[Integer.highestOneBit(size * 4 - 1)];
+		int mask = table.length - 1;
+		for (int id = nextId(0); id != -1; id = nextId(id + 1)) {
+			int slot = mix(id) & mask;
+			while (table[slot] != null)
+				slot = (slot + 1) & mask;
+			table[slot] = people[id];
+		}
+		items = table;
+		containers = null;
+		kind = TABLE;
+	}
+
+	/**
+	 * Convert a table to a sorted array
+	 */
+	private void toSorted() {
+		Person[] sorted = new Person[Math.max(4, 2 * size)];
+		int n = 0;
+		for (Person p : items)
+			if (p != null)
+				sorted[n++] = p;
+		Arrays.sort(sorted, 0, n, (p, q) -> Integer.compare(p.id, q.id));
+		items = sorted;
+		kind = SORTED;
+	}
+
+	/**
+	 * Convert a table to a bitmap
+	 */
+	private void toBitmap() {
+		containers = new Container[1];
+		Person[] table = items;
+		items = new Person[0];
+		kind = BITMAP;
+		size = 0;
+		for (Person p : table)
+			if (p != null)
+				add(p);
+	}
+
+	/**
+	 * Find the container of an id
+	 *
+	 * @param id - id
+	 * @return container or null
+	 */
+	private Container container(int id) {
+		int high = id >>> 16;
+		return high < containers.length ? containers[high] : null;
+	}
+
+	/**
+	 * Find the smallest id in the bitmap not below a bound
+	 *
+	 * @param from - bound
+	 * @return id or -1 if none
+	 */
+	private int nextId(int from) {
+		for (int high = from >>> 16; high < containers.length; high++) {
+			Container c = containers[high];
+			int low = high == from >>> 16 ? from & 0xffff : 0;
+			int next = c == null ? -1 : c.next(low);
+			if (next != -1)
+				return high << 16 | next;
+		}
+		return -1;
+	}
+
+	/**
+	 * Put the people of a sorted array or table in a new table
+	 *
+	 * @param old      - sorted array or table
+	 * @param capacity - number of slots, a power of two
+	 * @return table
+	 */
+	private static Person[] rehash(Person[] old, int capacity) {
+		Person[] table = new Person[capacity];
+		int mask = capacity - 1;
+		for (Person p : old) {
+			if (p == null)
+				continue;
+			int slot = mix(p.id) & mask;
+			while (table[slot] != null)
+				slot = (slot + 1) & mask;
+			table[slot] = p;
+		}
+		return table;
+	}
+
+	/**
+	 * Scramble the bits of an id
+	 *
+	 * @param id - id
+	 * @return hash
+	 */
+	private static int mix(int id) {
+		int h = id * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Ids sharing their high 16 bits: a sorted array of their low bits, or
+	 * a bitmap of all 65536 once that is smaller
+	 */
+	private static class Container {
+		private static final int DENSE = 4096; // array no larger than bitmap
+
+		char[] lows = new char[4];
+		long[] bits; // null while an array
+		int size;
+
+		/**
+		 * Check if an id is present
+		 *
+		 * @param low - low bits of the id
+		 * @return true if present
+		 */
+		boolean contains(char low) {
+			if (bits != null)
+				return (bits[low >>> 6] & 1L << low) != 0;
+			return Arrays.binarySearch(lows, 0, size, low) >= 0;
+		}
+
+		/**
+		 * Add an id
+		 *
+		 * @param low - low bits of the id
+		 * @return true if absent before
+		 */
+		boolean add(char low) {
+			if (bits != null) {
+				if ((bits[low >>> 6] & 1L << low) != 0)
+					return false;
+				bits[low >>> 6] |= 1L << low;
+				size++;
+				return true;
+			}
+			int i = Arrays.binarySearch(lows, 0, size, low);
+			if (i >= 0)
+				return false;
+			if (size == DENSE) { // becomes dense
+				bits = new long[1024];
+				for (int k = 0; k < size; k++)
+					bits[lows[k] >>> 6] |= 1L << lows[k];
+				lows = null;
+				return add(low);
+			}
+			i = -i - 1;
+			if (size == lows.length)
+				lows = Arrays.copyOf(lows, 2 * size);
+			System.arraycopy(lows, i, lows, i + 1, size - i);
+			lows[i] = low;
+			size++;
+			return true;
+		}
+
+		/**
+		 * Remove an id
+		 *
+		 * @param low - low bits of the id
+		 * @return true if present before
+		 */
+		boolean remove(char low) {
+			if (bits != null) {
+				if ((bits[low >>> 6] & 1L << low) == 0)
+					return false;
+				bits[low >>> 6] &= ~(1L << low);
+				if (--size < DENSE / 2) { // sparse again
+					lows = new char[DENSE];
+					for (int id = next(0), k = 0; id != -1; id = next(id + 1))
+						lows[k++] = (char) id;
+					bits = null;
+				}
+				return true;
+			}
+			int i = Arrays.binarySearch(lows, 0, size, low);
+			if (i < 0)
+				return false;
+			System.arraycopy(lows, i + 1, lows, i, --size - i);
+			return true;
+		}
+
+		/**
+		 * Find the smallest present low bits not below a bound
+		 *
+		 * @param from - bound
+		 * @return low bits or -1 if none
+		 */
+		int next(int from) {
+			if (bits == null) {
+				int i = Arrays.binarySearch(lows, 0, size, (char) from);
+				i = i >= 0 ? i : -i - 1;
+				return i < size ? lows[i] : -1;
+			}
+			for (int w = from >>> 6; w < bits.length; w++) {
+				long word = w == from >>> 6 ? bits[w] & -1L << from : bits[w];
+				if (word != 0)
+					return w << 6 | Long.numberOfTrailingZeros(word);
+			}
+			return -1;
+		}
+
+		/**
+		 * Visit every id
+		 *
+		 * @param base     - high bits of the ids
+		 * @param people   - people of the network by id
+		 * @param action   - action applied to each person
+		 * @param set      - set of the container
+		 * @param expected - changes of the set when the visit started
+		 */
+		void forEach(int base, Person[] people, Consumer<Person> action,
+				FriendSet set, int expected) {
+			if (bits == null) {
+				for (int i = 0; i < size; i++) {
+					action.accept(people[base | lows[i]]);
+					if (set.mods != expected)
+						throw new ConcurrentModificationException();
+				}
+				return;
+			}
+			for (int w = 0; w < bits.length; w++)
+				for (long word = bits[w]; word != 0; word &= word - 1) {
+					action.accept(people[base | w << 6
+							| Long.numberOfTrailingZeros(word)]);
+					if (set.mods != expected)
+						throw new ConcurrentModificationException();
+				}
+		}
+
+		/**
+		 * Visit the ids present in both containers
+		 *
+		 * @param other  - container
+		 * @param base   - high bits of the ids
+		 * @param people - people of the network by id
+		 * @param action - action applied to each person
+		 */
+		void intersect(Container other, int base, Person[] people,
+				Consumer<Person> action) {
+			if (bits != null && other.bits != null) {
+				for (int w = 0; w < bits.length; w++)
+					for (long word = bits[w] & other.bits[w]; word != 0;
+							word &= word - 1)
+						action.accept(people[base | w << 6
+								| Long.numberOfTrailingZeros(word)]);
+				return;
+			}
+			Container small = bits == null ? this : other;
+			Container large = small == this ? other : this;
+			for (int i = 0; i < small.size; i++)
+				if (large.contains(small.lows[i]))
+					action.accept(people[base | small.lows[i]]);
+		}
+
+		/**
+		 * Estimate the memory taken by the container
+		 *
+		 * @return number of bytes
+		 */
+		long memory() {
+			return 24 + (bits != null ? 16 + 8L * bits.length
+					: 16 + 2L * lows.length);
+		}
+	}
+}
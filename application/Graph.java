@@ -1,6 +1,7 @@
 package application;
 
 import java.util.Collection;
+import java.util.function.Consumer;
 
 /**
  * Graph
@@ -62,6 +63,35 @@ public interface Graph {
 	 */
 	public Collection<String> getAdjacent(String str);
 
+	/**
+	 * Visit every vertex without copying them
+	 * 
+	 * @param action - action applied to each vertex name
+	 */
+	public default void forEachVertex(Consumer<String> action) {
+		getAllVertices().forEach(action);
+	}
+
+	/**
+	 * Visit every adjacent vertex of a given vertex without copying them
+	 * 
+	 * @param str    - vertex name
+	 * @param action - action applied to each adjacent vertex name
+	 */
+	public default void forEachNeighbor(String str, Consumer<String> action) {
+		getAdjacent(str).forEach(action);
+	}
+
+	/**
+	 * Return number of adjacent vertices of a given vertex
+	 * 
+	 * @param str - vertex name
+	 * @return degree, 0 if the vertex is not in graph
+	 */
+	public default int degree(String str) {
+		return getAdjacent(str).size();
+	}
+
 	/**
 	 * Return number of edges
 	 * 
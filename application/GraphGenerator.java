@@ -0,0 +1,372 @@
+package application;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic generator of synthetic social networks. Every person gets a
+ * weight drawn from a power law and belongs to one of several communities
+ * of power-law sizes. Each friendship picks a person with probability
+ * proportional to weight, then a friend in the same community, or with
+ * probability mixing anywhere, again proportional to weight; degrees thus
+ * follow the weights (Chung-Lu) with dense communities. The same seed
+ * always gives the same graph.
+ *
+ * @author Zhaoyi
+ */
+public class GraphGenerator {
+	/**
+	 * Receiver of generated friendships
+	 */
+	public interface EdgeVisitor {
+		/**
+		 * Receive a friendship
+		 *
+		 * @param u - person id
+		 * @param v - person id
+		 */
+		void edge(int u, int v);
+	}
+
+	private int vertices;
+	private long edges;
+	private long seed;
+	private double exponent;
+	private int communities;
+	private double mixing;
+	private String[] names;
+	private int[] starts; // first person of every community
+
+	// picks in a row finding known friendships before picking anywhere
+	private static final int MISSES = 64;
+
+	/**
+	 * Construct a generator with degree exponent 2.5, about one community
+	 * per 1000 people and 10% of friendships between communities
+	 *
+	 * @param vertices - number of people
+	 * @param edges    - number of distinct friendships
+	 * @param seed     - random seed
+	 */
+	public GraphGenerator(int vertices, long edges, long seed) {
+		super();
+		if (edges > (long) vertices * (vertices - 1) / 4)
+			throw new IllegalArgumentException("too many edges for "
+					+ vertices + " people");
+		this.vertices = vertices;
+		this.edges = edges;
+		this.seed = seed;
+		exponent = 2.5;
+		communities = Math.max(1, vertices / 1000);
+		mixing = 0.1;
+	}
+
+	/**
+	 * Set the exponent of the power-law degree distribution
+	 *
+	 * @param exponent - exponent, greater than 2
+	 * @return this generator
+	 */
+	public GraphGenerator exponent(double exponent) {
+		this.exponent = exponent;
+		return this;
+	}
+
+	/**
+	 * Set the number of communities
+	 *
+	 * @param communities - number of communities
+	 * @return this generator
+	 */
+	public GraphGenerator communities(int communities) {
+		this.communities = Math.max(1, Math.min(communities, vertices));
+		starts = null;
+		return this;
+	}
+
+	/**
+	 * Set the fraction of friendships between communities
+	 *
+	 * @param mixing - fraction between 0 and 1
+	 * @return this generator
+	 */
+	public GraphGenerator mixing(double mixing) {
+		this.mixing = mixing;
+		return this;
+	}
+
+	/**
+	 * Return the name of a person
+	 *
+	 * @param v - person id
+	 * @return name
+	 */
+	public String name(int v) {
+		if (names == null) {
+			names = new String[vertices];
+			for (int i = 0; i < vertices; i++)
+				names[i] = "p" + i;
+		}
+		return names[v];
+	}
+
+	/**
+	 * Return the community of a person
+	 *
+	 * @param v - person id
+	 * @return community
+	 */
+	public int community(int v) {
+		int c = Arrays.binarySearch(communityStarts(), v);
+		return c >= 0 ? c : -c - 2;
+	}
+
+	/**
+	 * Generate every friendship exactly once. Communities may hold fewer
+	 * friendships than requested, so once picks keep finding known
+	 * friendships the friend is picked anywhere until a new one is found
+	 *
+	 * @param visitor - receiver of the friendships
+	 */
+	public void generate(EdgeVisitor visitor) {
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] starts = communityStarts();
+
+		// cumulative power-law weights
+		double[] cumulative = new double[vertices + 1];
+		double alpha = 1 / (exponent - 1);
+		for (int v = 0; v < vertices; v++)
+			cumulative[v + 1] = cumulative[v]
+					+ Math.pow(1 - random.nextDouble(), -alpha);
+
+		LongSet seen = new LongSet(edges);
+		int misses = 0;
+		while (seen.size < edges) {
+			int u = pick(cumulative, 0, vertices,
+					random.nextDouble() * cumulative[vertices]);
+			int from = 0, to = vertices;
+			if (random.nextDouble() >= mixing && misses < MISSES) { // same community
+				int c = Arrays.binarySearch(starts, u);
+				c = c >= 0 ? c : -c - 2;
+				from = starts[c];
+				to = starts[c + 1];
+				if (to - from < 2) { // alone in the community
+					from = 0;
+					to = vertices;
+				}
+			}
+			int v = pick(cumulative, from, to, cumulative[from] + random
+					.nextDouble() * (cumulative[to] - cumulative[from]));
+			if (u != v && seen.add((long) Math.min(u, v) << 32 | Math.max(u, v))) {
+				visitor.edge(u, v);
+				misses = 0;
+			} else
+				misses++;
+		}
+	}
+
+	/**
+	 * Add the generated people and friendships to a graph
+	 *
+	 * @param g - graph
+	 */
+	public void addTo(Graph g) {
+		for (int v = 0; v < vertices; v++)
+			g.addVertex(name(v));
+		generate((u, v) -> g.addEdge(name(u), name(v)));
+	}
+
+	/**
+	 * Build a snapshot of the generated graph
+	 *
+	 * @return snapshot
+	 */
+	public CsrGraph toCsr() {
+		int[] degree = new int[vertices + 1];
+		long[] list = new long[(int) edges];
+		int[] k = { 0 };
+		generate((u, v) -> {
+			degree[u + 1]++;
+			degree[v + 1]++;
+			list[k[0]++] = (long) u << 32 | v;
+		});
+		int[] offsets = degree;
+		for (int v = 0; v < vertices; v++)
+			offsets[v + 1] += offsets[v];
+		int[] fill = Arrays.copyOf(offsets, vertices);
+		int[] targets = new int[offsets[vertices]];
+		for (long e : list) {
+			int u = (int) (e >>> 32), v = (int) e;
+			targets[fill[u]++] = v;
+			targets[fill[v]++] = u;
+		}
+		String[] names = new String[vertices];
+		for (int v = 0; v < vertices; v++) {
+			names[v] = name(v);
+			Arrays.sort(targets, offsets[v], offsets[v + 1]);
+		}
+		return new CsrGraph(names, offsets, targets);
+	}
+
+	/**
+	 * Write the generated graph as text commands readable by Parser
+	 *
+	 * @param file - file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeText(File file) throws IOException {
+		try (BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+			for (int v = 0; v < vertices; v++) {
+				bw.write("a ");
+				bw.write(name(v));
+				bw.newLine();
+			}
+			IOException[] error = { null };
+			generate((u, v) -> {
+				try {
+					bw.write("a ");
+					bw.write(name(u));
+					bw.write(' ');
+					bw.write(name(v));
+					bw.newLine();
+				} catch (IOException e) {
+					error[0] = e;
+				}
+			});
+			if (error[0] != null)
+				throw error[0];
+		}
+	}
+
+	/**
+	 * Write the generated graph as a binary snapshot
+	 *
+	 * @param file - file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writeSnapshot(File file) throws IOException {
+		AdjacencyFile.write(toCsr(), file);
+	}
+
+	/**
+	 * Find the first person of every community, sizes following a power law
+	 *
+	 * @return first person of every community, then the number of people
+	 */
+	private int[] communityStarts() {
+		if (starts != null)
+			return starts;
+		SplittableRandom random = new SplittableRandom(~seed);
+		double[] size = new double[communities];
+		double total = 0;
+		for (int c = 0; c < communities; c++)
+			total += size[c] = Math.pow(1 - random.nextDouble(), -0.5);
+		starts = new int[communities + 1];
+		double sum = 0;
+		for (int c = 0; c < communities; c++) {
+			sum += size[c];
+			starts[c + 1] = Math.max(starts[c] + 1,
+					(int) Math.round(sum / total * vertices));
+		}
+		starts[communities] = vertices;
+		for (int c = communities - 1; c > 0 && starts[c] >= starts[c + 1]; c--)
+			starts[c] = starts[c + 1] - 1;
+		return starts;
+	}
+
+	/**
+	 * Find the person whose cumulative weight range contains a point
+	 *
+	 * @param cumulative - cumulative weights
+	 * @param from       - first candidate
+	 * @param to         - one past the last candidate
+	 * @param x          - point
+	 * @return person id
+	 */
+	private static int pick(double[] cumulative, int from, int to, double x) {
+		int lo = from, hi = to - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (cumulative[mid] <= x)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * Open addressing set of longs
+	 */
+	private static class LongSet {
+		long[] keys;
+		boolean[] used;
+		long size;
+
+		/**
+		 * Construct a set for an expected number of keys
+		 *
+		 * @param expected - number of keys
+		 */
+		LongSet(long expected) {
+			int capacity = Integer.highestOneBit((int) Math.max(16,
+					Math.min(1 << 30, expected * 2)) - 1) << 1;
+			keys = new long[capacity];
+			used = new boolean[capacity];
+		}
+
+		/**
+		 * Add a key
+		 *
+		 * @param key - key
+		 * @return true if the key was not in the set
+		 */
+		boolean add(long key) {
+			if (size * 2 >= keys.length)
+				grow();
+			int mask = keys.length - 1;
+			int slot = (int) (mix(key) & mask);
+			while (used[slot]) {
+				if (keys[slot] == key)
+					return false;
+				slot = (slot + 1) & mask;
+			}
+			used[slot] = true;
+			keys[slot] = key;
+			size++;
+			return true;
+		}
+
+		/**
+		 * Double the capacity
+		 */
+		private void grow() {
+			long[] oldKeys = keys;
+			boolean[] oldUsed = used;
+			keys = new long[oldKeys.length * 2];
+			used = new boolean[keys.length];
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++)
+				if (oldUsed[i])
+					add(oldKeys[i]);
+		}
+
+		/**
+		 * Scramble the bits of a key
+		 *
+		 * @param x - key
+		 * @return scrambled key
+		 */
+		private static long mix(long x) {
+			x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+			return x ^ (x >>> 33);
+		}
+	}
+}
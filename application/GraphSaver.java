@@ -0,0 +1,175 @@
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.concurrent.Executor;
+
+/**
+ * Save of a graph snapshot that writes in the background. The snapshot is
+ * immutable, so the graph can keep changing while it is written and the
+ * file holds the graph as it was when the save started. The file is written
+ * as commands, or as a binary snapshot if it has the snapshot extension,
+ * through a buffered file channel into a temporary file next to it, which
+ * is forced to disk and then renamed over the file: a failed or interrupted
+ * save leaves the previous file untouched.
+ *
+ * @author Zhaoyi
+ */
+public class GraphSaver {
+	/**
+	 * Receiver of the progress of a save, called on the notifying thread
+	 */
+	public interface Listener {
+		/**
+		 * Receive the progress after a range of vertices was written
+		 *
+		 * @param vertices - vertices written so far
+		 * @param order    - number of vertices
+		 */
+		void written(int vertices, int order);
+
+		/**
+		 * Receive the end of the save
+		 *
+		 * @param error - why the save failed, or null if the file was
+		 *              replaced
+		 */
+		void finished(IOException error);
+	}
+
+	private static final int CHUNK = 4096; // vertices between progress
+
+	private CsrGraph g;
+	private File file;
+	private Executor notifier;
+	private Listener listener;
+	private Thread writer;
+
+	/**
+	 * Construct a save
+	 *
+	 * @param g        - snapshot to save
+	 * @param file     - file to replace
+	 * @param notifier - runs the notifications in order
+	 * @param listener - receiver of the progress
+	 */
+	public GraphSaver(CsrGraph g, File file, Executor notifier,
+			Listener listener) {
+		super();
+		this.g = g;
+		this.file = file;
+		this.notifier = notifier;
+		this.listener = listener;
+		writer = new Thread(this::write, "save-" + file.getName());
+		writer.setDaemon(true);
+	}
+
+	/**
+	 * Start writing the file
+	 */
+	public void start() {
+		writer.start();
+	}
+
+	/**
+	 * Wait until the file has been written and the end of the save submitted
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void join() throws InterruptedException {
+		writer.join();
+	}
+
+	/**
+	 * Write the temporary file and rename it over the file
+	 */
+	private void write() {
+		IOException error = null;
+		Path target = file.toPath().toAbsolutePath();
+		Path tmp = null;
+		try {
+			tmp = temporary(target);
+			try (FileChannel channel = FileChannel.open(tmp,
+					StandardOpenOption.WRITE)) {
+				OutputStream out = new BufferedOutputStream(
+						Channels.newOutputStream(channel), 1 << 16);
+				if (AdjacencyFile.isSnapshot(file)) {
+					AdjacencyFile.write(g, out);
+				} else {
+					for (int v = 0; v < g.order(); v += CHUNK) {
+						int to = Math.min(v + CHUNK, g.order());
+						Parser.write(g, out, v, to);
+						notifier.execute(() -> listener.written(to, g.order()));
+					}
+				}
+				out.flush();
+				channel.force(true);
+			}
+			try {
+				Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			error = e;
+			try {
+				if (tmp != null)
+					Files.deleteIfExists(tmp);
+			} catch (IOException ignored) {
+				// the temporary file is left behind
+			}
+		}
+		IOException e = error;
+		notifier.execute(() -> {
+			if (e == null)
+				listener.written(g.order(), g.order());
+			listener.finished(e);
+		});
+	}
+
+	/**
+	 * Create an empty temporary file next to the file with the permissions
+	 * of the file, or the default permissions of a new file if there is none
+	 * yet; a file from createTempFile would be readable by its owner only
+	 * and keep that mode after the rename
+	 *
+	 * @param target - file to replace
+	 * @return temporary file
+	 * @throws IOException if the file cannot be created
+	 */
+	private static Path temporary(Path target) throws IOException {
+		Path tmp;
+		for (;;) {
+			tmp = target.resolveSibling("." + target.getFileName() + "."
+					+ Long.toHexString(System.nanoTime()) + ".tmp");
+			try {
+				Files.createFile(tmp);
+				break;
+			} catch (FileAlreadyExistsException e) {
+				// another save took the name, try the next one
+			}
+		}
+		try {
+			if (Files.exists(target) && Files.getFileStore(tmp)
+					.supportsFileAttributeView(PosixFileAttributeView.class))
+				Files.setPosixFilePermissions(tmp,
+						Files.getPosixFilePermissions(target));
+		} catch (IOException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+		return tmp;
+	}
+}
@@ -0,0 +1,293 @@
+package application;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Undo and redo of changes to a social network. Every action is recorded as
+ * the list of primitive changes it made, which are undone in reverse order;
+ * removing a person records the removal of each friendship first, so undoing
+ * it costs as much as the friendships it restores. Clearing records the
+ * detached people themselves rather than a copy. Actions live in a ring
+ * buffer; the oldest are dropped once too many actions or primitive changes
+ * are kept.
+ *
+ * @author Zhaoyi
+ */
+public class History implements SocialNetwork.Listener {
+	// primitive change besides those of SocialNetwork
+	private static final byte CLEAR = 4;
+
+	private SocialNetwork sn;
+	private Action[] ring;
+	private int first; // index of the oldest action
+	private int count; // actions kept, undone ones included
+	private int cursor; // actions that can be undone
+	private long budget; // maximum primitive changes kept
+	private long used;
+
+	private Action current; // action being recorded
+	private boolean grouped; // recording between begin and end
+	private boolean replaying;
+	private int replayed; // index of the change being replayed
+
+	/**
+	 * Construct a history and start recording changes to a social network
+	 *
+	 * @param sn       - social network
+	 * @param capacity - maximum number of actions kept
+	 * @param budget   - maximum number of primitive changes kept
+	 */
+	public History(SocialNetwork sn, int capacity, long budget) {
+		super();
+		this.sn = sn;
+		this.budget = budget;
+		ring = new Action[capacity];
+		sn.setListener(this);
+	}
+
+	/**
+	 * Start recording an action; all changes until end() are undone together
+	 *
+	 * @param label - description of the action
+	 */
+	public void begin(String label) {
+		end();
+		current = new Action(label);
+		grouped = true;
+	}
+
+	/**
+	 * Finish recording the current action
+	 */
+	public void end() {
+		grouped = false;
+		if (current == null)
+			return;
+		Action action = current;
+		current = null;
+		if (action.size == 0)
+			return;
+
+		// a new action discards what was undone
+		while (count > cursor)
+			used -= ring[(first + --count) % ring.length].cost();
+		if (action.cost() > budget) { // too large to undo
+			clear();
+			return;
+		}
+		while (count == ring.length || used + action.cost() > budget) {
+			used -= ring[first].cost();
+			ring[first] = null;
+			first = (first + 1) % ring.length;
+			count--;
+			cursor--;
+		}
+		ring[(first + count++) % ring.length] = action;
+		cursor++;
+		used += action.cost();
+	}
+
+	/**
+	 * Forget all actions
+	 */
+	public void clear() {
+		Arrays.fill(ring, null);
+		first = count = cursor = 0;
+		used = 0;
+	}
+
+	/**
+	 * Check if an action can be undone
+	 *
+	 * @return true if an action can be undone
+	 */
+	public boolean canUndo() {
+		return cursor > 0;
+	}
+
+	/**
+	 * Check if an action can be redone
+	 *
+	 * @return true if an action can be redone
+	 */
+	public boolean canRedo() {
+		return cursor < count;
+	}
+
+	/**
+	 * Undo the latest action
+	 *
+	 * @param log - receives the commands equivalent to the undo
+	 * @return description of the action or null if nothing to undo
+	 */
+	public String undo(Consumer<String> log) {
+		end();
+		if (!canUndo())
+			return null;
+		Action action = ring[(first + --cursor) % ring.length];
+		replaying = true;
+		try {
+			for (int i = action.size - 1; i >= 0; i--) {
+				Object str1 = action.args[2 * i];
+				Object str2 = action.args[2 * i + 1];
+				switch (action.ops[i]) {
+					case SocialNetwork.ADD_VERTEX:
+						sn.removeVertex((String) str1);
+						log.accept("r " + str1);
+						break;
+					case SocialNetwork.REMOVE_VERTEX:
+						sn.addVertex((String) str1);
+						log.accept("a " + str1);
+						break;
+					case SocialNetwork.ADD_EDGE:
+						sn.removeEdge((String) str1, (String) str2);
+						log.accept("r " + str1 + " " + str2);
+						break;
+					case SocialNetwork.REMOVE_EDGE:
+						sn.addEdge((String) str1, (String) str2);
+						log.accept("a " + str1 + " " + str2);
+						break;
+					default: // clear, not logged either
+						@SuppressWarnings("unchecked")
+						Map<String, Person> people = (Map<String, Person>) str1;
+						sn.restore(people, (Integer) str2);
+						action.args[2 * i] = null; // owned by the graph again
+						break;
+				}
+			}
+		} finally {
+			replaying = false;
+		}
+		return action.label;
+	}
+
+	/**
+	 * Redo the latest undone action
+	 *
+	 * @param log - receives the commands equivalent to the redo
+	 * @return description of the action or null if nothing to redo
+	 */
+	public String redo(Consumer<String> log) {
+		end();
+		if (!canRedo())
+			return null;
+		Action action = ring[(first + cursor++) % ring.length];
+		replaying = true;
+		try {
+			for (replayed = 0; replayed < action.size; replayed++) {
+				Object str1 = action.args[2 * replayed];
+				Object str2 = action.args[2 * replayed + 1];
+				switch (action.ops[replayed]) {
+					case SocialNetwork.ADD_VERTEX:
+						sn.addVertex((String) str1);
+						log.accept("a " + str1);
+						break;
+					case SocialNetwork.REMOVE_VERTEX:
+						sn.removeVertex((String) str1);
+						log.accept("r " + str1);
+						break;
+					case SocialNetwork.ADD_EDGE:
+						sn.addEdge((String) str1, (String) str2);
+						log.accept("a " + str1 + " " + str2);
+						break;
+					case SocialNetwork.REMOVE_EDGE:
+						sn.removeEdge((String) str1, (String) str2);
+						log.accept("r " + str1 + " " + str2);
+						break;
+					default: // clear, keeps the people through cleared()
+						sn.clear();
+						break;
+				}
+			}
+		} finally {
+			replaying = false;
+		}
+		return action.label;
+	}
+
+	@Override
+	public void changed(byte op, String str1, String str2) {
+		if (replaying)
+			return;
+		record(op, str1, str2);
+	}
+
+	@Override
+	public void done() {
+		if (!replaying && !grouped)
+			end();
+	}
+
+	@Override
+	public void cleared(Map<String, Person> people, int size) {
+		if (replaying) { // redoing a clear, keep the people it detached
+			Action action = ring[(first + cursor - 1) % ring.length];
+			action.args[2 * replayed] = people;
+			return;
+		}
+		record(CLEAR, people, size);
+		done();
+	}
+
+	/**
+	 * Record a change in the current action; changes made outside begin and
+	 * end form an action per operation
+	 *
+	 * @param op   - kind of change
+	 * @param arg1 - first argument
+	 * @param arg2 - second argument
+	 */
+	private void record(byte op, Object arg1, Object arg2) {
+		if (current == null)
+			current = new Action("Change");
+		current.add(op, arg1, arg2);
+	}
+
+	/**
+	 * Primitive changes of one action in compact arrays
+	 */
+	private static class Action {
+		String label;
+		byte[] ops = new byte[4];
+		Object[] args = new Object[8]; // two per change
+		int size;
+
+		/**
+		 * Construct an empty action
+		 *
+		 * @param label - description
+		 */
+		Action(String label) {
+			this.label = label;
+		}
+
+		/**
+		 * Append a change
+		 *
+		 * @param op   - kind of change
+		 * @param arg1 - first argument
+		 * @param arg2 - second argument
+		 */
+		void add(byte op, Object arg1, Object arg2) {
+			if (size == ops.length) {
+				ops = Arrays.copyOf(ops, size * 2);
+				args = Arrays.copyOf(args, size * 4);
+			}
+			ops[size] = op;
+			args[2 * size] = arg1;
+			args[2 * size++ + 1] = arg2;
+		}
+
+		/**
+		 * Return the cost of keeping the action; detached people count once
+		 * as they are not a copy
+		 *
+		 * @return number of changes
+		 */
+		long cost() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Approximate neighbourhood function of a graph snapshot by HyperANF: every
+ * vertex keeps a HyperLogLog counter of the vertices within t hops, and one
+ * iteration turns the counters for t into those for t + 1 by taking the
+ * union of each vertex's counter with its neighbours'. A counter has 2^p
+ * registers of one byte, packed eight to a long, so a union is a bytewise
+ * maximum of longs computed without unpacking. Only the counters of
+ * vertices next to a counter changed in the previous iteration are
+ * recomputed, and the vertices are split across cores.
+ *
+ * Memory is two counters per vertex plus one float per vertex and hop for
+ * the estimates; the relative standard error of an estimate is about
+ * 1.04 / sqrt(2^p).
+ *
+ * @author Zhaoyi
+ */
+public class HyperAnf {
+	private static final int LOG2M = 6; // default registers per counter
+	private static final long HIGH = 0x8080808080808080L; // top bit of bytes
+
+	private CsrGraph g;
+	private int log2m;
+
+	// estimated vertices within t hops of every vertex, indexed by t
+	private List<float[]> reach;
+
+	// sum of the estimates over all vertices, indexed by t
+	private double[] function;
+
+	/**
+	 * Construct the result of a computation
+	 *
+	 * @param g     - graph
+	 * @param log2m - log2 of registers per counter
+	 */
+	private HyperAnf(CsrGraph g, int log2m) {
+		super();
+		this.g = g;
+		this.log2m = log2m;
+		reach = new ArrayList<float[]>();
+	}
+
+	/**
+	 * Compute the neighbourhood function with 64 registers per counter until
+	 * no counter changes
+	 *
+	 * @param g - graph
+	 * @return estimates
+	 */
+	public static HyperAnf compute(CsrGraph g) {
+		return compute(g, LOG2M, Integer.MAX_VALUE, 0);
+	}
+
+	/**
+	 * Compute the neighbourhood function
+	 *
+	 * @param g       - graph
+	 * @param log2m   - log2 of registers per counter, between 4 and 16
+	 * @param maxHops - maximum number of hops
+	 * @param seed    - seed of the vertex hashes
+	 * @return estimates
+	 */
+	public static HyperAnf compute(CsrGraph g, int log2m, int maxHops,
+			long seed) {
+		if (log2m < 4 || log2m > 16)
+			throw new IllegalArgumentException(
+					"log2m must be between 4 and 16");
+		HyperAnf anf = new HyperAnf(g, log2m);
+		anf.iterate(maxHops, seed);
+		return anf;
+	}
+
+	/**
+	 * Run the iterations, keeping the estimates of every hop
+	 *
+	 * @param maxHops - maximum number of hops
+	 * @param seed    - seed of the vertex hashes
+	 */
+	private void iterate(int maxHops, long seed) {
+		int n = g.order();
+		int words = 1 << (log2m - 3); // longs per counter
+		if ((long) n * words > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("too many registers");
+		long[] counters = new long[n * words];
+		long[] next = new long[n * words];
+		boolean[] changed = new boolean[n];
+		boolean[] changing = new boolean[n];
+
+		// every counter starts with its own vertex
+		for (int v = 0; v < n; v++) {
+			long h = mix(v + seed * 0x9e3779b97f4a7c15L);
+			int register = (int) (h >>> (64 - log2m));
+			int rho = Math.min(Long.numberOfLeadingZeros(h << log2m),
+					64 - log2m) + 1;
+			counters[v * words + (register >>> 3)] |= (long) rho << 8
+					* (register & 7);
+		}
+		Arrays.fill(changed, true);
+		float[] estimates = new float[n];
+		IntStream.range(0, n).parallel()
+				.forEach(v -> estimates[v] = (float) estimate(counters, v));
+		reach.add(estimates);
+
+		long[] cur = counters;
+		for (int t = 1; t <= maxHops; t++) {
+			long[] from = cur, to = next;
+			boolean[] was = changed, is = changing;
+			float[] last = reach.get(t - 1);
+			float[] now = new float[n];
+			long updated = IntStream.range(0, n).parallel().filter(v -> {
+				int base = v * words;
+				System.arraycopy(from, base, to, base, words);
+				// neighbours not changed were already merged before
+				for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++) {
+					int u = g.targets[k];
+					if (was[u])
+						for (int w = 0; w < words; w++)
+							to[base + w] = max(to[base + w],
+									from[u * words + w]);
+				}
+				is[v] = false;
+				for (int w = 0; w < words; w++)
+					if (to[base + w] != from[base + w])
+						is[v] = true;
+				now[v] = is[v] ? (float) estimate(to, v) : last[v];
+				return is[v];
+			}).count();
+			if (updated == 0)
+				break;
+			reach.add(now);
+			cur = next;
+			next = from;
+			changing = changed;
+			changed = is;
+		}
+
+		function = new double[reach.size()];
+		for (int t = 0; t < function.length; t++)
+			for (float r : reach.get(t))
+				function[t] += r;
+	}
+
+	/**
+	 * Return number of hops computed; reach stays the same beyond
+	 *
+	 * @return number of hops
+	 */
+	public int hops() {
+		return reach.size() - 1;
+	}
+
+	/**
+	 * Return the estimated number of vertices within a number of hops of a
+	 * vertex, the vertex included
+	 *
+	 * @param v - vertex id
+	 * @param t - number of hops
+	 * @return estimate
+	 */
+	public double reach(int v, int t) {
+		return reach.get(Math.min(t, hops()))[v];
+	}
+
+	/**
+	 * Return the estimated number of vertices within a number of hops of a
+	 * vertex, the vertex included
+	 *
+	 * @param str - vertex name
+	 * @param t   - number of hops
+	 * @return estimate or -1 if the vertex is not in graph
+	 */
+	public double reach(String str, int t) {
+		int v = g.id(str);
+		return v == -1 ? -1 : reach(v, t);
+	}
+
+	/**
+	 * Return the estimated number of (vertex, vertex) pairs within each
+	 * number of hops, the pairs of a vertex with itself included
+	 *
+	 * @return neighbourhood function indexed by hops
+	 */
+	public double[] neighbourhoodFunction() {
+		return function.clone();
+	}
+
+	/**
+	 * Return the estimated distance within which 90% of the connected pairs
+	 * of distinct vertices lie, interpolated between whole distances
+	 *
+	 * @return effective diameter
+	 */
+	public double effectiveDiameter() {
+		int n = g.order();
+		double target = 0.9 * (function[hops()] - n);
+		for (int t = 1; t <= hops(); t++)
+			if (function[t] - n >= target) {
+				double below = function[t - 1] - n;
+				return t - 1 + (target - below)
+						/ (function[t] - function[t - 1]);
+			}
+		return 0;
+	}
+
+	/**
+	 * Return the relative standard error of an estimate
+	 *
+	 * @return relative error
+	 */
+	public double relativeError() {
+		return 1.04 / Math.sqrt(1 << log2m);
+	}
+
+	/**
+	 * Return the memory taken by the counters while computing
+	 *
+	 * @return number of bytes
+	 */
+	public long memory() {
+		return 2L * g.order() << log2m;
+	}
+
+	/**
+	 * Estimate the number of distinct vertices in a counter
+	 *
+	 * @param counters - all counters
+	 * @param v        - vertex id
+	 * @return estimate
+	 */
+	private double estimate(long[] counters, int v) {
+		int m = 1 << log2m;
+		int words = m >>> 3;
+		double sum = 0;
+		int zeros = 0;
+		for (int w = v * words; w < (v + 1) * words; w++)
+			for (int shift = 0; shift < 64; shift += 8) {
+				int register = (int) (counters[w] >>> shift) & 0xff;
+				sum += Double.longBitsToDouble((1023L - register) << 52);
+				if (register == 0)
+					zeros++;
+			}
+		double alpha = m == 16 ? 0.673 : m == 32 ? 0.697
+				: m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m);
+		double e = alpha * m * m / sum;
+		if (e <= 2.5 * m && zeros > 0) // few vertices, count empty registers
+			return m * Math.log((double) m / zeros);
+		return e;
+	}
+
+	/**
+	 * Take the maximum of every byte of two longs, all bytes below 128
+	 *
+	 * @param x - registers
+	 * @param y - registers
+	 * @return registers
+	 */
+	private static long max(long x, long y) {
+		// the top bit of a byte of x + 128 - y survives if x >= y
+		long ge = ((x | HIGH) - y) & HIGH;
+		long mask = (ge >>> 7) * 0xff;
+		return x & mask | y & ~mask;
+	}
+
+	/**
+	 * Mix the bits of a long, SplitMix64 finalizer
+	 *
+	 * @param z - value
+	 * @return hash
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,100 @@
+package application;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.scene.text.Text;
+
+/**
+ * Least recently used cache of ego network layouts, keyed by the central user
+ * and validated by the version stamp of the central user's friends
+ *
+ * @author Zhaoyi
+ */
+public class LayoutCache {
+	private Map<String, Entry> entries;
+
+	/**
+	 * Construct a layout cache
+	 *
+	 * @param capacity - maximum number of layouts kept
+	 */
+	public LayoutCache(int capacity) {
+		super();
+		entries = new LinkedHashMap<String, Entry>(capacity * 2, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, LayoutCache.Entry> e) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Find the layout of a central user
+	 *
+	 * @param central - central user
+	 * @param version - current version stamp of the central user
+	 * @return layout or null if absent or stale
+	 */
+	public Entry get(String central, long version) {
+		Entry e = entries.get(central);
+		if (e == null)
+			return null;
+		if (e.version != version) { // friends changed since it was laid out
+			entries.remove(central);
+			return null;
+		}
+		return e;
+	}
+
+	/**
+	 * Remember the layout of a central user
+	 *
+	 * @param central - central user
+	 * @param e       - layout
+	 */
+	public void put(String central, Entry e) {
+		entries.put(central, e);
+	}
+
+	/**
+	 * Drop all layouts
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Computed layout of an ego network. Friend i is drawn at (x[i], y[i]) with
+	 * label labels[i]; the last label belongs to the central user. A slot
+	 * freed by a former friend has a null name and label.
+	 */
+	public static class Entry {
+		long version;
+		String[] names;
+		double[] x;
+		double[] y;
+		Text[] labels;
+
+		/**
+		 * Construct a layout
+		 *
+		 * @param version - version stamp of the central user
+		 * @param names   - friends
+		 * @param x       - x coordinates of friends
+		 * @param y       - y coordinates of friends
+		 * @param labels  - labels of friends followed by the central user
+		 */
+		Entry(long version, String[] names, double[] x, double[] y,
+				Text[] labels) {
+			this.version = version;
+			this.names = names;
+			this.x = x;
+			this.y = y;
+			this.labels = labels;
+		}
+	}
+}
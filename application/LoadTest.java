@@ -0,0 +1,206 @@
+package application;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Load test replaying a mixed workload on a generated social network from
+ * several threads: searches, mutual friends and connections under the read
+ * lock, adding and removing friendships under the write lock. Reports
+ * throughput and latency percentiles of every kind of operation.
+ *
+ * Arguments: people, friendships, threads, seconds, fraction of writes.
+ *
+ * @author Zhaoyi
+ */
+public class LoadTest {
+	private static final String[] OPERATIONS = { "search", "mutual",
+			"connection", "add", "remove" };
+
+	/**
+	 * Run the load test
+	 *
+	 * @param args - people, friendships, threads, seconds, fraction of writes
+	 * @throws InterruptedException if interrupted while waiting for threads
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int vertices = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		long edges = args.length > 1 ? Long.parseLong(args[1]) : 1000000;
+		int threads = args.length > 2 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		double writes = args.length > 4 ? Double.parseDouble(args[4]) : 0.1;
+
+		GraphGenerator generator = new GraphGenerator(vertices, edges, 1);
+		SocialNetwork sn = new SocialNetwork();
+		long t0 = System.nanoTime();
+		generator.addTo(sn);
+		long t1 = System.nanoTime();
+		System.out.printf("generated %d people, %d friendships in %d ms "
+				+ "(%.2f M friendships/s)%n", sn.order(), sn.size(),
+				(t1 - t0) / 1000000, sn.size() * 1e3 / (t1 - t0));
+
+		Histogram[][] histograms = run(sn, generator, vertices, threads,
+				seconds, writes);
+		System.out.printf("%d threads, %d s, %.0f%% writes%n", threads,
+				seconds, writes * 100);
+		System.out.printf("%-10s %10s %10s %8s %8s %8s %8s%n", "operation",
+				"count", "ops/s", "p50 us", "p99 us", "p99.9 us", "max us");
+		for (int op = 0; op < OPERATIONS.length; op++) {
+			Histogram h = new Histogram();
+			for (Histogram[] perThread : histograms)
+				h.add(perThread[op]);
+			System.out.printf("%-10s %10d %10.0f %8.1f %8.1f %8.1f %8.1f%n",
+					OPERATIONS[op], h.count, h.count / (double) seconds,
+					h.percentile(50) / 1e3, h.percentile(99) / 1e3,
+					h.percentile(99.9) / 1e3, h.max / 1e3);
+		}
+	}
+
+	/**
+	 * Run the workload
+	 *
+	 * @param sn        - social network
+	 * @param generator - generator of the network, for names
+	 * @param vertices  - number of people
+	 * @param threads   - number of threads
+	 * @param seconds   - duration
+	 * @param writes    - fraction of writes
+	 * @return latencies by thread and operation
+	 * @throws InterruptedException if interrupted while waiting for threads
+	 */
+	static Histogram[][] run(SocialNetwork sn, GraphGenerator generator,
+			int vertices, int threads, int seconds, double writes)
+			throws InterruptedException {
+		ReadWriteLock lock = new ReentrantReadWriteLock(true);
+		Histogram[][] histograms = new Histogram[threads][OPERATIONS.length];
+		Thread[] workers = new Thread[threads];
+		long end = System.nanoTime() + seconds * 1000000000L;
+		for (int t = 0; t < threads; t++) {
+			Histogram[] h = histograms[t];
+			for (int op = 0; op < OPERATIONS.length; op++)
+				h[op] = new Histogram();
+			SplittableRandom random = new SplittableRandom(t);
+			workers[t] = new Thread(() -> {
+				while (System.nanoTime() < end) {
+					String a = generator.name(random.nextInt(vertices));
+					String b = generator.name(random.nextInt(vertices));
+					double dice = random.nextDouble();
+					int op = dice < writes / 2 ? 3
+							: dice < writes ? 4
+									: dice < writes + (1 - writes) * 0.8 ? 0
+											: dice < writes + (1 - writes) * 0.98
+													? 1
+													: 2;
+					long start = System.nanoTime();
+					if (op < 3) {
+						lock.readLock().lock();
+						try {
+							if (op == 0)
+								sn.getAdjacent(a).size();
+							else if (op == 1)
+								sn.mutual(a, b);
+							else
+								sn.connection(a, b);
+						} finally {
+							lock.readLock().unlock();
+						}
+					} else {
+						lock.writeLock().lock();
+						try {
+							if (op == 3)
+								sn.addEdge(a, b);
+							else
+								sn.removeEdge(a, b);
+						} finally {
+							lock.writeLock().unlock();
+						}
+					}
+					h[op].record(System.nanoTime() - start);
+				}
+			}, "load-" + t);
+			workers[t].start();
+		}
+		for (Thread worker : workers)
+			worker.join();
+		return histograms;
+	}
+
+	/**
+	 * Latency histogram with buckets of about 3% width
+	 */
+	static class Histogram {
+		private static final int SUB = 32; // buckets per power of two
+
+		long[] buckets = new long[64 * SUB];
+		long count;
+		long max;
+
+		/**
+		 * Record a latency
+		 *
+		 * @param nanos - latency in nanoseconds
+		 */
+		void record(long nanos) {
+			buckets[bucket(Math.max(1, nanos))]++;
+			count++;
+			max = Math.max(max, nanos);
+		}
+
+		/**
+		 * Add the latencies of another histogram
+		 *
+		 * @param h - histogram
+		 */
+		void add(Histogram h) {
+			for (int i = 0; i < buckets.length; i++)
+				buckets[i] += h.buckets[i];
+			count += h.count;
+			max = Math.max(max, h.max);
+		}
+
+		/**
+		 * Estimate a percentile
+		 *
+		 * @param p - percentile between 0 and 100
+		 * @return latency in nanoseconds, upper bound of its bucket
+		 */
+		double percentile(double p) {
+			long rank = (long) Math.ceil(count * p / 100);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0)
+					return Math.min(max, upper(i));
+			}
+			return max;
+		}
+
+		/**
+		 * Find the bucket of a latency
+		 *
+		 * @param nanos - positive latency
+		 * @return bucket
+		 */
+		private static int bucket(long nanos) {
+			int exp = 63 - Long.numberOfLeadingZeros(nanos);
+			if (exp < 5)
+				return (int) nanos;
+			return exp * SUB + (int) ((nanos >>> (exp - 5)) & (SUB - 1));
+		}
+
+		/**
+		 * Return the largest latency of a bucket
+		 *
+		 * @param i - bucket
+		 * @return latency in nanoseconds
+		 */
+		private static double upper(int i) {
+			if (i < SUB)
+				return i;
+			int exp = i / SUB, sub = i % SUB;
+			return (double) ((SUB + sub + 1L) << (exp - 5)) - 1;
+		}
+	}
+}
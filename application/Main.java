@@ -57,7 +57,9 @@ public class Main extends Application {
 		super.init();
 		explorer = new FileChooser();
 		explorer.getExtensionFilters()
-				.add(new ExtensionFilter("Text Files", "*.txt"));
+				.addAll(new ExtensionFilter("Text Files", "*.txt"),
+						new ExtensionFilter("Graph Snapshots",
+								"*" + AdjacencyFile.EXTENSION));
 		File log = new File("log.txt");
 		if (log.exists())
 			log.delete();
@@ -89,6 +91,17 @@ public class Main extends Application {
 
 		// prompt for saving file when exiting
 		stage.setOnCloseRequest(e -> {
+			if (control.isSaving()) { // exit once the save has finished
+				e.consume();
+				new Alert(AlertType.INFORMATION,
+						"A save is in progress.\nThe window will close once it has finished.")
+								.show();
+				control.afterSave(() -> {
+					control.log();
+					stage.close();
+				});
+				return;
+			}
 			Alert alert = new Alert(AlertType.CONFIRMATION,
 					"Do you want to save the social network before exit?",
 					new ButtonType("Save", ButtonData.YES),
@@ -101,11 +114,17 @@ public class Main extends Application {
 				if (save == null) // no file is chosen
 					new Alert(AlertType.ERROR, "No file is chosen.\nGoodbye!")
 							.showAndWait();
-				else { // save the file
-					String msg = String.format("%s save file %s.\nGoodbye!",
-							control.logTo(save) ? "Successfully" : "Fail to",
-							save.getName());
-					new Alert(AlertType.INFORMATION, msg).showAndWait();
+				else { // save the file, keeping the window until it is written
+					e.consume();
+					control.saveInBackground(save, saved -> {
+						String msg = String.format("%s save file %s.\nGoodbye!",
+								saved ? "Successfully" : "Fail to",
+								save.getName());
+						new Alert(AlertType.INFORMATION, msg).showAndWait();
+						control.log();
+						stage.close();
+					});
+					return;
 				}
 			} else { // not save
 				new Alert(AlertType.INFORMATION, "Goodbye!").showAndWait();
@@ -157,7 +176,8 @@ public class Main extends Application {
 		Label numV = CtrlFactory.createLabel("Number of\npeople: 0");
 		Label numE = CtrlFactory.createLabel("Number of\nrelations: 0");
 		Label component = CtrlFactory.createLabel("Connected\nComponents: 0");
-		VBox status = new VBox(10, title, numV, numE, component);
+		Label frame = CtrlFactory.createLabel("Last frame:\nnone");
+		VBox status = new VBox(10, title, numV, numE, component, frame);
 		for (Node node : status.getChildren())
 			VBox.setMargin(node, INSETS);
 		status.setAlignment(Pos.CENTER);
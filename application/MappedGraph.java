@@ -0,0 +1,435 @@
+package application;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only graph backed by a memory-mapped snapshot written by
+ * AdjacencyFile. Nothing is read at startup besides the header: names and
+ * neighbour lists are decoded from the mapping on demand, so the operating
+ * system pages in only what queries touch and graphs larger than the heap
+ * can be explored. Queries need a few ints per vertex of heap at most.
+ * Closing drops the mapping, which is released once no query still reads
+ * it; the graph cannot be used afterwards.
+ *
+ * @author Zhaoyi
+ */
+public class MappedGraph implements Graph, Closeable {
+	// files are mapped in segments of 1 GiB
+	private static final int SHIFT = 30;
+	private static final long MASK = (1L << SHIFT) - 1;
+
+	private volatile MappedByteBuffer[] segments;
+	private int n;
+	private long edges;
+	private long nameIndex;
+	private long nameData;
+	private long adjIndex;
+	private long lists;
+
+	/**
+	 * Map a snapshot
+	 *
+	 * @param file - snapshot file
+	 * @throws IOException if the file cannot be mapped or is not a snapshot
+	 */
+	public MappedGraph(File file) throws IOException {
+		super();
+		try (FileChannel channel = FileChannel.open(file.toPath(),
+				StandardOpenOption.READ)) {
+			long length = channel.size();
+			segments = new MappedByteBuffer[(int) ((length + MASK) >>> SHIFT)];
+			for (int i = 0; i < segments.length; i++) {
+				long start = (long) i << SHIFT;
+				segments[i] = channel.map(MapMode.READ_ONLY, start,
+						Math.min(MASK + 1, length - start));
+			}
+		}
+		if (segments.length == 0)
+			throw new IOException("not a graph snapshot");
+		n = AdjacencyFile.checkHeader(segments[0]);
+		edges = segments[0].getLong(8);
+		nameIndex = segments[0].getLong(16);
+		nameData = segments[0].getLong(24);
+		adjIndex = segments[0].getLong(32);
+		lists = segments[0].getLong(40);
+	}
+
+	/**
+	 * Reject adding a vertex, the graph is read-only
+	 *
+	 * @param str - vertex name
+	 * @return never
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public boolean addVertex(String str) {
+		throw new UnsupportedOperationException("read-only graph");
+	}
+
+	/**
+	 * Reject removing a vertex, the graph is read-only
+	 *
+	 * @param str - vertex name
+	 * @return never
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public boolean removeVertex(String str) {
+		throw new UnsupportedOperationException("read-only graph");
+	}
+
+	/**
+	 * Reject adding an edge, the graph is read-only
+	 *
+	 * @param str1 - first vertex name
+	 * @param str2 - second vertex name
+	 * @return never
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public boolean addEdge(String str1, String str2) {
+		throw new UnsupportedOperationException("read-only graph");
+	}
+
+	/**
+	 * Reject removing an edge, the graph is read-only
+	 *
+	 * @param str1 - first vertex name
+	 * @param str2 - second vertex name
+	 * @return never
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public boolean removeEdge(String str1, String str2) {
+		throw new UnsupportedOperationException("read-only graph");
+	}
+
+	/**
+	 * Reject clearing, the graph is read-only
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public void clear() {
+		throw new UnsupportedOperationException("read-only graph");
+	}
+
+	/**
+	 * Return a view of all vertices, decoding names as they are visited
+	 *
+	 * @return all vertices in name order
+	 */
+	@Override
+	public Collection<String> getAllVertices() {
+		return new AbstractList<String>() {
+			@Override
+			public String get(int v) {
+				return name(v);
+			}
+
+			@Override
+			public int size() {
+				return n;
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				return o instanceof String && id((String) o) != -1;
+			}
+		};
+	}
+
+	/**
+	 * Return a view of the neighbours of a vertex
+	 *
+	 * @param str - vertex name
+	 * @return neighbours in name order, empty if the vertex is not in graph
+	 */
+	@Override
+	public Collection<String> getAdjacent(String str) {
+		int v = id(str);
+		if (v == -1)
+			return Collections.emptyList();
+		int[] ids = neighbours(v);
+		return new AbstractList<String>() {
+			@Override
+			public String get(int i) {
+				return name(ids[i]);
+			}
+
+			@Override
+			public int size() {
+				return ids.length;
+			}
+		};
+	}
+
+	/**
+	 * Return number of neighbours of a vertex, reading only its degree
+	 *
+	 * @param str - vertex name
+	 * @return degree, 0 if the vertex is not in graph
+	 */
+	@Override
+	public int degree(String str) {
+		int v = id(str);
+		return v == -1 ? 0
+				: readVarint(new long[] { lists + getLong(adjIndex + 8L * v) });
+	}
+
+	/**
+	 * Return number of edges
+	 *
+	 * @return number of edges
+	 * @throws ArithmeticException if there are more than Integer.MAX_VALUE
+	 *                             edges; edges() returns them all
+	 */
+	@Override
+	public int size() {
+		return Math.toIntExact(edges);
+	}
+
+	/**
+	 * Return number of edges, which may exceed the range of size()
+	 *
+	 * @return number of edges
+	 */
+	public long edges() {
+		return edges;
+	}
+
+	/**
+	 * Return number of vertices
+	 *
+	 * @return number of vertices
+	 */
+	@Override
+	public int order() {
+		return n;
+	}
+
+	/**
+	 * Drop the mapping of the file; the garbage collector unmaps it once
+	 * queries still running no longer read it. The graph throws
+	 * IllegalStateException when used afterwards.
+	 */
+	@Override
+	public void close() {
+		segments = null;
+	}
+
+	/**
+	 * Find the id of a vertex by binary search over the names
+	 *
+	 * @param str - vertex name
+	 * @return vertex id or -1 if not found
+	 */
+	public int id(String str) {
+		int lo = 0, hi = n - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = name(mid).compareTo(str);
+			if (cmp < 0)
+				lo = mid + 1;
+			else if (cmp > 0)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Decode the name of a vertex
+	 *
+	 * @param v - vertex id
+	 * @return vertex name
+	 */
+	public String name(int v) {
+		long from = nameData + getLong(nameIndex + 8L * v);
+		int length = (int) (nameData + getLong(nameIndex + 8L * (v + 1))
+				- from);
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = get(from + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decode the neighbours of a vertex
+	 *
+	 * @param v - vertex id
+	 * @return neighbour ids, ascending
+	 */
+	public int[] neighbours(int v) {
+		long[] pos = { lists + getLong(adjIndex + 8L * v) };
+		int[] ids = new int[readVarint(pos)];
+		decode(v, pos, ids.length, ids);
+		return ids;
+	}
+
+	/**
+	 * Count connected components with union-find, scanning the neighbour
+	 * lists in file order
+	 *
+	 * @return number of components
+	 */
+	public int components() {
+		int[] parent = new int[n];
+		for (int v = 0; v < n; v++)
+			parent[v] = v;
+		int count = n;
+		long[] pos = { lists };
+		int[] ids = new int[16];
+		for (int v = 0; v < n; v++) {
+			int degree = readVarint(pos);
+			if (ids.length < degree)
+				ids = new int[Math.max(degree, ids.length * 2)];
+			decode(v, pos, degree, ids);
+			for (int k = 0; k < degree; k++) {
+				int a = find(parent, v), b = find(parent, ids[k]);
+				if (a != b) {
+					parent[Math.max(a, b)] = Math.min(a, b);
+					count--;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Find a shortest chain of friends by breadth first search
+	 *
+	 * @param str1 - first person
+	 * @param str2 - second person
+	 * @return names along the path, empty if not connected
+	 */
+	public List<String> connection(String str1, String str2) {
+		List<String> path = new ArrayList<String>();
+		int s = id(str1), t = id(str2);
+		if (s == -1 || t == -1)
+			return path;
+		int[] pred = new int[n];
+		Arrays.fill(pred, -1);
+		int[] queue = new int[n];
+		int head = 0, tail = 0;
+		queue[tail++] = s;
+		pred[s] = s;
+		while (head < tail && pred[t] == -1) {
+			int v = queue[head++];
+			for (int u : neighbours(v)) {
+				if (pred[u] == -1) {
+					pred[u] = v;
+					queue[tail++] = u;
+				}
+			}
+		}
+		if (pred[t] == -1)
+			return path;
+		for (int v = t; v != s; v = pred[v])
+			path.add(name(v));
+		path.add(name(s));
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * Decode a neighbour list whose degree was already read
+	 *
+	 * @param v      - vertex id
+	 * @param pos    - position after the degree, advanced past the list
+	 * @param degree - degree
+	 * @param ids    - array to decode into
+	 */
+	private void decode(int v, long[] pos, int degree, int[] ids) {
+		int prev = 0;
+		for (int i = 0; i < degree; i++) {
+			int x = readVarint(pos);
+			prev = i == 0 ? v + ((x >>> 1) ^ -(x & 1)) : prev + x + 1;
+			ids[i] = prev;
+		}
+	}
+
+	/**
+	 * Read an unsigned varint
+	 *
+	 * @param pos - position, advanced past the varint
+	 * @return value
+	 */
+	private int readVarint(long[] pos) {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = get(pos[0]++);
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	/**
+	 * Read a byte of the file
+	 *
+	 * @param pos - position
+	 * @return byte
+	 */
+	private byte get(long pos) {
+		return segments()[(int) (pos >>> SHIFT)].get((int) (pos & MASK));
+	}
+
+	/**
+	 * Read a long of the file, which may span two segments
+	 *
+	 * @param pos - position
+	 * @return long
+	 */
+	private long getLong(long pos) {
+		ByteBuffer segment = segments()[(int) (pos >>> SHIFT)];
+		int i = (int) (pos & MASK);
+		if (i + 8 <= segment.limit())
+			return segment.getLong(i);
+		long value = 0;
+		for (int k = 0; k < 8; k++)
+			value = value << 8 | (get(pos + k) & 0xFF);
+		return value;
+	}
+
+	/**
+	 * Return the mapped segments
+	 *
+	 * @return segments
+	 * @throws IllegalStateException if the graph was closed
+	 */
+	private MappedByteBuffer[] segments() {
+		MappedByteBuffer[] mapped = segments;
+		if (mapped == null)
+			throw new IllegalStateException("graph is closed");
+		return mapped;
+	}
+
+	/**
+	 * Find the root of a union-find tree, halving the path
+	 *
+	 * @param parent - parent of every vertex
+	 * @param v      - vertex
+	 * @return root
+	 */
+	private static int find(int[] parent, int v) {
+		while (parent[v] != v)
+			v = parent[v] = parent[parent[v]];
+		return v;
+	}
+}
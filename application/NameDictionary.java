@@ -0,0 +1,344 @@
+package application;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Dictionary giving every distinct name a dense id 0..size-1 without keeping
+ * an object per name. All names are stored UTF-8 encoded one after another
+ * in a single byte arena, name i spanning starts[i] .. starts[i + 1]. An
+ * open addressing table with linear probing holds id + 1 per slot, so
+ * looking a name up compares it against the arena directly; strings are
+ * encoded on the fly and only name() decodes.
+ *
+ * A name costs its bytes plus about 16 bytes of arrays, against roughly 100
+ * bytes as a String key of a HashMap to an Integer.
+ *
+ * @author Zhaoyi
+ */
+public class NameDictionary {
+	private byte[] arena;
+	private int[] starts; // start of every name, then the end of the arena
+	private int[] hashes; // hash of every name
+	private int[] table; // id + 1 of the name in every slot, 0 if empty
+	private int size;
+
+	/**
+	 * Construct an empty dictionary
+	 */
+	public NameDictionary() {
+		this(16, 256);
+	}
+
+	/**
+	 * Construct an empty dictionary sized for a number of names
+	 *
+	 * @param names - expected number of names
+	 * @param bytes - expected total length of the encoded names
+	 */
+	public NameDictionary(int names, int bytes) {
+		super();
+		arena = new byte[Math.max(16, bytes)];
+		starts = new int[Math.max(16, names) + 1];
+		hashes = new int[starts.length - 1];
+		table = new int[Integer.highestOneBit(Math.max(16, names) * 2 - 1) << 1];
+	}
+
+	/**
+	 * Find the id of a name, adding it if new
+	 *
+	 * @param str - name
+	 * @return id
+	 */
+	public int add(String str) {
+		int hash = hash(str);
+		int slot = find(str, hash);
+		if (table[slot] != 0)
+			return table[slot] - 1;
+		byte[] encoded = str.getBytes(StandardCharsets.UTF_8);
+		return insert(slot, hash, encoded, 0, encoded.length);
+	}
+
+	/**
+	 * Find the id of an encoded name, adding it if new
+	 *
+	 * @param buf - bytes
+	 * @param off - start of the name
+	 * @param len - length of the name
+	 * @return id
+	 */
+	public int add(byte[] buf, int off, int len) {
+		int hash = hash(buf, off, len);
+		int slot = find(buf, off, len, hash);
+		if (table[slot] != 0)
+			return table[slot] - 1;
+		return insert(slot, hash, buf, off, len);
+	}
+
+	/**
+	 * Find the id of a name of another dictionary, adding it if new, without
+	 * decoding it
+	 *
+	 * @param other - dictionary
+	 * @param id    - id in the other dictionary
+	 * @return id
+	 */
+	int add(NameDictionary other, int id) {
+		return add(other.arena, other.starts[id],
+				other.starts[id + 1] - other.starts[id]);
+	}
+
+	/**
+	 * Find the id of a name
+	 *
+	 * @param str - name
+	 * @return id or -1 if not found
+	 */
+	public int id(String str) {
+		return table[find(str, hash(str))] - 1;
+	}
+
+	/**
+	 * Find the id of an encoded name
+	 *
+	 * @param buf - bytes
+	 * @param off - start of the name
+	 * @param len - length of the name
+	 * @return id or -1 if not found
+	 */
+	public int id(byte[] buf, int off, int len) {
+		return table[find(buf, off, len, hash(buf, off, len))] - 1;
+	}
+
+	/**
+	 * Decode a name
+	 *
+	 * @param id - id
+	 * @return name
+	 */
+	public String name(int id) {
+		if (id < 0 || id >= size)
+			throw new IndexOutOfBoundsException("no name " + id);
+		return new String(arena, starts[id], starts[id + 1] - starts[id],
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write the UTF-8 encoding of a name
+	 *
+	 * @param id  - id
+	 * @param out - output
+	 * @throws IOException if the output cannot be written
+	 */
+	void write(int id, OutputStream out) throws IOException {
+		out.write(arena, starts[id], starts[id + 1] - starts[id]);
+	}
+
+	/**
+	 * Return number of names
+	 *
+	 * @return number of names
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return the memory taken by the arrays of the dictionary
+	 *
+	 * @return number of bytes
+	 */
+	public long memory() {
+		return arena.length + 4L * (starts.length + hashes.length + table.length);
+	}
+
+	/**
+	 * Release the unused capacity of the arena and the name arrays
+	 */
+	public void trim() {
+		arena = Arrays.copyOf(arena, starts[size]);
+		starts = Arrays.copyOf(starts, size + 1);
+		hashes = Arrays.copyOf(hashes, size);
+	}
+
+	/**
+	 * Append a new name in an empty slot
+	 *
+	 * @param slot - empty slot of the name
+	 * @param hash - hash of the name
+	 * @param buf  - bytes
+	 * @param off  - start of the name
+	 * @param len  - length of the name
+	 * @return id of the name
+	 */
+	private int insert(int slot, int hash, byte[] buf, int off, int len) {
+		int end = starts[size];
+		if ((long) end + len > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException("name arena is full");
+		if (end + len > arena.length)
+			arena = Arrays.copyOf(arena,
+					(int) Math.min(Integer.MAX_VALUE - 8,
+							Math.max(end + len, 2L * arena.length)));
+		if (size + 1 == starts.length) {
+			starts = Arrays.copyOf(starts, 2 * size + 1);
+			hashes = Arrays.copyOf(hashes, 2 * size);
+		}
+		System.arraycopy(buf, off, arena, end, len);
+		starts[size + 1] = end + len;
+		hashes[size] = hash;
+		table[slot] = ++size;
+		if (size * 2 > table.length)
+			grow();
+		return size - 1;
+	}
+
+	/**
+	 * Double the table and reinsert all ids
+	 */
+	private void grow() {
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = hashes[id] & mask;
+			while (table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = id + 1;
+		}
+	}
+
+	/**
+	 * Find the slot of a name, or the empty slot ending its probe sequence
+	 *
+	 * @param str  - name
+	 * @param hash - hash of the name
+	 * @return slot
+	 */
+	private int find(String str, int hash) {
+		int mask = table.length - 1;
+		int slot = hash & mask;
+		for (int id; (id = table[slot] - 1) != -1; slot = (slot + 1) & mask)
+			if (hashes[id] == hash && equals(id, str))
+				return slot;
+		return slot;
+	}
+
+	/**
+	 * Find the slot of an encoded name, or the empty slot ending its probe
+	 * sequence
+	 *
+	 * @param buf  - bytes
+	 * @param off  - start of the name
+	 * @param len  - length of the name
+	 * @param hash - hash of the name
+	 * @return slot
+	 */
+	private int find(byte[] buf, int off, int len, int hash) {
+		int mask = table.length - 1;
+		int slot = hash & mask;
+		for (int id; (id = table[slot] - 1) != -1; slot = (slot + 1) & mask)
+			if (hashes[id] == hash && Arrays.equals(arena, starts[id],
+					starts[id + 1], buf, off, off + len))
+				return slot;
+		return slot;
+	}
+
+	/**
+	 * Compare a stored name with a string, encoding the string on the fly
+	 *
+	 * @param id  - id
+	 * @param str - name
+	 * @return true if equal
+	 */
+	private boolean equals(int id, String str) {
+		int pos = starts[id], end = starts[id + 1];
+		for (int i = 0; i < str.length();) {
+			int cp = codePoint(str, i);
+			int n = length(cp);
+			if (end - pos < n)
+				return false;
+			for (int k = 0; k < n; k++)
+				if ((arena[pos++] & 0xff) != utf8(cp, n, k))
+					return false;
+			i += cp >= 0x10000 ? 2 : 1;
+		}
+		return pos == end;
+	}
+
+	/**
+	 * Hash the UTF-8 encoding of a string without encoding it
+	 *
+	 * @param str - name
+	 * @return hash
+	 */
+	private static int hash(String str) {
+		int h = 0x811c9dc5; // FNV-1a
+		for (int i = 0; i < str.length();) {
+			int cp = codePoint(str, i);
+			int n = length(cp);
+			for (int k = 0; k < n; k++)
+				h = (h ^ utf8(cp, n, k)) * 0x01000193;
+			i += cp >= 0x10000 ? 2 : 1;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Hash an encoded name
+	 *
+	 * @param buf - bytes
+	 * @param off - start of the name
+	 * @param len - length of the name
+	 * @return hash
+	 */
+	private static int hash(byte[] buf, int off, int len) {
+		int h = 0x811c9dc5; // FNV-1a
+		for (int i = off; i < off + len; i++)
+			h = (h ^ (buf[i] & 0xff)) * 0x01000193;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Find the code point at an index of a string; a lone surrogate becomes
+	 * '?' as in the UTF-8 encoder
+	 *
+	 * @param str - string
+	 * @param i   - index
+	 * @return code point
+	 */
+	private static int codePoint(String str, int i) {
+		char c = str.charAt(i);
+		if (!Character.isSurrogate(c))
+			return c;
+		if (Character.isHighSurrogate(c) && i + 1 < str.length()
+				&& Character.isLowSurrogate(str.charAt(i + 1)))
+			return Character.toCodePoint(c, str.charAt(i + 1));
+		return '?';
+	}
+
+	/**
+	 * Return the length of the UTF-8 encoding of a code point
+	 *
+	 * @param cp - code point
+	 * @return number of bytes
+	 */
+	private static int length(int cp) {
+		return cp < 0x80 ? 1 : cp < 0x800 ? 2 : cp < 0x10000 ? 3 : 4;
+	}
+
+	/**
+	 * Return a byte of the UTF-8 encoding of a code point
+	 *
+	 * @param cp - code point
+	 * @param n  - length of the encoding
+	 * @param k  - index of the byte
+	 * @return byte between 0 and 255
+	 */
+	private static int utf8(int cp, int n, int k) {
+		if (n == 1)
+			return cp;
+		int bits = cp >> 6 * (n - 1 - k);
+		return k == 0 ? (0xff00 >> n) & 0xff | bits : 0x80 | bits & 0x3f;
+	}
+}
@@ -0,0 +1,102 @@
+package application;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interning table from UTF-8 encoded names to canonical strings, so the same
+ * name read many times is decoded and stored only once. Open addressing with
+ * linear probing; lookups of known names allocate nothing.
+ *
+ * @author Zhaoyi
+ */
+public class NameTable {
+	private byte[][] keys;
+	private String[] values;
+	private int[] hashes;
+	private int size;
+
+	/**
+	 * Construct an empty table
+	 */
+	public NameTable() {
+		super();
+		keys = new byte[64][];
+		values = new String[64];
+		hashes = new int[64];
+	}
+
+	/**
+	 * Find the canonical string of an encoded name, adding it if new
+	 *
+	 * @param buf - bytes
+	 * @param off - start of the name
+	 * @param len - length of the name
+	 * @return canonical string
+	 */
+	public String intern(byte[] buf, int off, int len) {
+		int hash = hash(buf, off, len);
+		int mask = keys.length - 1;
+		int slot = hash & mask;
+		for (byte[] key; (key = keys[slot]) != null; slot = (slot + 1) & mask)
+			if (hashes[slot] == hash && Arrays.equals(key, 0, key.length, buf,
+					off, off + len))
+				return values[slot];
+
+		// new name
+		String name = new String(buf, off, len, StandardCharsets.UTF_8);
+		keys[slot] = Arrays.copyOfRange(buf, off, off + len);
+		values[slot] = name;
+		hashes[slot] = hash;
+		if (++size * 2 > keys.length)
+			grow();
+		return name;
+	}
+
+	/**
+	 * Return number of names
+	 *
+	 * @return number of names
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Double the capacity and reinsert all names
+	 */
+	private void grow() {
+		byte[][] oldKeys = keys;
+		String[] oldValues = values;
+		int[] oldHashes = hashes;
+		keys = new byte[oldKeys.length * 2][];
+		values = new String[keys.length];
+		hashes = new int[keys.length];
+		int mask = keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == null)
+				continue;
+			int slot = oldHashes[i] & mask;
+			while (keys[slot] != null)
+				slot = (slot + 1) & mask;
+			keys[slot] = oldKeys[i];
+			values[slot] = oldValues[i];
+			hashes[slot] = oldHashes[i];
+		}
+	}
+
+	/**
+	 * Hash an encoded name
+	 *
+	 * @param buf - bytes
+	 * @param off - start of the name
+	 * @param len - length of the name
+	 * @return hash
+	 */
+	private static int hash(byte[] buf, int off, int len) {
+		int h = 0x811c9dc5; // FNV-1a
+		for (int i = off; i < off + len; i++)
+			h = (h ^ buf[i]) * 0x01000193;
+		return h ^ (h >>> 16);
+	}
+}
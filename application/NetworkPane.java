@@ -3,27 +3,34 @@ package application;
 import static application.CtrlFactory.createText;
 
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReference;
 
-import javafx.collections.ObservableList;
+import javafx.application.Platform;
 import javafx.geometry.Point2D;
-import javafx.scene.Node;
+import javafx.scene.Group;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
+import javafx.scene.text.Text;
 
 /**
- * Pane for visualizing social network
+ * Pane for visualizing social network. The ego network is drawn on the canvas
+ * with every spoke in one path and every plain node outline in another, under
+ * a layer of labels that is kept as long as the layout is. Adding or removing
+ * a friend of the central user patches the layout in place, leaving or
+ * filling a free slot, and redraws only the region it covers. The time taken
+ * by every frame is recorded.
  *
  * @author Zhaoyi
  */
 public class NetworkPane extends Pane {
 	private final int MARGIN = 20; // margin of the canvas
 	private final int OFFSET = 40; // horizontal offset of text
+	private final int LABELS = 100; // max people labelled in the overview
+	private final int CACHED = 32; // max ego network layouts kept
 
 	// central user
 	String central = "";
@@ -38,10 +45,34 @@ public class NetworkPane extends Pane {
 
 	private Canvas cvs;
 	private GraphicsContext gc;
+	private Group labelLayer; // labels of the displayed ego network
 
 	// data
 	private SocialNetwork sn;
-	private HashMap<String, Point2D> coordinates; // coordinate of vertices
+	private LayoutCache.Entry ego; // layout of the displayed ego network
+	private LayoutCache cache; // recently displayed ego network layouts
+
+	// whole network view
+	private CsrGraph overview; // snapshot being laid out
+	private ForceLayout layout;
+	private int generation; // incremented whenever the view is replaced
+	private AtomicReference<Frame> pending; // latest undrawn frame
+	private Frame shown; // frame on the canvas
+	private double[] screenX; // drawn positions of the overview
+	private double[] screenY;
+
+	// scores to emphasize people by, or null
+	private Centrality scores;
+
+	// communities to color people by, or null
+	private Communities communities;
+
+	// frame metrics, in nanoseconds
+	private long fullFrames;
+	private long partialFrames;
+	private long lastFrame;
+	private long maxFrame;
+	private boolean lastPartial;
 
 	/**
 	 * Construct a network pane
@@ -51,11 +82,15 @@ public class NetworkPane extends Pane {
 	public NetworkPane(SocialNetwork sn) {
 		super();
 		this.sn = sn;
-		coordinates = new HashMap<String, Point2D>();
+		cache = new LayoutCache(CACHED);
+		pending = new AtomicReference<Frame>();
 		cvs = new Canvas();
 		gc = cvs.getGraphicsContext2D();
 		gc.setLineWidth(2);
 		gc.setStroke(Color.ROSYBROWN);
+		labelLayer = new Group();
+		labelLayer.setManaged(false);
+		getChildren().addAll(cvs, labelLayer);
 
 		setOnMouseClicked(this::onClick);
 	}
@@ -73,19 +108,32 @@ public class NetworkPane extends Pane {
 		radius = Math.min(w, h) / 2 - MARGIN;
 		cvs.setWidth(w);
 		cvs.setHeight(h);
+		cache.clear(); // positions depend on the size
 	}
 
 	/**
 	 * Clear all vertices and visualization
 	 */
 	public void clear() {
-		coordinates.clear();
-		ObservableList<Node> children = getChildren();
-		children.clear();
-		children.add(cvs);
+		stopOverview();
+		ego = null;
+		labelLayer.getChildren().clear();
 		gc.clearRect(0, 0, w, h);
 	}
 
+	/**
+	 * Stop any whole network layout and forget its drawing
+	 */
+	private void stopOverview() {
+		if (layout != null)
+			layout.cancel();
+		layout = null;
+		overview = null;
+		shown = null;
+		screenX = screenY = null;
+		generation++;
+	}
+
 	/**
 	 * Paint the visualization
 	 * 
@@ -93,41 +141,191 @@ public class NetworkPane extends Pane {
 	 * @param friends - his friends
 	 */
 	public void paint(String central, Collection<String> friends) {
+		long start = System.nanoTime();
 		this.central = central;
-		// clear children and canvas
-		clear();
-		ObservableList<Node> children = getChildren();
-		if (friends.size() == 0) {
-			// center
-			children.add(createText(center.getX(), center.getY(), central));
-			drawNode(center.getX(), center.getY());
+		stopOverview();
+
+		// reuse the layout unless his friends changed since
+		long version = sn.version(central);
+		LayoutCache.Entry e = cache.get(central, version);
+		if (e == null) {
+			e = layOut(central, friends, version);
+			if (version != -1)
+				cache.put(central, e);
+		}
+
+		// keep the labels if the layout is the one displayed
+		if (e != ego) {
+			ego = e;
+			labelLayer.getChildren().clear();
+			for (Text label : e.labels)
+				if (label != null)
+					labelLayer.getChildren().add(label);
+		}
+		drawEgo(0, 0, w, h);
+		recordFrame(start, false);
+	}
+
+	/**
+	 * Show a new friend of the central user, in a free slot of the layout if
+	 * there is one
+	 * 
+	 * @param friend - new friend
+	 */
+	public void addFriend(String friend) {
+		int slot = ego == null ? -1 : slotOf(null);
+		if (slot == -1) { // no room, lay out again
+			repaint(sn.getAdjacent(central));
+			return;
+		}
+		long start = System.nanoTime();
+		ego.names[slot] = friend;
+		ego.labels[slot] = createText(ego.x[slot], ego.y[slot], friend);
+		labelLayer.getChildren().add(ego.labels[slot]);
+		patched(slot);
+		recordFrame(start, true);
+	}
+
+	/**
+	 * Stop showing a former friend of the central user, leaving a free slot
+	 * in the layout
+	 * 
+	 * @param friend - former friend
+	 */
+	public void removeFriend(String friend) {
+		int slot = ego == null ? -1 : slotOf(friend);
+		if (slot == -1 || 2 * (free() + 1) > ego.names.length) {
+			repaint(sn.getAdjacent(central)); // mostly empty, lay out again
 			return;
 		}
+		long start = System.nanoTime();
+		ego.names[slot] = null;
+		labelLayer.getChildren().remove(ego.labels[slot]);
+		ego.labels[slot] = null;
+		patched(slot);
+		recordFrame(start, true);
+	}
+
+	/**
+	 * Keep a patched layout for the new friends of the central user and
+	 * redraw the region of a changed slot
+	 * 
+	 * @param slot - changed slot
+	 */
+	private void patched(int slot) {
+		long version = sn.version(central);
+		ego.version = version;
+		if (version != -1)
+			cache.put(central, ego);
 
-		double wordX = 0;
-		double wordY = 0;
-		double drg = 360.0 / friends.size();
-		double rad = 0;
-		Iterator<String> itr = friends.iterator();
-		String str = null;
+		// the spoke and node of the slot, with the stroke width around
+		double x = ego.x[slot], y = ego.y[slot];
+		double cx = center.getX(), cy = center.getY();
+		drawEgo(Math.floor(Math.min(x - OFFSET, cx) - 3),
+				Math.floor(Math.min(y - 15, cy) - 3),
+				Math.ceil(Math.max(x + OFFSET, cx) + 3),
+				Math.ceil(Math.max(y + 15, cy) + 3));
+	}
 
-		// circle
-		for (double degrees = 0; itr.hasNext(); degrees += drg) {
-			// calculate position
-			rad = Math.toRadians(degrees);
-			wordX = center.getX() + radius * Math.cos(rad);
-			wordY = center.getY() + radius * Math.sin(rad);
-
-			// display the text and draw a rectangle around it
-			children.add(createText(wordX, wordY, str = itr.next()));
-			gc.strokeLine(wordX, wordY, center.getX(), center.getY());
-			drawNode(wordX, wordY);
-			coordinates.put(str, new Point2D(wordX, wordY));
+	/**
+	 * Find the slot of a friend in the displayed layout
+	 * 
+	 * @param friend - friend, or null for a free slot
+	 * @return slot or -1 if absent
+	 */
+	private int slotOf(String friend) {
+		for (int i = 0; i < ego.names.length; i++)
+			if (friend == null ? ego.names[i] == null
+					: friend.equals(ego.names[i]))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Count the free slots of the displayed layout
+	 * 
+	 * @return number of free slots
+	 */
+	private int free() {
+		int free = 0;
+		for (String name : ego.names)
+			if (name == null)
+				free++;
+		return free;
+	}
+
+	/**
+	 * Draw the part of the ego network inside a region: spokes in one path,
+	 * then the nodes overlapping the region
+	 * 
+	 * @param x0 - left of the region
+	 * @param y0 - top of the region
+	 * @param x1 - right of the region
+	 * @param y1 - bottom of the region
+	 */
+	private void drawEgo(double x0, double y0, double x1, double y1) {
+		LayoutCache.Entry e = ego;
+		double cx = center.getX(), cy = center.getY();
+		gc.save();
+		gc.beginPath();
+		gc.rect(x0, y0, x1 - x0, y1 - y0);
+		gc.clip();
+		gc.clearRect(x0, y0, x1 - x0, y1 - y0);
+
+		// every spoke starts in the region as the center is in it
+		gc.beginPath();
+		for (int i = 0; i < e.names.length; i++)
+			if (e.names[i] != null) {
+				gc.moveTo(cx, cy);
+				gc.lineTo(e.x[i], e.y[i]);
+			}
+		gc.stroke();
+
+		// nodes over the spokes, plain outlines in one path
+		gc.beginPath();
+		for (int i = 0; i <= e.names.length; i++) {
+			String name = i < e.names.length ? e.names[i] : central;
+			double x = i < e.names.length ? e.x[i] : cx;
+			double y = i < e.names.length ? e.y[i] : cy;
+			if (name == null || x + OFFSET + 3 < x0 || x - OFFSET - 3 > x1
+					|| y + 18 < y0 || y - 18 > y1)
+				continue;
+			gc.clearRect(x - OFFSET, y - 15, 2 * OFFSET, 30);
+			double s = scores == null ? 0 : scores.normalized(name);
+			if (s == 0 && communities == null)
+				appendNode(x, y);
+			else
+				drawNode(x, y, name, s);
 		}
+		gc.stroke();
+		gc.restore();
+	}
 
-		// center
-		children.add(createText(center.getX(), center.getY(), central));
-		drawNode(center.getX(), center.getY());
+	/**
+	 * Place the friends evenly on the circle and create their labels
+	 * 
+	 * @param central - central user
+	 * @param friends - his friends
+	 * @param version - version stamp of the central user
+	 * @return layout of the ego network
+	 */
+	private LayoutCache.Entry layOut(String central,
+			Collection<String> friends, long version) {
+		int n = friends.size();
+		String[] names = friends.toArray(new String[n]);
+		double[] x = new double[n];
+		double[] y = new double[n];
+		Text[] labels = new Text[n + 1];
+		double drg = 360.0 / n;
+		for (int i = 0; i < n; i++) {
+			// calculate position
+			double rad = Math.toRadians(i * drg);
+			x[i] = center.getX() + radius * Math.cos(rad);
+			y[i] = center.getY() + radius * Math.sin(rad);
+			labels[i] = createText(x[i], y[i], names[i]);
+		}
+		labels[n] = createText(center.getX(), center.getY(), central);
+		return new LayoutCache.Entry(version, names, x, y, labels);
 	}
 
 	/**
@@ -139,6 +337,180 @@ public class NetworkPane extends Pane {
 		paint(central, friends);
 	}
 
+	/**
+	 * Emphasize people by their scores: higher scores are drawn larger and
+	 * redder
+	 * 
+	 * @param scores - scores of people, or null to stop emphasizing
+	 */
+	public void highlight(Centrality scores) {
+		this.scores = scores;
+		redraw();
+	}
+
+	/**
+	 * Color people by their communities
+	 * 
+	 * @param communities - communities of people, or null to stop coloring
+	 */
+	public void colorBy(Communities communities) {
+		this.communities = communities;
+		redraw();
+	}
+
+	/**
+	 * Redraw the current view after a style change
+	 */
+	private void redraw() {
+		if (shown != null)
+			drawFrame(shown);
+		else if (!central.isEmpty())
+			repaint(sn.getAdjacent(central));
+	}
+
+	/**
+	 * Find the color of a person
+	 * 
+	 * @param name  - vertex name
+	 * @param base  - color of a person without community or score
+	 * @param score - normalized score of the person
+	 * @return color
+	 */
+	private Color colorOf(String name, Color base, double score) {
+		int c = communities == null ? -1 : communities.community(name);
+		if (c != -1) // spread hues by the golden angle
+			return Color.hsb(c * 137.508 % 360, 0.7, 0.8);
+		return score > 0 ? base.interpolate(Color.CRIMSON, score) : base;
+	}
+
+	/**
+	 * Paint the whole network with a force-directed layout computed in the
+	 * background; intermediate layouts are drawn as they arrive
+	 */
+	public void paintAll() {
+		central = "";
+		clear();
+		overview = CsrGraph.of(sn);
+		int gen = generation;
+		layout = new ForceLayout(overview,
+				(x, y, done) -> onLayout(new Frame(gen, x, y)));
+		layout.start();
+	}
+
+	/**
+	 * Receive a layout frame on the layout thread and schedule drawing it,
+	 * dropping frames that were not drawn in time
+	 * 
+	 * @param frame - positions of all people
+	 */
+	private void onLayout(Frame frame) {
+		if (pending.getAndSet(frame) == null)
+			Platform.runLater(this::drawOverview);
+	}
+
+	/**
+	 * Draw the latest layout frame of the whole network
+	 */
+	private void drawOverview() {
+		Frame frame = pending.getAndSet(null);
+		if (frame == null || frame.generation != generation)
+			return; // the view has been replaced
+		drawFrame(frame);
+	}
+
+	/**
+	 * Draw a layout frame of the whole network
+	 * 
+	 * @param frame - positions of all people
+	 */
+	private void drawFrame(Frame frame) {
+		long start = System.nanoTime();
+		shown = frame;
+		int n = overview.order();
+
+		// fit the layout into the canvas
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+		double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, frame.x[i]);
+			minY = Math.min(minY, frame.y[i]);
+			maxX = Math.max(maxX, frame.x[i]);
+			maxY = Math.max(maxY, frame.y[i]);
+		}
+		double scale = Math.min((w - 2 * MARGIN) / Math.max(maxX - minX, 1e-9),
+				(h - 2 * MARGIN) / Math.max(maxY - minY, 1e-9));
+		double[] sx = new double[n];
+		double[] sy = new double[n];
+		for (int i = 0; i < n; i++) {
+			sx[i] = MARGIN + (frame.x[i] - minX) * scale;
+			sy[i] = MARGIN + (frame.y[i] - minY) * scale;
+		}
+		screenX = sx;
+		screenY = sy;
+
+		// edges in a single path, then people as dots
+		gc.clearRect(0, 0, w, h);
+		gc.save();
+		gc.setLineWidth(n > LABELS ? 0.3 : 1);
+		gc.beginPath();
+		for (int i = 0; i < n; i++)
+			for (int k = overview.offsets[i]; k < overview.offsets[i + 1]; k++) {
+				int j = overview.targets[k];
+				if (i < j) {
+					gc.moveTo(sx[i], sy[i]);
+					gc.lineTo(sx[j], sy[j]);
+				}
+			}
+		gc.stroke();
+		gc.setFill(Color.SADDLEBROWN);
+		double r = n > LABELS ? 1.5 : 4;
+		boolean styled = scores != null || communities != null;
+		for (int i = 0; i < n; i++) {
+			double ri = r;
+			if (styled) { // names are decoded only to look up styles
+				String name = overview.name(i);
+				double s = scores == null ? 0 : scores.normalized(name);
+				ri = r * (1 + 2 * s);
+				gc.setFill(colorOf(name, Color.SADDLEBROWN, s));
+			}
+			gc.fillOval(sx[i] - ri, sy[i] - ri, 2 * ri, 2 * ri);
+		}
+		gc.setFill(Color.SADDLEBROWN);
+		if (n <= LABELS)
+			for (int i = 0; i < n; i++)
+				gc.fillText(overview.name(i), sx[i] + r, sy[i] - r);
+		gc.restore();
+		recordFrame(start, false);
+	}
+
+	/**
+	 * Record the time taken to issue the drawing of a frame
+	 * 
+	 * @param start   - time the frame started
+	 * @param partial - true if only a region was redrawn
+	 */
+	private void recordFrame(long start, boolean partial) {
+		lastFrame = System.nanoTime() - start;
+		maxFrame = Math.max(maxFrame, lastFrame);
+		lastPartial = partial;
+		if (partial)
+			partialFrames++;
+		else
+			fullFrames++;
+	}
+
+	/**
+	 * Describe the latest frame and the frames so far
+	 * 
+	 * @return frame metrics
+	 */
+	public String frameStats() {
+		return String.format("Last frame:\n%.2f ms %s\n%d full, %d partial,"
+				+ "\nslowest %.2f ms", lastFrame / 1e6,
+				lastPartial ? "partial" : "full", fullFrames, partialFrames,
+				maxFrame / 1e6);
+	}
+
 	/**
 	 * Handler for mouse click
 	 * 
@@ -152,18 +524,38 @@ public class NetworkPane extends Pane {
 		double x = e.getX();
 		double y = e.getY();
 
+		// in the whole network view, paint the nearest person
+		if (overview != null) {
+			if (screenX == null)
+				return;
+			int nearest = -1;
+			double best = 8 * 8; // pick radius
+			for (int i = 0; i < screenX.length; i++) {
+				double d = (screenX[i] - x) * (screenX[i] - x)
+						+ (screenY[i] - y) * (screenY[i] - y);
+				if (d < best) {
+					best = d;
+					nearest = i;
+				}
+			}
+			if (nearest != -1) {
+				String name = overview.name(nearest);
+				paint(name, sn.getAdjacent(name));
+			}
+			return;
+		}
+
 		// only response if the click is on the circle
 		if (!isOnCircle(x, y))
 			return;
 
 		// check if the click is on any node
-		for (String s : coordinates.keySet()) {
-			Point2D point = coordinates.get(s);
-			if (isOver(point.getX(), point.getY(), x, y)) {
+		for (int i = 0; ego != null && i < ego.names.length; i++)
+			if (ego.names[i] != null && isOver(ego.x[i], ego.y[i], x, y)) {
+				String s = ego.names[i];
 				paint(s, sn.getAdjacent(s));
 				break;
 			}
-		}
 	}
 
 	/**
@@ -193,13 +585,57 @@ public class NetworkPane extends Pane {
 	}
 
 	/**
-	 * Draw the visualization
+	 * Append the outline of a plain node to the current path
 	 * 
 	 * @param x - vertex x coordinate
 	 * @param y - vertex y coordinate
 	 */
-	private void drawNode(double x, double y) {
-		gc.clearRect(x - OFFSET, y - 15, 2 * OFFSET, 30);
+	private void appendNode(double x, double y) {
+		double left = x - OFFSET, right = x + OFFSET;
+		double top = y - 15, bottom = y + 15, r = 12.5;
+		gc.moveTo(left + r, top);
+		gc.arcTo(right, top, right, bottom, r);
+		gc.arcTo(right, bottom, left, bottom, r);
+		gc.arcTo(left, bottom, left, top, r);
+		gc.arcTo(left, top, right, top, r);
+		gc.closePath();
+	}
+
+	/**
+	 * Draw an emphasized node on its own
+	 * 
+	 * @param x    - vertex x coordinate
+	 * @param y    - vertex y coordinate
+	 * @param name - vertex name
+	 * @param s    - normalized score of the vertex
+	 */
+	private void drawNode(double x, double y, String name, double s) {
+		gc.save();
+		gc.setLineWidth(2 + 3 * s);
+		gc.setStroke(colorOf(name, Color.ROSYBROWN, s));
 		gc.strokeRoundRect(x - OFFSET, y - 15, 2 * OFFSET, 30, 25, 25);
+		gc.restore();
+	}
+
+	/**
+	 * Positions of the whole network produced by a layout
+	 */
+	private static class Frame {
+		int generation;
+		double[] x;
+		double[] y;
+
+		/**
+		 * Construct a frame
+		 * 
+		 * @param generation - view the frame belongs to
+		 * @param x          - x coordinates
+		 * @param y          - y coordinates
+		 */
+		Frame(int generation, double[] x, double[] y) {
+			this.generation = generation;
+			this.x = x;
+			this.y = y;
+		}
 	}
 }
@@ -1,8 +1,14 @@
 package application;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Parser for social network visualizer
@@ -13,6 +19,10 @@ public class Parser {
 	private SocialNetwork sn;
 	private NetworkPane network;
 
+	// errors of the last load
+	private int errorCount;
+	private List<String> errors;
+
 	/**
 	 * Create the parser
 	 * 
@@ -23,64 +33,137 @@ public class Parser {
 		super();
 		this.sn = sn;
 		this.network = network;
+		errors = new ArrayList<String>();
 	}
 
 	/**
 	 * Parse the given file and change the social network and redraw it
 	 * 
 	 * @param file - file to load
-	 * @return true if no exception occurred
+	 * @return true if no error occurred
 	 */
 	public boolean load(File file) {
-		boolean flag = true; // false if error occurs
-		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
-			String line = null;
-			String[] commands = null;
-			int argc = 0;
-			while ((line = br.readLine()) != null) {
-				if (line.isEmpty()) // ignore empty line
-					continue;
-				commands = line.trim().split("\\s+");
-				argc = commands.length;
-				if (argc > 3 || argc < 2) {
-					flag = false;
-					continue;
-				}
-				switch (commands[0]) {
-					case "a": // add
-						if (argc == 2) {
-							if (!sn.addVertex(commands[1]))
-								flag = false;
-						} else {
-							if (!sn.addEdge(commands[1], commands[2]))
-								flag = false;
-						}
-						break;
-					case "r": // remove
-						if (argc == 2) {
-							if (!sn.removeVertex(commands[1]))
-								flag = false;
-						} else {
-							if (!sn.removeEdge(commands[1], commands[2]))
-								flag = false;
-						}
-						break;
-					case "s": // search
-						String name = commands[1];
-						if (argc == 2 && sn.getAllVertices().contains(name)) {
-							network.paint(name, sn.getAdjacent(name));
-						} else {
-							flag = false;
-						}
-						break;
-					default: // error
-						flag = false;
-						break;
-				}
+		errorCount = 0;
+		errors = new ArrayList<String>();
+		CommandTokenizer tok = null;
+		String failure = null;
+		// names are interned per load, the graph keeps the strings it needs
+		try (InputStream in = new FileInputStream(file)) {
+			tok = new CommandTokenizer(in, new NameTable());
+			while (tok.next()) {
+				String error = apply(tok.command(), tok.argc(), tok.arg(0),
+						tok.argc() > 1 ? tok.arg(1) : null);
+				if (error != null)
+					tok.error(error);
 			}
 		} catch (Exception e) {
-			flag = false;
+			failure = file.getName() + ": " + e.getMessage();
+		}
+		if (tok != null) { // errors of the lines read before any failure
+			errorCount = tok.errorCount();
+			errors = tok.errors();
+		}
+		if (failure != null) {
+			errorCount++;
+			errors.add(failure);
+		}
+		return errorCount == 0;
+	}
+
+	/**
+	 * Apply a command to the social network
+	 * 
+	 * @param command - ADD, REMOVE or SEARCH
+	 * @param argc    - number of names
+	 * @param arg0    - first name
+	 * @param arg1    - second name if argc is 2
+	 * @return why the command failed, or null if it succeeded
+	 */
+	String apply(byte command, int argc, String arg0, String arg1) {
+		switch (command) {
+			case CommandTokenizer.ADD: // add
+				if (argc == 1)
+					return sn.addVertex(arg0) ? null : "person already exists";
+				return sn.addEdge(arg0, arg1) ? null : "relation already exists";
+			case CommandTokenizer.REMOVE: // remove
+				if (argc == 1)
+					return sn.removeVertex(arg0) ? null : "no such person";
+				return sn.removeEdge(arg0, arg1) ? null : "no such relation";
+			default: // search
+				if (!sn.getAllVertices().contains(arg0))
+					return "no such person";
+				network.paint(arg0, sn.getAdjacent(arg0));
+				return null;
+		}
+	}
+
+	/**
+	 * Write a graph as commands that load it back: an add for every
+	 * friendship and for every person without friends. Names are copied
+	 * encoded from the graph, or a snapshot is written instead if the file
+	 * has the snapshot extension.
+	 * 
+	 * @param g    - graph, such as an extracted subgraph
+	 * @param file - file to write to
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(CsrGraph g, File file) throws IOException {
+		if (AdjacencyFile.isSnapshot(file)) {
+			AdjacencyFile.write(g, file);
+			return;
+		}
+		try (OutputStream out = new BufferedOutputStream(
+				new FileOutputStream(file), 1 << 16)) {
+			write(g, out, 0, g.order());
 		}
-		return flag;
+	}
+
+	/**
+	 * Write the commands of a range of vertices: the friendships to
+	 * vertices with higher ids and the vertices without friends
+	 * 
+	 * @param g    - graph
+	 * @param out  - output
+	 * @param from - first vertex id
+	 * @param to   - vertex id after the last
+	 * @throws IOException if the output cannot be written
+	 */
+	static void write(CsrGraph g, OutputStream out, int from, int to)
+			throws IOException {
+		for (int v = from; v < to; v++) {
+			if (g.degree(v) == 0) {
+				out.write(CommandTokenizer.ADD);
+				out.write(' ');
+				g.names.write(v, out);
+				out.write('\n');
+			}
+			for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++)
+				if (v < g.targets[k]) {
+					out.write(CommandTokenizer.ADD);
+					out.write(' ');
+					g.names.write(v, out);
+					out.write(' ');
+					g.names.write(g.targets[k], out);
+					out.write('\n');
+				}
+		}
+	}
+
+	/**
+	 * Return number of errors of the last load
+	 * 
+	 * @return number of errors
+	 */
+	public int getErrorCount() {
+		return errorCount;
+	}
+
+	/**
+	 * Return messages of the first errors of the last load
+	 * 
+	 * @return error messages with line numbers
+	 */
+	public List<String> getErrors() {
+		return errors;
 	}
 }
@@ -0,0 +1,125 @@
+package application;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Benchmark comparing the byte-level command tokenizer with the former
+ * readLine, trim, split and string switch parsing of the text format. Both
+ * sides resolve every name to one canonical string, as loading a graph does.
+ *
+ * @author Zhaoyi
+ */
+public class ParserBenchmark {
+	/**
+	 * Run the benchmark
+	 *
+	 * @param args - number of lines, number of distinct names
+	 * @throws IOException if the temporary file cannot be used
+	 */
+	public static void main(String[] args) throws IOException {
+		int lines = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		int people = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		File file = File.createTempFile("commands", ".txt");
+		file.deleteOnExit();
+		write(file, lines, people);
+
+		for (int round = 0; round < 5; round++) { // first rounds warm up
+			long t0 = System.nanoTime();
+			long legacy = legacy(file);
+			long t1 = System.nanoTime();
+			long tokens = tokenizer(file);
+			long t2 = System.nanoTime();
+			System.out.printf(
+					"round %d: split %d ms (%.1f M lines/s), "
+							+ "tokenizer %d ms (%.1f M lines/s), %d/%d commands%n",
+					round, (t1 - t0) / 1000000, lines * 1e3 / (t1 - t0),
+					(t2 - t1) / 1000000, lines * 1e3 / (t2 - t1), legacy,
+					tokens);
+		}
+	}
+
+	/**
+	 * Write random add and remove commands
+	 *
+	 * @param file   - file
+	 * @param lines  - number of lines
+	 * @param people - number of distinct names
+	 * @throws IOException if the file cannot be written
+	 */
+	private static void write(File file, int lines, int people)
+			throws IOException {
+		Random random = new Random(0);
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+			for (int i = 0; i < lines; i++) {
+				bw.write(random.nextInt(10) == 0 ? "r " : "a ");
+				bw.write("user" + random.nextInt(people));
+				if (random.nextInt(20) != 0)
+					bw.write(" user" + random.nextInt(people));
+				bw.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Parse with the former approach
+	 *
+	 * @param file - file
+	 * @return number of well-formed commands
+	 * @throws IOException if the file cannot be read
+	 */
+	private static long legacy(File file) throws IOException {
+		long count = 0;
+		Map<String, String> names = new HashMap<String, String>();
+		try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+			String line = null;
+			String[] commands = null;
+			while ((line = br.readLine()) != null) {
+				if (line.isEmpty())
+					continue;
+				commands = line.trim().split("\\s+");
+				if (commands.length > 3 || commands.length < 2)
+					continue;
+				switch (commands[0]) {
+					case "a":
+					case "r":
+					case "s":
+						for (int i = 1; i < commands.length; i++)
+							names.putIfAbsent(commands[i], commands[i]);
+						count += names.get(commands[commands.length - 1])
+								.length() > 0 ? 1 : 0;
+						break;
+					default:
+						break;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Parse with the command tokenizer
+	 *
+	 * @param file - file
+	 * @return number of well-formed commands
+	 * @throws IOException if the file cannot be read
+	 */
+	private static long tokenizer(File file) throws IOException {
+		long count = 0;
+		try (InputStream in = new FileInputStream(file)) {
+			CommandTokenizer tok = new CommandTokenizer(in, new NameTable());
+			while (tok.next())
+				count += tok.arg(tok.argc() - 1).length() > 0 ? 1 : 0;
+		}
+		return count;
+	}
+}
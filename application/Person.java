@@ -1,8 +1,5 @@
 package application;
 
-import java.util.HashSet;
-import java.util.Set;
-
 /**
  * Vertex in the social network
  *
@@ -10,16 +7,24 @@ import java.util.Set;
  */
 public class Person {
 	String name;
-	Set<String> friends;
+	FriendSet friends;
+
+	// index in the people of the network, reused after removal
+	int id;
+
+	// stamp of the latest change to this person's friends
+	long version;
 
 	/**
 	 * Construct a person
 	 * 
 	 * @param name - name
+	 * @param id   - index in the people of the network
 	 */
-	Person(String name) {
+	Person(String name, int id) {
 		super();
 		this.name = name;
-		friends = new HashSet<String>();
+		this.id = id;
+		friends = new FriendSet();
 	}
 }
\ No newline at end of file
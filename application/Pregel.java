@@ -0,0 +1,389 @@
+package application;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleBinaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Vertex-centric computation over a graph snapshot in supersteps. In every
+ * superstep a user function runs on each active vertex, or vertex with
+ * messages, in parallel on the fork-join pool; it reads the combined
+ * messages sent to the vertex in the previous superstep, updates the vertex
+ * value and sends messages to other vertices. Messages are combined into one
+ * per vertex by a combiner. A vertex halts by voting so, and is woken again
+ * by a message. The computation ends when every vertex halted and no message
+ * is in flight, or after a number of supersteps.
+ *
+ * Vertices are split into contiguous partitions of about equal edges; each
+ * partition buffers its messages per destination partition, so neither
+ * sending nor delivering needs synchronization.
+ *
+ * @author Zhaoyi
+ */
+public class Pregel {
+	/**
+	 * User function run on every vertex in every superstep
+	 */
+	public interface Compute {
+		/**
+		 * Compute one vertex
+		 *
+		 * @param ctx - vertex being computed
+		 */
+		void compute(Context ctx);
+	}
+
+	private CsrGraph g;
+	private Compute compute;
+	private DoubleBinaryOperator combiner;
+
+	private int[] bounds; // first vertex of every partition, and n
+	private int[] owner; // partition of every vertex
+	private Buffer[][] out; // messages by source and destination partition
+
+	private double[] values;
+	private boolean[] halted;
+	private double[] inbox;
+	private boolean[] received;
+	private double[] nextInbox;
+	private boolean[] nextReceived;
+
+	private int superstep;
+	private double aggregated; // sum aggregated in the previous superstep
+
+	/**
+	 * Construct a computation
+	 *
+	 * @param g        - graph
+	 * @param initial  - initial value of every vertex
+	 * @param compute  - vertex function
+	 * @param combiner - combines two messages to the same vertex into one
+	 */
+	public Pregel(CsrGraph g, double[] initial, Compute compute,
+			DoubleBinaryOperator combiner) {
+		super();
+		this.g = g;
+		this.compute = compute;
+		this.combiner = combiner;
+		int n = g.order();
+		values = initial.clone();
+		halted = new boolean[n];
+		inbox = new double[n];
+		received = new boolean[n];
+		nextInbox = new double[n];
+		nextReceived = new boolean[n];
+
+		// partitions of about equal vertices plus edges
+		int parts = Math.max(1,
+				Math.min(n, 4 * ForkJoinPool.getCommonPoolParallelism()));
+		bounds = new int[parts + 1];
+		long total = (long) n + g.targets.length;
+		for (int p = 1, v = 0; p < parts; p++) {
+			long goal = total * p / parts;
+			while (v < n && (long) v + g.offsets[v] < goal)
+				v++;
+			bounds[p] = v;
+		}
+		bounds[parts] = n;
+		owner = new int[n];
+		for (int p = 0; p < parts; p++)
+			Arrays.fill(owner, bounds[p], bounds[p + 1], p);
+		out = new Buffer[parts][parts];
+		for (Buffer[] row : out)
+			for (int d = 0; d < parts; d++)
+				row[d] = new Buffer();
+	}
+
+	/**
+	 * Run supersteps until every vertex halted without messages in flight
+	 *
+	 * @param maxSupersteps - maximum number of supersteps
+	 * @return value of every vertex
+	 */
+	public double[] run(int maxSupersteps) {
+		int parts = bounds.length - 1;
+		for (; superstep < maxSupersteps; superstep++) {
+			// compute
+			double sum = IntStream.range(0, parts).parallel().mapToDouble(p -> {
+				Context ctx = new Context(p);
+				for (int v = bounds[p]; v < bounds[p + 1]; v++) {
+					if (halted[v] && !received[v])
+						continue;
+					halted[v] = false;
+					ctx.v = v;
+					compute.compute(ctx);
+				}
+				return ctx.sum;
+			}).sum();
+			aggregated = sum;
+
+			// deliver, combining messages into the next inbox
+			long pending = IntStream.range(0, parts).parallel().mapToLong(d -> {
+				Arrays.fill(nextReceived, bounds[d], bounds[d + 1], false);
+				long count = 0;
+				for (int s = 0; s < parts; s++) {
+					Buffer b = out[s][d];
+					for (int i = 0; i < b.size; i++) {
+						int u = b.to[i];
+						nextInbox[u] = nextReceived[u]
+								? combiner.applyAsDouble(nextInbox[u], b.value[i])
+								: b.value[i];
+						nextReceived[u] = true;
+					}
+					count += b.size;
+					b.size = 0;
+				}
+				for (int v = bounds[d]; v < bounds[d + 1]; v++)
+					if (!halted[v])
+						count++;
+				return count;
+			}).sum();
+
+			double[] t = inbox;
+			inbox = nextInbox;
+			nextInbox = t;
+			boolean[] r = received;
+			received = nextReceived;
+			nextReceived = r;
+			if (pending == 0) {
+				superstep++;
+				break;
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Return number of supersteps run
+	 *
+	 * @return number of supersteps
+	 */
+	public int supersteps() {
+		return superstep;
+	}
+
+	/**
+	 * Label every vertex with the smallest id in its connected component
+	 *
+	 * @param g - graph
+	 * @return component label of every vertex
+	 */
+	public static double[] components(CsrGraph g) {
+		double[] ids = new double[g.order()];
+		for (int v = 0; v < ids.length; v++)
+			ids[v] = v;
+		return new Pregel(g, ids, ctx -> {
+			double label = Math.min(ctx.value(),
+					ctx.hasMessage() ? ctx.message() : ctx.value());
+			if (ctx.superstep() == 0 || label < ctx.value()) {
+				ctx.setValue(label);
+				ctx.sendToNeighbors(label);
+			}
+			ctx.voteToHalt();
+		}, Math::min).run(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Find the number of friendships between a source and every vertex
+	 *
+	 * @param g      - graph
+	 * @param source - source id
+	 * @return distance of every vertex, infinite if unreachable
+	 */
+	public static double[] distances(CsrGraph g, int source) {
+		double[] dist = new double[g.order()];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		return new Pregel(g, dist, ctx -> {
+			double d = ctx.vertex() == source ? 0
+					: ctx.hasMessage() ? ctx.message() : ctx.value();
+			if (d < ctx.value()) {
+				ctx.setValue(d);
+				ctx.sendToNeighbors(d + 1);
+			}
+			ctx.voteToHalt();
+		}, Math::min).run(Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Compute PageRank for a number of iterations; rank of people without
+	 * friends is spread over everyone through the aggregator
+	 *
+	 * @param g          - graph
+	 * @param damping    - probability of following a link
+	 * @param iterations - number of iterations
+	 * @return PageRank of every vertex
+	 */
+	public static double[] pageRank(CsrGraph g, double damping,
+			int iterations) {
+		int n = g.order();
+		double[] rank = new double[n];
+		Arrays.fill(rank, 1.0 / n);
+		return new Pregel(g, rank, ctx -> {
+			if (ctx.superstep() > 0)
+				ctx.setValue((1 - damping) / n + damping
+						* ((ctx.hasMessage() ? ctx.message() : 0)
+								+ ctx.aggregated() / n));
+			if (ctx.superstep() == iterations) {
+				ctx.voteToHalt();
+				return;
+			}
+			if (ctx.degree() == 0)
+				ctx.aggregate(ctx.value());
+			else
+				ctx.sendToNeighbors(ctx.value() / ctx.degree());
+		}, Double::sum).run(iterations + 1);
+	}
+
+	/**
+	 * View of the vertex being computed, reused for every vertex of a
+	 * partition
+	 */
+	public class Context {
+		private int partition;
+		private int v;
+		private double sum; // aggregated by this partition
+
+		/**
+		 * Construct a view for a partition
+		 *
+		 * @param partition - partition
+		 */
+		private Context(int partition) {
+			this.partition = partition;
+		}
+
+		/**
+		 * Return the id of the vertex
+		 *
+		 * @return vertex id
+		 */
+		public int vertex() {
+			return v;
+		}
+
+		/**
+		 * Return the current superstep, starting at 0
+		 *
+		 * @return superstep
+		 */
+		public int superstep() {
+			return superstep;
+		}
+
+		/**
+		 * Return the value of the vertex
+		 *
+		 * @return value
+		 */
+		public double value() {
+			return values[v];
+		}
+
+		/**
+		 * Change the value of the vertex
+		 *
+		 * @param value - value
+		 */
+		public void setValue(double value) {
+			values[v] = value;
+		}
+
+		/**
+		 * Return number of neighbours of the vertex
+		 *
+		 * @return degree
+		 */
+		public int degree() {
+			return g.degree(v);
+		}
+
+		/**
+		 * Check if messages were sent to the vertex in the previous superstep
+		 *
+		 * @return true if there is a message
+		 */
+		public boolean hasMessage() {
+			return received[v];
+		}
+
+		/**
+		 * Return the combined messages sent to the vertex
+		 *
+		 * @return message, valid if hasMessage()
+		 */
+		public double message() {
+			return inbox[v];
+		}
+
+		/**
+		 * Send a message to a vertex for the next superstep
+		 *
+		 * @param u       - vertex id
+		 * @param message - message
+		 */
+		public void sendTo(int u, double message) {
+			out[partition][owner[u]].add(u, message);
+		}
+
+		/**
+		 * Send a message to every neighbour for the next superstep
+		 *
+		 * @param message - message
+		 */
+		public void sendToNeighbors(double message) {
+			for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++)
+				sendTo(g.targets[k], message);
+		}
+
+		/**
+		 * Add to the sum visible to all vertices in the next superstep
+		 *
+		 * @param x - amount
+		 */
+		public void aggregate(double x) {
+			sum += x;
+		}
+
+		/**
+		 * Return the sum aggregated by all vertices in the previous
+		 * superstep
+		 *
+		 * @return sum
+		 */
+		public double aggregated() {
+			return aggregated;
+		}
+
+		/**
+		 * Stop computing the vertex until a message arrives
+		 */
+		public void voteToHalt() {
+			halted[v] = true;
+		}
+	}
+
+	/**
+	 * Growable buffer of messages
+	 */
+	private static class Buffer {
+		int[] to = new int[16];
+		double[] value = new double[16];
+		int size;
+
+		/**
+		 * Append a message
+		 *
+		 * @param u       - destination
+		 * @param message - message
+		 */
+		void add(int u, double message) {
+			if (size == to.length) {
+				to = Arrays.copyOf(to, size * 2);
+				value = Arrays.copyOf(value, size * 2);
+			}
+			to[size] = u;
+			value[size++] = message;
+		}
+	}
+}
@@ -0,0 +1,289 @@
+package application;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Load of a command file that reads in the background and commits the
+ * commands to the social network in chunks on a committing thread, normally
+ * the JavaFX application thread. Between chunks the network is consistent
+ * and can be queried, and a listener learns the progress after every chunk.
+ * Reading runs at most a few chunks ahead of committing. An aborted load
+ * stops reading and drops the chunks not committed yet, so the network holds
+ * exactly the commands of the committed chunks.
+ *
+ * Every load interns names through its own table. The committing thread
+ * must be the one that owns the network, so that commits of several loads
+ * never interleave with each other or with other changes.
+ *
+ * @author Zhaoyi
+ */
+public class ProgressiveLoader {
+	/**
+	 * Receiver of the progress of a load, called on the committing thread
+	 */
+	public interface Listener {
+		/**
+		 * Receive the progress after a chunk was committed
+		 *
+		 * @param bytesRead - bytes of the file read so far
+		 * @param length    - length of the file
+		 * @param commands  - commands committed so far
+		 */
+		void committed(long bytesRead, long length, long commands);
+
+		/**
+		 * Receive the end of the load, after the last chunk
+		 *
+		 * @param aborted - true if the load was aborted before the end
+		 */
+		void finished(boolean aborted);
+	}
+
+	private static final int AHEAD = 2; // chunks read but not committed
+	private static final int MAX_ERRORS = 100; // error messages kept
+
+	private Parser parser;
+	private File file;
+	private int chunkSize;
+	private Executor committer;
+	private Listener listener;
+	private Consumer<String> log;
+	private Thread reader;
+	private Semaphore ahead;
+	private volatile boolean aborted;
+	private boolean complete; // the whole file was read
+
+	// owned by the committing thread
+	private long commands;
+	private int errorCount;
+	private List<String> errors;
+	private List<String> readErrors; // set by the reader before finishing
+	private int readErrorCount;
+
+	/**
+	 * Construct a load
+	 *
+	 * @param parser    - parser applying the commands
+	 * @param file      - file to load
+	 * @param chunkSize - commands committed together
+	 * @param committer - runs the commits in order
+	 * @param listener  - receiver of the progress
+	 * @param log       - receives every committed command
+	 */
+	public ProgressiveLoader(Parser parser, File file, int chunkSize,
+			Executor committer, Listener listener, Consumer<String> log) {
+		super();
+		this.parser = parser;
+		this.file = file;
+		this.chunkSize = chunkSize;
+		this.committer = committer;
+		this.listener = listener;
+		this.log = log;
+		ahead = new Semaphore(AHEAD);
+		errors = new ArrayList<String>();
+		readErrors = new ArrayList<String>();
+		reader = new Thread(this::read, "load-" + file.getName());
+		reader.setDaemon(true);
+	}
+
+	/**
+	 * Start reading the file
+	 */
+	public void start() {
+		reader.start();
+	}
+
+	/**
+	 * Stop the load; chunks already committed are kept
+	 */
+	public void abort() {
+		aborted = true;
+	}
+
+	/**
+	 * Wait until the file has been read and the end of the load submitted
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void join() throws InterruptedException {
+		reader.join();
+	}
+
+	/**
+	 * Return number of commands committed
+	 *
+	 * @return number of commands
+	 */
+	public long commands() {
+		return commands;
+	}
+
+	/**
+	 * Return number of errors, valid once finished
+	 *
+	 * @return number of errors
+	 */
+	public int getErrorCount() {
+		return readErrorCount + errorCount;
+	}
+
+	/**
+	 * Return messages of the first errors in line order, valid once finished
+	 *
+	 * @return error messages with line numbers
+	 */
+	public List<String> getErrors() {
+		List<String> merged = new ArrayList<String>();
+		int i = 0, j = 0;
+		while (merged.size() < MAX_ERRORS
+				&& (i < readErrors.size() || j < errors.size())) {
+			if (j == errors.size() || i < readErrors.size()
+					&& lineOf(readErrors.get(i)) < lineOf(errors.get(j)))
+				merged.add(readErrors.get(i++));
+			else
+				merged.add(errors.get(j++));
+		}
+		return merged;
+	}
+
+	/**
+	 * Read the file into chunks and submit them to the committing thread
+	 */
+	private void read() {
+		List<String> messages = new ArrayList<String>();
+		int count = 0;
+		CommandTokenizer tok = null;
+		try (InputStream in = new FileInputStream(file)) {
+			tok = new CommandTokenizer(in, new NameTable());
+			Chunk chunk = new Chunk(chunkSize);
+			while (!aborted && tok.next()) {
+				chunk.add(tok);
+				if (chunk.size == chunkSize) {
+					submit(chunk, tok.bytesRead());
+					chunk = new Chunk(chunkSize);
+				}
+			}
+			if (!aborted) {
+				submit(chunk, tok.bytesRead());
+				complete = true;
+			}
+		} catch (IOException e) {
+			messages.add(file.getName() + ": " + e.getMessage());
+			count++;
+		} catch (InterruptedException e) {
+			aborted = true;
+		}
+		if (tok != null) { // errors of the lines read before any failure
+			tok.errors().addAll(messages);
+			messages = tok.errors();
+			count += tok.errorCount();
+		}
+		List<String> m = messages;
+		int c = count;
+		committer.execute(() -> {
+			readErrors = m;
+			readErrorCount = c;
+			listener.finished(!complete);
+		});
+	}
+
+	/**
+	 * Hand a chunk to the committing thread, waiting while too many chunks
+	 * are waiting to be committed
+	 *
+	 * @param chunk     - chunk
+	 * @param bytesRead - bytes read up to the end of the chunk
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void submit(Chunk chunk, long bytesRead)
+			throws InterruptedException {
+		ahead.acquire();
+		long length = file.length();
+		committer.execute(() -> {
+			try {
+				commit(chunk, bytesRead, length);
+			} finally {
+				ahead.release();
+			}
+		});
+	}
+
+	/**
+	 * Apply the commands of a chunk, unless the load was aborted
+	 *
+	 * @param chunk     - chunk
+	 * @param bytesRead - bytes read up to the end of the chunk
+	 * @param length    - length of the file
+	 */
+	private void commit(Chunk chunk, long bytesRead, long length) {
+		if (aborted)
+			return;
+		for (int i = 0; i < chunk.size; i++) {
+			String arg0 = chunk.args[2 * i], arg1 = chunk.args[2 * i + 1];
+			String error = parser.apply(chunk.commands[i],
+					arg1 == null ? 1 : 2, arg0, arg1);
+			if (error != null) {
+				errorCount++;
+				if (errors.size() < MAX_ERRORS)
+					errors.add("line " + chunk.lines[i] + ": " + error);
+			}
+			log.accept((char) chunk.commands[i] + " " + arg0
+					+ (arg1 == null ? "" : " " + arg1));
+		}
+		commands += chunk.size;
+		listener.committed(bytesRead, length, commands);
+	}
+
+	/**
+	 * Find the line number of an error message
+	 *
+	 * @param error - message starting with its line number
+	 * @return line number, or 0 for errors of the whole file
+	 */
+	private static int lineOf(String error) {
+		if (!error.startsWith("line "))
+			return 0;
+		return Integer.parseInt(error.substring(5, error.indexOf(':')));
+	}
+
+	/**
+	 * Commands read together, in compact arrays
+	 */
+	private static class Chunk {
+		byte[] commands;
+		String[] args; // two per command, the second null for one name
+		int[] lines;
+		int size;
+
+		/**
+		 * Construct an empty chunk
+		 *
+		 * @param capacity - maximum number of commands
+		 */
+		Chunk(int capacity) {
+			commands = new byte[capacity];
+			args = new String[2 * capacity];
+			lines = new int[capacity];
+		}
+
+		/**
+		 * Append the current command of a tokenizer
+		 *
+		 * @param tok - tokenizer
+		 */
+		void add(CommandTokenizer tok) {
+			commands[size] = tok.command();
+			args[2 * size] = tok.arg(0);
+			args[2 * size + 1] = tok.argc() > 1 ? tok.arg(1) : null;
+			lines[size++] = tok.line();
+		}
+	}
+}
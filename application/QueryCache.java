@@ -0,0 +1,409 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Bounded cache of query results over a social network. Every result is
+ * stored with the version stamps it depends on: mutual friends depend only
+ * on the friends of the two people, connections and components on the whole
+ * graph. A result whose stamps no longer match is dropped on lookup.
+ *
+ * On large graphs connections, k-hop neighbourhoods and components are
+ * computed by a direction-optimizing search over a snapshot of the graph,
+ * taken once per version and shared by all queries at that version.
+ *
+ * @author Zhaoyi
+ */
+public class QueryCache {
+	/**
+	 * Eviction policy
+	 */
+	public enum Policy {
+		LRU, // least recently used
+		LFU // least frequently used
+	}
+
+	// order from which queries search a snapshot
+	private static final int LARGE = 1 << 14;
+
+	private SocialNetwork sn;
+	private int capacity;
+	private Policy policy;
+
+	// snapshot of a large graph, valid while the graph has its version
+	private Bfs bfs;
+	private long snapshotVersion;
+
+	// cached results, in access order for LRU
+	private LinkedHashMap<Key, Entry> entries;
+
+	// keys grouped by number of uses, only used for LFU
+	private Map<Integer, LinkedHashSet<Key>> uses;
+	private int minUses;
+
+	// metrics
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Construct a query cache
+	 *
+	 * @param sn       - social network
+	 * @param capacity - maximum number of results kept
+	 * @param policy   - eviction policy
+	 */
+	public QueryCache(SocialNetwork sn, int capacity, Policy policy) {
+		super();
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.sn = sn;
+		this.capacity = capacity;
+		this.policy = policy;
+		entries = new LinkedHashMap<Key, Entry>(capacity * 2, 0.75f,
+				policy == Policy.LRU);
+		uses = new HashMap<Integer, LinkedHashSet<Key>>();
+	}
+
+	/**
+	 * Find the mutual adjacent vertices of two given vertices
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @return an unmodifiable collection of mutual adjacent vertices
+	 */
+	public Set<String> mutual(String str1, String str2) {
+		if (str1 == null || str2 == null)
+			return sn.mutual(str1, str2);
+
+		// mutual friends are symmetric
+		Key key = str1.compareTo(str2) <= 0 ? new Key('m', str1, str2)
+				: new Key('m', str2, str1);
+		long v1 = sn.version(key.a);
+		long v2 = sn.version(key.b);
+		Set<String> mutual = lookup(key, v1, v2);
+		if (mutual == null) {
+			mutual = Collections.unmodifiableSet(sn.mutual(str1, str2));
+			store(key, v1, v2, mutual);
+		}
+		return mutual;
+	}
+
+	/**
+	 * Find the shortest path between two given vertices
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @return an unmodifiable shortest path between two vertices, empty if
+	 *         not connected or either vertex is not in graph
+	 */
+	public List<String> connection(String str1, String str2) {
+		// the network would find a missing person connected to itself
+		if (str1 == null || str2 == null || sn.version(str1) == -1
+				|| sn.version(str2) == -1)
+			return Collections.emptyList();
+		Key key = new Key('c', str1, str2);
+		long version = sn.version();
+		List<String> connection = lookup(key, version, 0);
+		if (connection == null) {
+			Bfs bfs = search(version);
+			connection = Collections.unmodifiableList(bfs == null
+					? sn.connection(str1, str2) : bfs.connection(str1, str2));
+			store(key, version, 0, connection);
+		}
+		return connection;
+	}
+
+	/**
+	 * Find the vertices within a number of hops of a vertex
+	 *
+	 * @param str - vertex name
+	 * @param k   - maximum number of hops
+	 * @return an unmodifiable set of the vertices at distance at most k, the
+	 *         vertex included, empty if the vertex is not in graph
+	 */
+	public Set<String> within(String str, int k) {
+		Key key = new Key('w', str, Integer.toString(k));
+		long version = sn.version();
+		Set<String> within = lookup(key, version, 0);
+		if (within == null) {
+			within = Collections.unmodifiableSet(withinOf(str, k, version));
+			store(key, version, 0, within);
+		}
+		return within;
+	}
+
+	/**
+	 * Find the number of connected components
+	 *
+	 * @return the number of connected components
+	 */
+	public int components() {
+		Key key = new Key('k', null, null);
+		long version = sn.version();
+		Integer components = lookup(key, version, 0);
+		if (components == null) {
+			Bfs bfs = search(version);
+			components = bfs == null ? sn.components() : Bfs.count(bfs.graph());
+			store(key, version, 0, components);
+		}
+		return components;
+	}
+
+	/**
+	 * Return number of lookups answered from the cache
+	 *
+	 * @return number of hits
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Return number of lookups that had to be computed
+	 *
+	 * @return number of misses
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Return number of results dropped to make room
+	 *
+	 * @return number of evictions
+	 */
+	public long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Return the fraction of lookups answered from the cache
+	 *
+	 * @return hit rate, 0 if nothing was looked up
+	 */
+	public double hitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * Return number of results kept
+	 *
+	 * @return number of results
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Drop all results and reset the metrics
+	 */
+	public void clear() {
+		entries.clear();
+		uses.clear();
+		hits = misses = evictions = 0;
+	}
+
+	/**
+	 * Find the search over a snapshot of the current graph, taking the
+	 * snapshot if the graph changed
+	 *
+	 * @param version - current version stamp of the graph
+	 * @return search, or null if the graph is too small to need one
+	 */
+	private Bfs search(long version) {
+		if (sn.order() < LARGE) {
+			bfs = null; // release the old snapshot
+			return null;
+		}
+		if (bfs == null || snapshotVersion != version) {
+			bfs = new Bfs(sn.snapshot());
+			snapshotVersion = version;
+		}
+		return bfs;
+	}
+
+	/**
+	 * Compute the vertices within a number of hops of a vertex
+	 *
+	 * @param str     - vertex name
+	 * @param k       - maximum number of hops
+	 * @param version - current version stamp of the graph
+	 * @return vertex names
+	 */
+	private Set<String> withinOf(String str, int k, long version) {
+		Set<String> within = new HashSet<String>();
+		if (str == null || sn.version(str) == -1)
+			return within;
+		Bfs bfs = search(version);
+		if (bfs != null) {
+			CsrGraph g = bfs.graph();
+			for (int v : bfs.within(g.id(str), k))
+				within.add(g.name(v));
+			return within;
+		}
+		// level by level through the network
+		List<String> frontier = new ArrayList<String>();
+		within.add(str);
+		frontier.add(str);
+		for (int depth = 0; depth < k && !frontier.isEmpty(); depth++) {
+			List<String> next = new ArrayList<String>();
+			for (String v : frontier)
+				sn.forEachNeighbor(v, u -> {
+					if (within.add(u))
+						next.add(u);
+				});
+			frontier = next;
+		}
+		return within;
+	}
+
+	/**
+	 * Find a valid result
+	 *
+	 * @param key - query
+	 * @param v1  - current first version stamp
+	 * @param v2  - current second version stamp
+	 * @return result or null if absent or stale
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T lookup(Key key, long v1, long v2) {
+		Entry e = entries.get(key);
+		if (e != null && (e.v1 != v1 || e.v2 != v2)) { // stale
+			remove(key, e);
+			e = null;
+		}
+		if (e == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		if (policy == Policy.LFU) { // move to the next use count
+			LinkedHashSet<Key> keys = uses.get(e.uses);
+			keys.remove(key);
+			if (keys.isEmpty()) {
+				uses.remove(e.uses);
+				if (minUses == e.uses)
+					minUses++;
+			}
+			e.uses++;
+			uses.computeIfAbsent(e.uses, k -> new LinkedHashSet<Key>()).add(key);
+		}
+		return (T) e.value;
+	}
+
+	/**
+	 * Store a result, evicting another one if full
+	 *
+	 * @param key   - query
+	 * @param v1    - first version stamp
+	 * @param v2    - second version stamp
+	 * @param value - result
+	 */
+	private void store(Key key, long v1, long v2, Object value) {
+		if (entries.size() >= capacity) {
+			Key victim;
+			if (policy == Policy.LRU) {
+				victim = entries.keySet().iterator().next();
+			} else {
+				// stale removals may have emptied the smallest use count
+				while (!uses.containsKey(minUses))
+					minUses++;
+				victim = uses.get(minUses).iterator().next();
+			}
+			remove(victim, entries.get(victim));
+			evictions++;
+		}
+		entries.put(key, new Entry(v1, v2, value));
+		if (policy == Policy.LFU) {
+			uses.computeIfAbsent(1, k -> new LinkedHashSet<Key>()).add(key);
+			minUses = 1;
+		}
+	}
+
+	/**
+	 * Remove a result
+	 *
+	 * @param key - query
+	 * @param e   - result
+	 */
+	private void remove(Key key, Entry e) {
+		entries.remove(key);
+		if (policy == Policy.LFU) {
+			LinkedHashSet<Key> keys = uses.get(e.uses);
+			keys.remove(key);
+			if (keys.isEmpty())
+				uses.remove(e.uses);
+		}
+	}
+
+	/**
+	 * Query with its arguments
+	 */
+	private static class Key {
+		char op;
+		String a;
+		String b;
+
+		/**
+		 * Construct a query
+		 *
+		 * @param op - query type
+		 * @param a  - first argument
+		 * @param b  - second argument
+		 */
+		Key(char op, String a, String b) {
+			this.op = op;
+			this.a = a;
+			this.b = b;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return op == k.op && Objects.equals(a, k.a)
+					&& Objects.equals(b, k.b);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(op, a, b);
+		}
+	}
+
+	/**
+	 * Cached result with the version stamps it was computed at
+	 */
+	private static class Entry {
+		long v1;
+		long v2;
+		Object value;
+		int uses;
+
+		/**
+		 * Construct a result
+		 *
+		 * @param v1    - first version stamp
+		 * @param v2    - second version stamp
+		 * @param value - result
+		 */
+		Entry(long v1, long v2, Object value) {
+			this.v1 = v1;
+			this.v2 = v2;
+			this.value = value;
+			uses = 1;
+		}
+	}
+}
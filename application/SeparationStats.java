@@ -0,0 +1,252 @@
+package application;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Degrees of separation statistics computed by multi-source breadth-first
+ * search. Up to 64 sources are searched at once: every vertex keeps one bit
+ * per source in a long, so a level of all 64 searches costs one pass over
+ * the edges. Each level is split across cores.
+ *
+ * @author Zhaoyi
+ */
+public class SeparationStats {
+	private static final int WORD = 64; // sources per batch
+
+	private CsrGraph g;
+	private boolean exact;
+	private int sources;
+
+	// histogram[d] is the number of (source, vertex) pairs at distance d
+	private long[] histogram;
+
+	// largest distance from each vertex to any source reaching it
+	private int[] eccentricity;
+
+	/**
+	 * Construct empty statistics
+	 *
+	 * @param g     - graph
+	 * @param exact - true if every vertex is a source
+	 */
+	private SeparationStats(CsrGraph g, boolean exact) {
+		super();
+		this.g = g;
+		this.exact = exact;
+		histogram = new long[1];
+		eccentricity = new int[g.order()];
+	}
+
+	/**
+	 * Compute exact statistics using every vertex as a source
+	 *
+	 * @param g - graph
+	 * @return statistics
+	 */
+	public static SeparationStats exact(CsrGraph g) {
+		SeparationStats stats = new SeparationStats(g, true);
+		int[] all = new int[g.order()];
+		for (int i = 0; i < all.length; i++)
+			all[i] = i;
+		stats.search(all);
+		return stats;
+	}
+
+	/**
+	 * Estimate statistics from randomly chosen sources
+	 *
+	 * @param g       - graph
+	 * @param samples - number of sources
+	 * @param seed    - random seed
+	 * @return statistics
+	 */
+	public static SeparationStats sampled(CsrGraph g, int samples,
+			long seed) {
+		int n = g.order();
+		if (samples >= n)
+			return exact(g);
+
+		// partial Fisher-Yates shuffle picks distinct sources
+		int[] ids = new int[n];
+		for (int i = 0; i < n; i++)
+			ids[i] = i;
+		Random random = new Random(seed);
+		for (int i = 0; i < samples; i++) {
+			int j = i + random.nextInt(n - i);
+			int t = ids[i];
+			ids[i] = ids[j];
+			ids[j] = t;
+		}
+		SeparationStats stats = new SeparationStats(g, false);
+		stats.search(Arrays.copyOf(ids, samples));
+		return stats;
+	}
+
+	/**
+	 * Search from all given sources, one batch of 64 at a time
+	 *
+	 * @param src - sources
+	 */
+	private void search(int[] src) {
+		int n = g.order();
+		sources = src.length;
+		long[] seen = new long[n];
+		long[] frontier = new long[n];
+		long[] next = new long[n];
+		for (int b = 0; b < src.length; b += WORD) {
+			Arrays.fill(seen, 0);
+			Arrays.fill(frontier, 0);
+			for (int i = b; i < Math.min(b + WORD, src.length); i++) {
+				seen[src[i]] |= 1L << (i - b);
+				frontier[src[i]] |= 1L << (i - b);
+			}
+			for (int d = 1;; d++) {
+				long[] f = frontier;
+				long[] out = next;
+				int level = d;
+				// pull: a vertex is reached by every search reaching a neighbour
+				long reached = IntStream.range(0, n).parallel().mapToLong(v -> {
+					long bits = 0;
+					for (int k = g.offsets[v]; k < g.offsets[v + 1]; k++)
+						bits |= f[g.targets[k]];
+					bits &= ~seen[v];
+					out[v] = bits;
+					if (bits != 0 && eccentricity[v] < level)
+						eccentricity[v] = level;
+					return Long.bitCount(bits);
+				}).sum();
+				if (reached == 0)
+					break;
+				count(d, reached);
+				for (int v = 0; v < n; v++)
+					seen[v] |= next[v];
+				long[] t = frontier;
+				frontier = next;
+				next = t;
+			}
+		}
+	}
+
+	/**
+	 * Add pairs to the histogram
+	 *
+	 * @param d     - distance
+	 * @param pairs - number of pairs at that distance
+	 */
+	private void count(int d, long pairs) {
+		if (d >= histogram.length)
+			histogram = Arrays.copyOf(histogram, Math.max(d + 1,
+					histogram.length * 2));
+		histogram[d] += pairs;
+	}
+
+	/**
+	 * Check if every vertex was used as a source
+	 *
+	 * @return true if the statistics are exact
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * Return number of sources searched
+	 *
+	 * @return number of sources
+	 */
+	public int sources() {
+		return sources;
+	}
+
+	/**
+	 * Return number of connected (source, vertex) pairs at each distance
+	 *
+	 * @return histogram indexed by distance, index 0 is unused
+	 */
+	public long[] histogram() {
+		return Arrays.copyOf(histogram, diameter() + 1);
+	}
+
+	/**
+	 * Return the average distance between connected pairs
+	 *
+	 * @return average degrees of separation, 0 if no pair is connected
+	 */
+	public double averageDistance() {
+		long pairs = 0;
+		double sum = 0;
+		for (int d = 1; d < histogram.length; d++) {
+			pairs += histogram[d];
+			sum += (double) d * histogram[d];
+		}
+		return pairs == 0 ? 0 : sum / pairs;
+	}
+
+	/**
+	 * Return the largest distance between connected pairs; a lower bound
+	 * unless exact
+	 *
+	 * @return diameter
+	 */
+	public int diameter() {
+		int d = histogram.length - 1;
+		while (d > 0 && histogram[d] == 0)
+			d--;
+		return d;
+	}
+
+	/**
+	 * Return the distance within which 90% of the connected pairs lie,
+	 * interpolated between whole distances
+	 *
+	 * @return effective diameter
+	 */
+	public double effectiveDiameter() {
+		return percentile(0.9);
+	}
+
+	/**
+	 * Return the distance within which a fraction of the connected pairs
+	 * lie, interpolated between whole distances
+	 *
+	 * @param fraction - fraction of pairs, between 0 and 1
+	 * @return distance
+	 */
+	public double percentile(double fraction) {
+		long pairs = 0;
+		for (long count : histogram)
+			pairs += count;
+		double target = fraction * pairs;
+		long within = 0;
+		for (int d = 1; d < histogram.length; d++) {
+			if (histogram[d] > 0 && within + histogram[d] >= target)
+				return d - 1 + (target - within) / histogram[d];
+			within += histogram[d];
+		}
+		return 0;
+	}
+
+	/**
+	 * Return the largest distance from a vertex to any source reaching it;
+	 * the eccentricity if exact, otherwise a lower bound
+	 *
+	 * @param v - vertex id
+	 * @return eccentricity
+	 */
+	public int eccentricity(int v) {
+		return eccentricity[v];
+	}
+
+	/**
+	 * Return the eccentricity of a vertex
+	 *
+	 * @param str - vertex name
+	 * @return eccentricity or -1 if the vertex is not in graph
+	 */
+	public int eccentricity(String str) {
+		int v = g.id(str);
+		return v == -1 ? -1 : eccentricity[v];
+	}
+}
@@ -0,0 +1,547 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Graph whose vertices are hash-partitioned across shards. Every shard is
+ * owned by one worker thread that serves messages from its inbox, so the
+ * adjacency of a shard is never touched by any other thread. Traversals run
+ * as bulk-synchronous supersteps: each shard expands its part of the frontier
+ * and the messages for the next superstep are routed to their owners.
+ *
+ * @author Zhaoyi
+ */
+public class ShardedGraph implements Graph {
+	private Shard[] shards;
+
+	// number of edges
+	private AtomicInteger size;
+
+	/**
+	 * Construct a sharded graph with one shard per available processor
+	 */
+	public ShardedGraph() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Construct a sharded graph
+	 *
+	 * @param n - number of shards
+	 */
+	public ShardedGraph(int n) {
+		super();
+		if (n < 1)
+			throw new IllegalArgumentException("At least one shard is needed");
+		shards = new Shard[n];
+		for (int i = 0; i < n; i++)
+			shards[i] = new Shard(i);
+		size = new AtomicInteger();
+	}
+
+	/**
+	 * Add vertex
+	 *
+	 * @param str - vertex name
+	 * @return true if the vertex was not in graph
+	 */
+	@Override
+	public boolean addVertex(String str) {
+		if (str == null)
+			return false;
+		Shard s = owner(str);
+		return await(s.send(() -> s.create(str)));
+	}
+
+	/**
+	 * Remove vertex. Its edges are removed one by one through their pairs'
+	 * owners, racing edge updates included, and the vertex goes once it has
+	 * no edge left.
+	 *
+	 * @param str - vertex name
+	 * @return true if the vertex was in graph
+	 */
+	@Override
+	public boolean removeVertex(String str) {
+		if (str == null)
+			return false;
+		Shard s = owner(str);
+		List<String> friends = await(s.send(() -> s.detach(str)));
+		if (friends == null)
+			return false;
+		while (!friends.isEmpty()) {
+			List<Future<Future<Boolean>>> acks = new ArrayList<Future<Future<Boolean>>>();
+			for (String friend : friends)
+				acks.add(pair(str, friend, false));
+			for (Future<Future<Boolean>> ack : acks)
+				await(await(ack));
+			friends = await(s.send(() -> s.detach(str)));
+			if (friends == null) // removed by a racing caller
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Add edge
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @return true if the edge was not in graph
+	 */
+	@Override
+	public boolean addEdge(String str1, String str2) {
+		if (str1 == null || str2 == null || str1.equals(str2))
+			return false;
+		return await(await(pair(str1, str2, true)));
+	}
+
+	/**
+	 * Remove edge
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @return true if the edge was in graph
+	 */
+	@Override
+	public boolean removeEdge(String str1, String str2) {
+		if (str1 == null || str2 == null)
+			return false;
+		return await(await(pair(str1, str2, false)));
+	}
+
+	/**
+	 * Clear the graph
+	 */
+	@Override
+	public void clear() {
+		List<Future<Boolean>> acks = new ArrayList<Future<Boolean>>();
+		for (Shard s : shards)
+			acks.add(s.send(() -> {
+				s.adjacency.clear();
+				return true;
+			}));
+		for (Future<Boolean> ack : acks)
+			await(ack);
+		size.set(0);
+	}
+
+	/**
+	 * Return all vertices
+	 *
+	 * @return a snapshot of all vertices names
+	 */
+	@Override
+	public Set<String> getAllVertices() {
+		List<Future<List<String>>> parts = new ArrayList<Future<List<String>>>();
+		for (Shard s : shards)
+			parts.add(s.send(() -> new ArrayList<String>(s.adjacency.keySet())));
+		Set<String> all = new HashSet<String>();
+		for (Future<List<String>> part : parts)
+			all.addAll(await(part));
+		return all;
+	}
+
+	/**
+	 * Return adjacent vertices of a given vertex
+	 *
+	 * @param str - vertex name
+	 * @return a snapshot of adjacent vertices of a given vertex
+	 */
+	@Override
+	public Set<String> getAdjacent(String str) {
+		if (str == null)
+			return Collections.emptySet();
+		Shard s = owner(str);
+		return await(s.send(() -> {
+			Set<String> friends = s.adjacency.get(str);
+			return friends == null ? Collections.<String>emptySet()
+					: new HashSet<String>(friends);
+		}));
+	}
+
+	/**
+	 * Return number of edges
+	 *
+	 * @return number of edges
+	 */
+	@Override
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * Return number of vertices
+	 *
+	 * @return number of vertices
+	 */
+	@Override
+	public int order() {
+		List<Future<Integer>> parts = new ArrayList<Future<Integer>>();
+		for (Shard s : shards)
+			parts.add(s.send(() -> s.adjacency.size()));
+		int order = 0;
+		for (Future<Integer> part : parts)
+			order += await(part);
+		return order;
+	}
+
+	/**
+	 * Find the number of connected components. Every vertex starts with its
+	 * own name as label and repeatedly adopts the smallest label among its
+	 * neighbours; only changed vertices send messages in the next superstep.
+	 *
+	 * @return the number of connected components
+	 */
+	public int components() {
+		// per-shard labels, only touched by the owning worker
+		List<Map<String, String>> labels = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < shards.length; i++)
+			labels.add(new HashMap<String, String>());
+
+		// superstep 0: every vertex labels itself and tells its neighbours
+		List<Future<List<List<String[]>>>> steps = new ArrayList<Future<List<List<String[]>>>>();
+		for (Shard s : shards) {
+			Map<String, String> label = labels.get(s.index);
+			steps.add(s.send(() -> {
+				List<List<String[]>> out = outbox();
+				for (Map.Entry<String, Set<String>> e : s.adjacency.entrySet()) {
+					label.put(e.getKey(), e.getKey());
+					for (String neighbour : e.getValue())
+						out.get(shardOf(neighbour))
+								.add(new String[] { neighbour, e.getKey() });
+				}
+				return out;
+			}));
+		}
+
+		List<List<String[]>> inbox = collect(steps);
+		while (!isEmpty(inbox)) {
+			steps.clear();
+			for (Shard s : shards) {
+				Map<String, String> label = labels.get(s.index);
+				List<String[]> messages = inbox.get(s.index);
+				steps.add(s.send(() -> {
+					// adopt the smallest label received
+					Map<String, String> changed = new HashMap<String, String>();
+					for (String[] msg : messages) {
+						String current = label.get(msg[0]);
+						// added after superstep 0, or removed since
+						if (current == null || !s.adjacency.containsKey(msg[0]))
+							continue;
+						if (msg[1].compareTo(current) < 0) {
+							label.put(msg[0], msg[1]);
+							changed.put(msg[0], msg[1]);
+						}
+					}
+					List<List<String[]>> out = outbox();
+					for (Map.Entry<String, String> e : changed.entrySet())
+						for (String neighbour : s.adjacency.get(e.getKey()))
+							out.get(shardOf(neighbour))
+									.add(new String[] { neighbour, e.getValue() });
+					return out;
+				}));
+			}
+			inbox = collect(steps);
+		}
+
+		// one root per component keeps its own name
+		int components = 0;
+		for (Map<String, String> label : labels)
+			for (Map.Entry<String, String> e : label.entrySet())
+				if (e.getKey().equals(e.getValue()))
+					components++;
+		return components;
+	}
+
+	/**
+	 * Find the shortest path between two given vertices. The breadth-first
+	 * search advances one level per superstep; every shard records the
+	 * predecessors of the vertices it owns.
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @return a shortest path between two vertices
+	 */
+	public List<String> connection(String str1, String str2) {
+		LinkedList<String> connection = new LinkedList<String>();
+		if (str1 == null || str2 == null)
+			return connection;
+
+		// per-shard predecessors, only touched by the owning worker
+		List<Map<String, String>> preds = new ArrayList<Map<String, String>>();
+		for (int i = 0; i < shards.length; i++)
+			preds.add(new HashMap<String, String>());
+
+		List<List<String[]>> inbox = outbox();
+		inbox.get(shardOf(str1)).add(new String[] { str1, null });
+		List<Future<List<List<String[]>>>> steps = new ArrayList<Future<List<List<String[]>>>>();
+		boolean found = false;
+		while (!found && !isEmpty(inbox)) {
+			steps.clear();
+			for (Shard s : shards) {
+				Map<String, String> pred = preds.get(s.index);
+				List<String[]> messages = inbox.get(s.index);
+				steps.add(s.send(() -> {
+					List<List<String[]>> out = outbox();
+					for (String[] msg : messages) {
+						Set<String> friends = s.adjacency.get(msg[0]);
+						if (friends == null || pred.containsKey(msg[0]))
+							continue;
+						pred.put(msg[0], msg[1]); // mark visited
+						for (String succ : friends)
+							out.get(shardOf(succ))
+									.add(new String[] { succ, msg[0] });
+					}
+					return out;
+				}));
+			}
+			inbox = collect(steps);
+			found = await(owner(str2).send(
+					() -> preds.get(shardOf(str2)).containsKey(str2)));
+		}
+
+		// follow the predecessors back to the source
+		for (String vtx = found ? str2 : null; vtx != null;) {
+			connection.add(0, vtx);
+			String v = vtx;
+			Shard s = owner(v);
+			vtx = await(s.send(() -> preds.get(s.index).get(v)));
+		}
+		return connection;
+	}
+
+	/**
+	 * Stop all worker threads; the graph cannot be used afterwards
+	 */
+	public void shutdown() {
+		for (Shard s : shards)
+			s.worker.interrupt();
+	}
+
+	/**
+	 * Add or remove both directions of an edge. Every update of a pair goes
+	 * to the owner of its smaller name, which changes its direction and
+	 * forwards the other direction to the owner of the larger name; updates
+	 * of a pair thus reach both owners in the same order. The owner of the
+	 * smaller name decides the result and keeps the number of edges.
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @param link - true to add, false to remove
+	 * @return pending forward to the owner of the larger name, whose result
+	 *         is true if the edge changed
+	 */
+	private Future<Future<Boolean>> pair(String str1, String str2,
+			boolean link) {
+		String a = str1.compareTo(str2) < 0 ? str1 : str2;
+		String b = a == str1 ? str2 : str1;
+		Shard sa = owner(a), sb = owner(b);
+		return sa.send(() -> {
+			boolean changed = link ? sa.link(a, b) : sa.unlink(a, b);
+			if (changed)
+				size.addAndGet(link ? 1 : -1);
+			return sb.send(() -> {
+				if (link)
+					sb.link(b, a);
+				else
+					sb.unlink(b, a);
+				return changed;
+			});
+		});
+	}
+
+	/**
+	 * Find the index of the shard owning a vertex
+	 *
+	 * @param str - vertex name
+	 * @return shard index
+	 */
+	private int shardOf(String str) {
+		return Math.floorMod(str.hashCode(), shards.length);
+	}
+
+	/**
+	 * Find the shard owning a vertex
+	 *
+	 * @param str - vertex name
+	 * @return shard
+	 */
+	private Shard owner(String str) {
+		return shards[shardOf(str)];
+	}
+
+	/**
+	 * Create empty message lists, one per destination shard
+	 *
+	 * @return empty outbox
+	 */
+	private List<List<String[]>> outbox() {
+		List<List<String[]>> out = new ArrayList<List<String[]>>();
+		for (int i = 0; i < shards.length; i++)
+			out.add(new ArrayList<String[]>());
+		return out;
+	}
+
+	/**
+	 * Wait for a superstep to finish and route its messages to their
+	 * destination shards
+	 *
+	 * @param steps - outboxes of every shard
+	 * @return inbox of every shard for the next superstep
+	 */
+	private List<List<String[]>> collect(
+			List<Future<List<List<String[]>>>> steps) {
+		List<List<String[]>> inbox = outbox();
+		for (Future<List<List<String[]>>> step : steps) {
+			List<List<String[]>> out = await(step);
+			for (int i = 0; i < shards.length; i++)
+				inbox.get(i).addAll(out.get(i));
+		}
+		return inbox;
+	}
+
+	/**
+	 * Check if no shard has pending messages
+	 *
+	 * @param inbox - inbox of every shard
+	 * @return true if there is no message
+	 */
+	private static boolean isEmpty(List<List<String[]>> inbox) {
+		for (List<String[]> messages : inbox)
+			if (!messages.isEmpty())
+				return false;
+		return true;
+	}
+
+	/**
+	 * Wait for a reply from a shard
+	 *
+	 * @param reply - pending reply
+	 * @return the reply
+	 */
+	private static <T> T await(Future<T> reply) {
+		try {
+			return reply.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Partition of the graph owned by a single worker thread
+	 */
+	private static class Shard implements Runnable {
+		int index;
+		Map<String, Set<String>> adjacency;
+		BlockingQueue<Runnable> inbox;
+		Thread worker;
+
+		/**
+		 * Construct a shard and start its worker
+		 *
+		 * @param index - shard index
+		 */
+		Shard(int index) {
+			this.index = index;
+			adjacency = new HashMap<String, Set<String>>();
+			inbox = new LinkedBlockingQueue<Runnable>();
+			worker = new Thread(this, "shard-" + index);
+			worker.setDaemon(true);
+			worker.start();
+		}
+
+		/**
+		 * Serve messages until interrupted
+		 */
+		@Override
+		public void run() {
+			try {
+				while (true)
+					inbox.take().run();
+			} catch (InterruptedException e) {
+				// shut down
+			}
+		}
+
+		/**
+		 * Post a message to the inbox
+		 *
+		 * @param msg - work to run on the worker thread
+		 * @return pending reply
+		 */
+		<T> Future<T> send(Callable<T> msg) {
+			FutureTask<T> task = new FutureTask<T>(msg);
+			inbox.add(task);
+			return task;
+		}
+
+		/**
+		 * Create a vertex owned by this shard
+		 *
+		 * @param str - vertex name
+		 * @return true if the vertex was not in the shard
+		 */
+		boolean create(String str) {
+			return adjacency.putIfAbsent(str, new HashSet<String>()) == null;
+		}
+
+		/**
+		 * Remove a vertex owned by this shard if it has no edge
+		 *
+		 * @param str - vertex name
+		 * @return its friends if it still has some, empty if it was removed,
+		 *         null if it was not in the shard
+		 */
+		List<String> detach(String str) {
+			Set<String> friends = adjacency.get(str);
+			if (friends == null)
+				return null;
+			if (!friends.isEmpty())
+				return new ArrayList<String>(friends);
+			adjacency.remove(str);
+			return Collections.emptyList();
+		}
+
+		/**
+		 * Add one direction of an edge, creating the vertex if needed
+		 *
+		 * @param str    - vertex owned by this shard
+		 * @param friend - other end of the edge
+		 * @return true if this direction was not in graph
+		 */
+		boolean link(String str, String friend) {
+			return adjacency.computeIfAbsent(str, k -> new HashSet<String>())
+					.add(friend);
+		}
+
+		/**
+		 * Remove one direction of an edge
+		 *
+		 * @param str    - vertex owned by this shard
+		 * @param friend - other end of the edge
+		 * @return true if this direction was in graph
+		 */
+		boolean unlink(String str, String friend) {
+			Set<String> friends = adjacency.get(str);
+			return friends != null && friends.remove(friend);
+		}
+	}
+}
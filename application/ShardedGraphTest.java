@@ -0,0 +1,171 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ShardedGraphTest {
+	private ShardedGraph g;
+	private String[] people = { "A", "B", "C", "D", "E", "F", "G", "H" };
+
+	private void addAll() {
+		for (String str : people)
+			g.addVertex(str);
+	}
+
+	@BeforeEach
+	public void setup() {
+		g = new ShardedGraph(3);
+	}
+
+	@AfterEach
+	public void clean() {
+		g.shutdown();
+		g = null;
+	}
+
+	@Test
+	public void test01_add_remove_people_size() {
+		addAll();
+		addAll();
+		assertEquals(people.length, g.order());
+		for (int i = 0; i < people.length; i += 2)
+			g.removeVertex(people[i]);
+		g.removeVertex("does_not_exist");
+		assertEquals(people.length / 2, g.order());
+	}
+
+	@Test
+	public void test02_add_remove_complete_relation_size() {
+		addAll();
+		for (int i = 0; i < people.length; i++)
+			for (int j = i + 1; j < people.length; j++) {
+				g.addEdge(people[i], people[j]);
+				g.addEdge(people[j], people[i]);
+			}
+		assertEquals(people.length * (people.length - 1) / 2, g.size());
+		g.removeVertex(people[0]);
+		assertEquals((people.length - 1) * (people.length - 2) / 2, g.size());
+		g.removeEdge(people[1], people[2]);
+		g.removeEdge(people[1], people[2]);
+		assertEquals((people.length - 1) * (people.length - 2) / 2 - 1,
+				g.size());
+		assertEquals(new HashSet<String>(Set.of("D", "E", "F", "G", "H")),
+				g.getAdjacent("C"));
+	}
+
+	@Test
+	public void test03_components() {
+		addAll();
+		assertEquals(people.length, g.components());
+		g.addEdge(people[0], people[1]);
+		g.addEdge(people[1], people[2]);
+		g.addEdge(people[4], people[5]);
+		assertEquals(people.length - 3, g.components());
+		g.addEdge(people[1], people[4]);
+		assertEquals(people.length - 4, g.components());
+		g.removeVertex(people[1]);
+		assertEquals(people.length - 2, g.components());
+	}
+
+	@Test
+	public void test04_connection() {
+		addAll();
+		g.addEdge(people[0], people[1]);
+		g.addEdge(people[0], people[4]);
+		g.addEdge(people[0], people[6]);
+		g.addEdge(people[1], people[2]);
+		g.addEdge(people[2], people[3]);
+		g.addEdge(people[2], people[5]);
+		g.addEdge(people[3], people[4]);
+		g.addEdge(people[6], people[5]);
+		g.addEdge(people[6], people[7]);
+		assertEquals(Arrays.asList(new String[] { "A", "E" }),
+				g.connection(people[0], people[4]));
+		assertEquals(Arrays.asList(new String[] { "A", "G", "F" }),
+				g.connection(people[0], people[5]));
+		assertEquals(Arrays.asList(new String[] { "G", "F", "C" }),
+				g.connection(people[6], people[2]));
+		g.removeEdge(people[6], people[5]);
+		assertEquals(4, g.connection(people[6], people[2]).size());
+		g.addVertex("lonely");
+		assertEquals(0, g.connection(people[0], "lonely").size());
+	}
+
+	@Test
+	public void test05_concurrent_updates() throws Exception {
+		ShardedGraph sharded = new ShardedGraph(4);
+		ExecutorService pool = Executors.newFixedThreadPool(5);
+		try {
+			for (int round = 0; round < 200; round++) {
+				CountDownLatch start = new CountDownLatch(1);
+				List<Future<?>> done = new ArrayList<Future<?>>();
+				for (int t = 0; t < 4; t++) {
+					Random random = new Random(round * 4 + t);
+					done.add(pool.submit(() -> {
+						start.await();
+						for (int i = 0; i < 200; i++) {
+							String a = people[random.nextInt(4)];
+							String b = people[random.nextInt(4)];
+							switch (random.nextInt(5)) {
+								case 0:
+									sharded.removeVertex(a);
+									break;
+								case 1:
+								case 2:
+									sharded.addEdge(a, b);
+									break;
+								default:
+									sharded.removeEdge(b, a);
+							}
+						}
+						return null;
+					}));
+				}
+				// traversals see the graph change between supersteps
+				done.add(pool.submit(() -> {
+					start.await();
+					for (int i = 0; i < 20; i++) {
+						int components = sharded.components();
+						assertEquals(true, components >= 0 && components <= 4,
+								"components " + components);
+						List<String> path = sharded.connection(people[0],
+								people[1]);
+						assertEquals(true, path.isEmpty()
+								|| path.get(0).equals(people[0]));
+					}
+					return null;
+				}));
+				start.countDown();
+				for (Future<?> f : done)
+					f.get();
+
+				// every friendship is seen from both sides and counted once
+				int degrees = 0;
+				for (String v : sharded.getAllVertices())
+					for (String u : sharded.getAdjacent(v)) {
+						assertEquals(true, sharded.getAdjacent(u).contains(v),
+								u + " misses " + v);
+						degrees++;
+					}
+				assertEquals(degrees / 2, sharded.size());
+			}
+		} finally {
+			pool.shutdownNow();
+			sharded.shutdown();
+		}
+	}
+}
@@ -1,32 +1,87 @@
 package application;
 
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
- * Social network using a graph
+ * Social network using a graph. Every person also has a small id, reused
+ * after removal, so that the friends of people with many friends can be kept
+ * as bitmaps of ids (see FriendSet).
  *
  * @author Zhaoyi
  */
 public class SocialNetwork implements Graph {
+	/**
+	 * Observer of every change made to a social network
+	 */
+	public interface Listener {
+		/**
+		 * Called after a vertex or an edge was added or removed; removing a
+		 * vertex first reports the removal of each of its edges
+		 *
+		 * @param op   - ADD_VERTEX, REMOVE_VERTEX, ADD_EDGE or REMOVE_EDGE
+		 * @param str1 - vertex name
+		 * @param str2 - other vertex name for edges, otherwise null
+		 */
+		void changed(byte op, String str1, String str2);
+
+		/**
+		 * Called after an operation that reported changes is complete
+		 */
+		void done();
+
+		/**
+		 * Called after the graph was cleared
+		 *
+		 * @param people - people the graph consisted of, no longer used by it
+		 * @param size   - number of edges the graph had
+		 */
+		void cleared(Map<String, Person> people, int size);
+	}
+
+	public static final byte ADD_VERTEX = 0;
+	public static final byte REMOVE_VERTEX = 1;
+	public static final byte ADD_EDGE = 2;
+	public static final byte REMOVE_EDGE = 3;
+
 	// people associated with their names
 	private Map<String, Person> network;
 
+	// people by id, and ids free for reuse
+	private Person[] people;
+	private int[] freeIds;
+	private int freeCount;
+	private int nextId;
+
 	// number of edges
 	private int size;
 
+	// stamp of the latest mutation, never reused
+	private long modCount;
+
+	// observer of changes, may be null
+	private Listener listener;
+
 	/**
 	 * Construct a social network
 	 */
 	public SocialNetwork() {
 		super();
 		network = new HashMap<String, Person>();
+		people = new Person[16];
+		freeIds = new int[16];
 		size = 0;
 	}
 
@@ -41,7 +96,9 @@ public class SocialNetwork implements Graph {
 		Person p = getVertex(str);
 		if (p != null)
 			return false;
-		network.put(str, new Person(str));
+		network.put(str, touch(create(str)));
+		changed(ADD_VERTEX, str, null);
+		done();
 		return true;
 	}
 
@@ -61,11 +118,14 @@ public class SocialNetwork implements Graph {
 
 		// remove related edges
 		size -= p.friends.size();
-		Person person = null;
-		for (String name : network.keySet()) {
-			person = network.get(name);
-			person.friends.remove(str);
-		}
+		p.friends.forEach(people, friend -> {
+			touch(friend).friends.remove(p, people);
+			changed(REMOVE_EDGE, str, friend.name);
+		});
+		release(p);
+		modCount++;
+		changed(REMOVE_VERTEX, str, null);
+		done();
 		return true;
 	}
 
@@ -84,14 +144,22 @@ public class SocialNetwork implements Graph {
 		Person p2 = getVertex(str2);
 
 		// add vertices if them do not exist
-		if (p1 == null)
-			network.put(str1, p1 = new Person(str1));
-		if (p2 == null)
-			network.put(str2, p2 = new Person(str2));
+		if (p1 == null) {
+			network.put(str1, p1 = touch(create(str1)));
+			changed(ADD_VERTEX, str1, null);
+		}
+		if (p2 == null) {
+			network.put(str2, p2 = touch(create(str2)));
+			changed(ADD_VERTEX, str2, null);
+		}
 
 		// add edge
-		if (p1.friends.add(str2) && p2.friends.add(str1)) {
+		if (p1.friends.add(p2) && p2.friends.add(p1)) {
+			touch(p1);
+			touch(p2);
 			size++;
+			changed(ADD_EDGE, str1, str2);
+			done();
 			return true;
 		}
 		return false;
@@ -113,8 +181,12 @@ public class SocialNetwork implements Graph {
 		if (p1 == null || p2 == null)
 			return false;
 
-		if (p1.friends.remove(str2) && p2.friends.remove(str1)) {
+		if (p1.friends.remove(p2, people) && p2.friends.remove(p1, people)) {
+			touch(p1);
+			touch(p2);
 			size--;
+			changed(REMOVE_EDGE, str1, str2);
+			done();
 			return true;
 		}
 		return false;
@@ -125,30 +197,110 @@ public class SocialNetwork implements Graph {
 	 */
 	@Override
 	public void clear() {
-		network.clear();
+		// hand the old people over instead of emptying them, so they can be
+		// restored
+		Map<String, Person> people = network;
+		int edges = size;
+		network = new HashMap<String, Person>();
+		this.people = new Person[16];
+		freeCount = nextId = 0;
 		size = 0;
+		modCount++;
+		if (listener != null)
+			listener.cleared(people, edges);
+	}
+
+	/**
+	 * Replace an empty graph by people reported as cleared
+	 *
+	 * @param people - people
+	 * @param size   - number of edges among them
+	 */
+	void restore(Map<String, Person> people, int size) {
+		if (!network.isEmpty())
+			throw new IllegalStateException("graph is not empty");
+		network = people;
+		this.size = size;
+		modCount++;
+
+		// index the people by their ids again
+		nextId = 0;
+		for (Person p : people.values())
+			nextId = Math.max(nextId, p.id + 1);
+		this.people = new Person[Math.max(16, nextId)];
+		for (Person p : people.values())
+			this.people[p.id] = p;
+		freeCount = 0;
+		for (int id = nextId - 1; id >= 0; id--)
+			if (this.people[id] == null)
+				free(id);
+	}
+
+	/**
+	 * Set the observer of changes
+	 *
+	 * @param listener - observer, null for none
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
 	}
 
 	/**
 	 * Return all vertices
 	 * 
-	 * @return a collection of all vertices names
+	 * @return a read-only view of all vertices names
 	 */
 	@Override
 	public Set<String> getAllVertices() {
-		return network.keySet();
+		return Collections.unmodifiableSet(network.keySet());
 	}
 
 	/**
 	 * Return adjacent vertices of a given vertex
 	 * 
 	 * @param str - vertex name
-	 * @return a collection of adjacent vertices of a given vertex
+	 * @return a read-only view of adjacent vertices of a given vertex
 	 */
 	@Override
 	public Set<String> getAdjacent(String str) {
 		Person p = network.get(str);
-		return p == null ? Collections.emptySet() : p.friends;
+		return p == null ? Collections.emptySet() : new Friends(p);
+	}
+
+	/**
+	 * Visit every vertex; changing the graph meanwhile fails fast
+	 * 
+	 * @param action - action applied to each vertex name
+	 */
+	@Override
+	public void forEachVertex(Consumer<String> action) {
+		network.keySet().forEach(action);
+	}
+
+	/**
+	 * Visit every adjacent vertex of a given vertex; changing the graph
+	 * meanwhile fails fast
+	 * 
+	 * @param str    - vertex name
+	 * @param action - action applied to each adjacent vertex name
+	 */
+	@Override
+	public void forEachNeighbor(String str, Consumer<String> action) {
+		Person p = network.get(str);
+		if (p != null)
+			p.friends.forEach(people, friend -> action.accept(friend.name));
+	}
+
+	/**
+	 * Return number of adjacent vertices of a given vertex
+	 * 
+	 * @param str - vertex name
+	 * @return degree, 0 if the vertex is not in graph
+	 */
+	@Override
+	public int degree(String str) {
+		Person p = network.get(str);
+		return p == null ? 0 : p.friends.size();
 	}
 
 	/**
@@ -171,6 +323,27 @@ public class SocialNetwork implements Graph {
 		return network.size();
 	}
 
+	/**
+	 * Return the stamp of the latest mutation of the graph
+	 * 
+	 * @return version stamp
+	 */
+	public long version() {
+		return modCount;
+	}
+
+	/**
+	 * Return the stamp of the latest change to a vertex's adjacent vertices;
+	 * stamps are never reused, even if the vertex is removed and added again
+	 * 
+	 * @param str - vertex name
+	 * @return version stamp or -1 if the vertex is not in graph
+	 */
+	public long version(String str) {
+		Person p = getVertex(str);
+		return p == null ? -1 : p.version;
+	}
+
 	/**
 	 * Find the number of connected components
 	 * 
@@ -178,28 +351,22 @@ public class SocialNetwork implements Graph {
 	 */
 	public int components() {
 		HashSet<String> visited = new HashSet<String>();
+		ArrayDeque<String> stack = new ArrayDeque<String>();
+		Consumer<String> mark = neighbour -> {
+			if (visited.add(neighbour)) // if unvisited, mark later
+				stack.push(neighbour);
+		};
 		int components = 0;
 		for (String name : network.keySet())
-			if (!visited.contains(name)) { // if unvisited, mark all
-				markAllVisited(name, visited);
+			if (visited.add(name)) { // if unvisited, mark all
+				stack.push(name);
+				while (!stack.isEmpty())
+					forEachNeighbor(stack.pop(), mark);
 				components++;
 			}
 		return components;
 	}
 
-	/**
-	 * Mark all vertices connected to the given vertex as visited
-	 * 
-	 * @param name    - vertex
-	 * @param visited - record of visited vertices
-	 */
-	private void markAllVisited(String name, Set<String> visited) {
-		visited.add(name);
-		for (String neighbour : getAdjacent(name))
-			if (!visited.contains(neighbour)) // if unvisited, mark all
-				markAllVisited(neighbour, visited);
-	}
-
 	/**
 	 * Find the mutual adjacent vertices of two given vertices
 	 * 
@@ -208,10 +375,13 @@ public class SocialNetwork implements Graph {
 	 * @return a collection of mutual adjacent vertices
 	 */
 	public Set<String> mutual(String str1, String str2) {
-		Set<String> s1 = getAdjacent(str1);
-		Set<String> s2 = getAdjacent(str2);
-		s1.retainAll(s2); // intersection
-		return s1;
+		Person p1 = getVertex(str1);
+		Person p2 = getVertex(str2);
+		Set<String> mutual = new HashSet<String>();
+		if (p1 != null && p2 != null)
+			FriendSet.intersect(p1.friends, p2.friends, people,
+					p -> mutual.add(p.name));
+		return mutual;
 	}
 
 	/**
@@ -223,37 +393,107 @@ public class SocialNetwork implements Graph {
 	 */
 	public List<String> connection(String str1, String str2) {
 		LinkedList<String> connection = new LinkedList<String>();
-		HashSet<String> visited = new HashSet<String>();
-		HashMap<String, Integer> dis = new HashMap<String, Integer>();
+		// the first visit of a vertex is along a shortest path
 		HashMap<String, String> pred = new HashMap<String, String>();
-		Queue<String> q = new LinkedList<String>();
+		ArrayDeque<String> q = new ArrayDeque<String>();
+		String[] vtx = { str1 };
+		Consumer<String> visit = succ -> {
+			if (!pred.containsKey(succ)) { // mark visited
+				pred.put(succ, vtx[0]);
+				q.offer(succ);
+			}
+		};
 
 		q.offer(str1);
-		dis.put(str1, 0);
 		pred.put(str1, null);
-		String vtx;
-
-		while (!q.isEmpty()) {
-			vtx = q.poll();
-			visited.add(vtx); // mark visited
-			for (String succ : getAdjacent(vtx)) {
-				if (visited.add(succ)) // mark visited
-					q.offer(succ);
-				int distance = dis.get(vtx) + 1;
-				// shorter distance
-				if (distance < dis.getOrDefault(succ, Integer.MAX_VALUE)) {
-					dis.put(succ, distance);
-					pred.put(succ, vtx);
-				}
-			}
+		while (!q.isEmpty() && !pred.containsKey(str2)) {
+			vtx[0] = q.poll();
+			forEachNeighbor(vtx[0], visit);
 		}
 
-		if (visited.contains(str2)) // in the same connected component
-			for (vtx = str2; vtx != null; vtx = pred.get(vtx))
-				connection.add(0, vtx);
+		if (pred.containsKey(str2)) // in the same connected component
+			for (String v = str2; v != null; v = pred.get(v))
+				connection.addFirst(v);
 		return connection;
 	}
 
+	/**
+	 * Take a snapshot of the graph for traversals, numbering the people
+	 * densely in the order of their ids
+	 * 
+	 * @return snapshot
+	 */
+	public CsrGraph snapshot() {
+		int n = network.size();
+		int[] dense = new int[nextId];
+		NameDictionary names = new NameDictionary(n, n * 8);
+		int[] offsets = new int[n + 1];
+		for (int id = 0, v = 0; id < nextId; id++)
+			if (people[id] != null) {
+				dense[id] = v;
+				names.add(people[id].name);
+				offsets[v + 1] = offsets[v] + people[id].friends.size();
+				v++;
+			}
+		int[] targets = new int[offsets[n]];
+		int[] k = { 0 };
+		Consumer<Person> put = friend -> targets[k[0]++] = dense[friend.id];
+		for (int id = 0, v = 0; id < nextId; id++)
+			if (people[id] != null) {
+				people[id].friends.forEach(people, put);
+				Arrays.sort(targets, offsets[v], offsets[++v]);
+			}
+		return new CsrGraph(names, offsets, targets);
+	}
+
+	/**
+	 * Extract the subgraph induced by some people: the people and every
+	 * friendship between two of them. Only the friends of those people are
+	 * read.
+	 * 
+	 * @param names - vertex names, those not in graph are ignored
+	 * @return subgraph, numbering the people in the order of their ids
+	 */
+	public CsrGraph induced(Collection<String> names) {
+		int[] ids = new int[names.size()];
+		int count = 0;
+		for (String name : names) {
+			Person p = getVertex(name);
+			if (p != null)
+				ids[count++] = p.id;
+		}
+		return induced(Arrays.copyOf(ids, count));
+	}
+
+	/**
+	 * Extract the subgraph induced by the people within a number of hops of
+	 * a person
+	 * 
+	 * @param str - vertex name
+	 * @param k   - maximum number of hops, Integer.MAX_VALUE for the whole
+	 *            connected component
+	 * @return subgraph, empty if the vertex is not in graph
+	 */
+	public CsrGraph neighbourhood(String str, int k) {
+		Person p = getVertex(str);
+		if (p == null)
+			return induced(new int[0]);
+		boolean[] seen = new boolean[nextId];
+		int[] queue = new int[network.size()];
+		int[] tail = { 0 };
+		Consumer<Person> visit = friend -> {
+			if (!seen[friend.id]) {
+				seen[friend.id] = true;
+				queue[tail[0]++] = friend.id;
+			}
+		};
+		visit.accept(p);
+		for (int depth = 0, head = 0; depth < k && head < tail[0]; depth++)
+			for (int end = tail[0]; head < end; head++)
+				people[queue[head]].friends.forEach(people, visit);
+		return induced(Arrays.copyOf(queue, tail[0]));
+	}
+
 	/**
 	 * Find a vertex
 	 * 
@@ -265,4 +505,181 @@ public class SocialNetwork implements Graph {
 			return null;
 		return network.get(str);
 	}
+
+	/**
+	 * Extract the subgraph induced by people
+	 * 
+	 * @param ids - person ids, possibly repeated
+	 * @return subgraph, numbering the people in the order of their ids
+	 */
+	private CsrGraph induced(int[] ids) {
+		Arrays.sort(ids);
+		int n = 0;
+		for (int i = 0; i < ids.length; i++)
+			if (n == 0 || ids[i] != ids[n - 1])
+				ids[n++] = ids[i];
+		int[] map = new int[nextId];
+		Arrays.fill(map, -1);
+		long bound = 0; // friends of all the people
+		for (int i = 0; i < n; i++) {
+			map[ids[i]] = i;
+			bound += people[ids[i]].friends.size();
+		}
+		if (bound > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException("subgraph too large");
+
+		NameDictionary names = new NameDictionary(n, n * 8);
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[(int) bound];
+		int[] k = { 0 };
+		Consumer<Person> put = friend -> {
+			if (map[friend.id] != -1)
+				targets[k[0]++] = map[friend.id];
+		};
+		for (int i = 0; i < n; i++) {
+			names.add(people[ids[i]].name);
+			people[ids[i]].friends.forEach(people, put);
+			offsets[i + 1] = k[0];
+			Arrays.sort(targets, offsets[i], k[0]);
+		}
+		return new CsrGraph(names, offsets, Arrays.copyOf(targets, k[0]));
+	}
+
+	/**
+	 * Create a person with a free id
+	 * 
+	 * @param str - vertex name
+	 * @return person
+	 */
+	private Person create(String str) {
+		int id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+		if (id == people.length)
+			people = Arrays.copyOf(people, 2 * id);
+		return people[id] = new Person(str, id);
+	}
+
+	/**
+	 * Free the id of a removed person
+	 * 
+	 * @param p - person
+	 */
+	private void release(Person p) {
+		people[p.id] = null;
+		free(p.id);
+	}
+
+	/**
+	 * Make an id available for reuse
+	 * 
+	 * @param id - id
+	 */
+	private void free(int id) {
+		if (freeCount == freeIds.length)
+			freeIds = Arrays.copyOf(freeIds, 2 * freeCount);
+		freeIds[freeCount++] = id;
+	}
+
+	/**
+	 * Report a change to the observer
+	 *
+	 * @param op   - kind of change
+	 * @param str1 - vertex name
+	 * @param str2 - other vertex name or null
+	 */
+	private void changed(byte op, String str1, String str2) {
+		if (listener != null)
+			listener.changed(op, str1, str2);
+	}
+
+	/**
+	 * Report the end of an operation to the observer
+	 */
+	private void done() {
+		if (listener != null)
+			listener.done();
+	}
+
+	/**
+	 * Stamp a vertex as changed
+	 * 
+	 * @param p - vertex
+	 * @return the vertex
+	 */
+	private Person touch(Person p) {
+		p.version = ++modCount;
+		return p;
+	}
+
+	/**
+	 * Read-only view of the friends of a person
+	 */
+	private class Friends extends AbstractSet<String> {
+		private Person p;
+
+		/**
+		 * Construct a view
+		 * 
+		 * @param p - person
+		 */
+		Friends(Person p) {
+			this.p = p;
+		}
+
+		@Override
+		public Iterator<String> iterator() {
+			Iterator<Person> friends = p.friends.iterator(people);
+			return new Iterator<String>() {
+				@Override
+				public boolean hasNext() {
+					return friends.hasNext();
+				}
+
+				@Override
+				public String next() {
+					return friends.next().name;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return p.friends.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			Person q = o instanceof String ? network.get(o) : null;
+			return q != null && p.friends.contains(q);
+		}
+
+		@Override
+		public void forEach(Consumer<? super String> action) {
+			p.friends.forEach(people, friend -> action.accept(friend.name));
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean removeAll(Collection<?> c) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean retainAll(Collection<?> c) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean removeIf(Predicate<? super String> filter) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void clear() {
+			throw new UnsupportedOperationException();
+		}
+	}
 }
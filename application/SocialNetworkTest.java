@@ -2,9 +2,21 @@
 package application;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.jupiter.api.AfterEach;
@@ -265,4 +277,275 @@ public class SocialNetworkTest {
 		assertEquals(0, sn.connection(people[2], people[6]).size());
 		assertEquals(0, sn.connection(people[3], people[5]).size());
 	}
+
+	@Test
+	public void test17_version() {
+		addAll();
+		long a = sn.version("A");
+		long b = sn.version("B");
+		long c = sn.version("C");
+		sn.addEdge("A", "B");
+		assertNotEquals(a, sn.version("A"));
+		assertNotEquals(b, sn.version("B"));
+		assertEquals(c, sn.version("C"));
+		a = sn.version("A");
+		sn.removeVertex("B");
+		assertNotEquals(a, sn.version("A"));
+		assertEquals(-1, sn.version("B"));
+		sn.addVertex("B");
+		assertNotEquals(b, sn.version("B"));
+	}
+
+	@Test
+	public void test18_mutual_keeps_friends() {
+		addAll();
+		sn.addEdge("A", "B");
+		sn.addEdge("A", "C");
+		sn.addEdge("D", "B");
+		assertEquals(Set.of("B"), sn.mutual("A", "D"));
+		assertEquals(Set.of("B", "C"), sn.getAdjacent("A"));
+		assertEquals(3, sn.size());
+	}
+
+	@Test
+	public void test19_query_cache() {
+		addAll();
+		QueryCache cache = new QueryCache(sn, 2, QueryCache.Policy.LRU);
+		sn.addEdge("A", "B");
+		sn.addEdge("B", "C");
+		sn.addEdge("D", "C");
+		assertEquals(Set.of("C"), cache.mutual("B", "D"));
+		assertEquals(Set.of("C"), cache.mutual("D", "B"));
+		assertEquals(1, cache.getHits());
+		assertEquals(Arrays.asList("A", "B", "C", "D"),
+				cache.connection("A", "D"));
+
+		// unrelated change keeps mutual friends, invalidates the path
+		sn.addEdge("E", "F");
+		assertEquals(Set.of("C"), cache.mutual("B", "D"));
+		assertEquals(2, cache.getHits());
+		sn.addEdge("A", "D");
+		assertEquals(Arrays.asList("A", "D"), cache.connection("A", "D"));
+		sn.removeEdge("B", "C");
+		assertEquals(Set.of("A"), cache.mutual("B", "D"));
+		assertEquals(people.length - 4, cache.components());
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+
+		// a missing person is connected to nobody, not even itself
+		assertEquals(List.of(), cache.connection("nobody", "nobody"));
+		assertEquals(List.of(), cache.connection("A", "nobody"));
+		assertEquals(List.of("A"), cache.connection("A", "A"));
+	}
+
+	@Test
+	public void test20_parser() throws IOException {
+		File file = File.createTempFile("commands", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), ("a A\r\n\ta  B\tC \n\na A B\nx A\n"
+				+ "a A B C\nr D\na A\nr C").getBytes(StandardCharsets.UTF_8));
+		Parser parser = new Parser(sn, null);
+		assertEquals(false, parser.load(file));
+		assertEquals(Set.of("A", "B"), sn.getAllVertices());
+		assertEquals(Set.of("A"), sn.getAdjacent("B"));
+		assertEquals(Arrays.asList("line 5: unknown command",
+				"line 6: expected a command and one or two names",
+				"line 7: no such person", "line 8: person already exists"),
+				parser.getErrors());
+	}
+
+	@Test
+	public void test21_undo_redo() {
+		History history = new History(sn, 3, 100);
+		List<String> log = new ArrayList<String>();
+		history.begin("build");
+		addAll();
+		sn.addEdge("A", "B");
+		sn.addEdge("A", "C");
+		sn.addEdge("B", "C");
+		history.end();
+		sn.removeVertex("A");
+		assertEquals(Set.of("C"), sn.getAdjacent("B"));
+		assertEquals("Change", history.undo(log::add));
+		assertEquals(Set.of("B", "C"), sn.getAdjacent("A"));
+		assertEquals(3, sn.size());
+		assertEquals(List.of("a A", "a A C", "a A B"), log);
+
+		// clear keeps the people, not a copy
+		long version = sn.version("C");
+		history.begin("clear");
+		sn.clear();
+		history.end();
+		sn.addEdge("X", "Y");
+		assertEquals(2, sn.order());
+		history.undo(log::add);
+		assertEquals("clear", history.undo(log::add));
+		assertEquals(people.length, sn.order());
+		assertEquals(3, sn.size());
+		assertEquals(version, sn.version("C"));
+		assertEquals("clear", history.redo(log::add));
+		assertEquals(0, sn.order());
+		assertEquals("clear", history.undo(log::add));
+		assertEquals(3, sn.size());
+
+		// a new change drops what was undone, old actions are evicted
+		sn.removeEdge("B", "C");
+		assertEquals(false, history.canRedo());
+		assertEquals(null, history.redo(log::add));
+		sn.addEdge("G", "H");
+		sn.addEdge("E", "F");
+		history.undo(log::add);
+		history.undo(log::add);
+		history.undo(log::add);
+		assertEquals(false, history.canUndo());
+		assertEquals(people.length, sn.order());
+		assertEquals(3, sn.size());
+	}
+
+	@Test
+	public void test22_iteration() {
+		addAll();
+		sn.addEdge("A", "B");
+		sn.addEdge("A", "C");
+		List<String> visited = new ArrayList<String>();
+		sn.forEachVertex(visited::add);
+		assertEquals(new HashSet<String>(Arrays.asList(people)),
+				new HashSet<String>(visited));
+		visited.clear();
+		sn.forEachNeighbor("A", visited::add);
+		assertEquals(Set.of("B", "C"), new HashSet<String>(visited));
+		sn.forEachNeighbor("Z", visited::add);
+		assertEquals(2, visited.size());
+		assertEquals(2, sn.degree("A"));
+		assertEquals(0, sn.degree("Z"));
+
+		// views cannot change the graph
+		assertThrows(UnsupportedOperationException.class,
+				() -> sn.getAdjacent("A").remove("B"));
+		assertThrows(UnsupportedOperationException.class,
+				() -> sn.getAllVertices().clear());
+		assertThrows(ConcurrentModificationException.class,
+				() -> sn.forEachVertex(name -> sn.removeVertex("A")));
+	}
+
+	@Test
+	public void test23_progressive_load() throws Exception {
+		StringBuilder sb = new StringBuilder("a A B\nx A\na A B\n");
+		for (int i = 0; i < 1000; i++)
+			sb.append("a p" + i + " p" + (i + 1) + "\n");
+		File file = File.createTempFile("commands", ".txt");
+		file.deleteOnExit();
+		Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+		Parser parser = new Parser(sn, null);
+		List<String> log = new ArrayList<String>();
+		boolean[] aborted = { false, false };
+		long[] progress = { 0, 0 };
+
+		// whole file in chunks, errors in line order
+		ProgressiveLoader loader = new ProgressiveLoader(parser, file, 100,
+				Runnable::run, new ProgressiveLoader.Listener() {
+					@Override
+					public void committed(long bytesRead, long length,
+							long commands) {
+						assertEquals(true, commands % 100 == 0 || commands == 1002);
+						progress[0] = bytesRead;
+						progress[1] = length;
+					}
+
+					@Override
+					public void finished(boolean a) {
+						aborted[0] = a;
+					}
+				}, log::add);
+		loader.start();
+		loader.join();
+		assertEquals(false, aborted[0]);
+		assertEquals(file.length(), progress[0]);
+		assertEquals(progress[1], progress[0]);
+		assertEquals(1001, sn.size());
+		assertEquals(1002, log.size());
+		assertEquals("a p0 p1", log.get(2));
+		assertEquals(Arrays.asList("line 2: unknown command",
+				"line 3: relation already exists"), loader.getErrors());
+
+		// abort after three chunks keeps exactly those chunks
+		sn.clear();
+		ProgressiveLoader[] partial = { null };
+		partial[0] = new ProgressiveLoader(parser, file, 100, Runnable::run,
+				new ProgressiveLoader.Listener() {
+					@Override
+					public void committed(long bytesRead, long length,
+							long commands) {
+						if (commands == 300)
+							partial[0].abort();
+					}
+
+					@Override
+					public void finished(boolean a) {
+						aborted[1] = a;
+					}
+				}, name -> {
+				});
+		partial[0].start();
+		partial[0].join();
+		assertEquals(true, aborted[1]);
+		assertEquals(300, partial[0].commands());
+		assertEquals(299, sn.size());
+		assertEquals(true, sn.getAdjacent("p297").contains("p298"));
+		assertEquals(false, sn.getAllVertices().contains("p299"));
+	}
+
+	@Test
+	public void test24_hybrid_adjacency() {
+		// hubs grow through every representation, ids beyond 65536
+		Map<String, Set<String>> model = new HashMap<String, Set<String>>();
+		Random random = new Random(7);
+		for (int i = 0; i < 70000; i++) {
+			sn.addVertex("p" + i);
+			model.put("p" + i, new HashSet<String>());
+		}
+		String[] hubs = { "p1", "p2", "p69999" };
+		for (String hub : hubs)
+			for (int k = 0; k < 9000; k++) {
+				String friend = "p" + (k < 5000 ? random.nextInt(65536)
+						: random.nextInt(70000));
+				assertEquals(!hub.equals(friend)
+						&& model.get(hub).add(friend)
+						&& model.get(friend).add(hub),
+						sn.addEdge(hub, friend));
+			}
+		for (String hub : hubs) {
+			assertEquals(model.get(hub), sn.getAdjacent(hub));
+			assertEquals(model.get(hub), Set.copyOf(sn.getAdjacent(hub)));
+		}
+		Set<String> expected = new HashSet<String>(model.get("p1"));
+		expected.retainAll(model.get("p2"));
+		assertEquals(expected, sn.mutual("p1", "p2"));
+		assertEquals(expected, sn.mutual("p2", "p1"));
+
+		// shrinking turns hubs back into tables and sorted arrays
+		List<String> friends = new ArrayList<String>(model.get("p1"));
+		for (int k = 0; k < friends.size() - 5; k++) {
+			String friend = friends.get(k);
+			if (k % 2 == 0)
+				assertEquals(true, sn.removeEdge("p1", friend));
+			else
+				assertEquals(true, sn.removeVertex(friend));
+			model.get("p1").remove(friend);
+			if (k % 1000 == 0 || friends.size() - k < 40) {
+				assertEquals(model.get("p1"), sn.getAdjacent("p1"));
+				expected = new HashSet<String>(model.get("p1"));
+				expected.retainAll(sn.getAdjacent("p69999"));
+				assertEquals(expected, sn.mutual("p69999", "p1"));
+			}
+		}
+		assertEquals(5, sn.degree("p1"));
+
+		// ids of removed people are reused
+		for (int i = 0; i < 100; i++)
+			sn.addEdge("new" + i, "p1");
+		assertEquals(105, sn.getAdjacent("p1").size());
+		assertEquals(true, sn.getAdjacent("p1").contains("new99"));
+		assertEquals(Set.of("p1"), sn.getAdjacent("new0"));
+	}
 }
@@ -0,0 +1,243 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class StorageTest {
+	private SocialNetwork sn;
+	private File file;
+
+	@BeforeEach
+	public void setup() throws IOException {
+		sn = new SocialNetwork();
+		Random random = new Random(42);
+		for (int i = 0; i < 500; i++)
+			sn.addVertex("user" + i);
+		for (int i = 0; i < 2000; i++)
+			sn.addEdge("user" + random.nextInt(500),
+					"user" + random.nextInt(500));
+		sn.addVertex("\u00e9l\u00e8ve");
+		sn.addEdge("\u00e9l\u00e8ve", "user0");
+		file = File.createTempFile("graph", AdjacencyFile.EXTENSION);
+		file.deleteOnExit();
+	}
+
+	private void assertSameGraph(Graph expected, Graph actual) {
+		assertEquals(expected.order(), actual.order());
+		assertEquals(expected.size(), actual.size());
+		for (String v : expected.getAllVertices())
+			assertEquals(Set.copyOf(expected.getAdjacent(v)),
+					Set.copyOf(actual.getAdjacent(v)));
+	}
+
+	@Test
+	public void test01_snapshot_roundtrip() throws IOException {
+		AdjacencyFile.write(sn, file);
+		SocialNetwork copy = new SocialNetwork();
+		AdjacencyFile.addTo(AdjacencyFile.read(file), copy);
+		assertSameGraph(sn, copy);
+	}
+
+	@Test
+	public void test02_snapshot_random_access() throws IOException {
+		AdjacencyFile.write(sn, file);
+		try (AdjacencyFile adj = new AdjacencyFile(file)) {
+			assertEquals(sn.order(), adj.order());
+			assertEquals(sn.size(), adj.size());
+			for (String v : sn.getAllVertices()) {
+				List<String> friends = adj.getAdjacent(v);
+				assertEquals(sn.getAdjacent(v), Set.copyOf(friends));
+				int[] ids = adj.neighbours(adj.id(v));
+				int[] sorted = ids.clone();
+				Arrays.sort(sorted);
+				assertArrayEquals(sorted, ids);
+			}
+			assertEquals(-1, adj.id("nobody"));
+		}
+	}
+
+	@Test
+	public void test03_snapshot_rejects_text() throws IOException {
+		Files.write(file.toPath(), List.of("a A B"));
+		assertThrows(IOException.class, () -> AdjacencyFile.read(file));
+		assertThrows(IOException.class, () -> new AdjacencyFile(file));
+	}
+
+	@Test
+	public void test04_mapped_graph() throws IOException {
+		sn.addVertex("loner");
+		AdjacencyFile.write(sn, file);
+		MappedGraph mapped = new MappedGraph(file);
+		assertSameGraph(sn, mapped);
+		assertEquals(sn.components(), mapped.components());
+		assertEquals(true, mapped.getAllVertices().contains("loner"));
+		assertEquals(false, mapped.getAllVertices().contains("nobody"));
+		assertEquals(sn.connection("user1", "user2").size(),
+				mapped.connection("user1", "user2").size());
+		assertEquals(List.of("user1"), mapped.connection("user1", "user1"));
+		assertEquals(List.of(), mapped.connection("user1", "loner"));
+		assertThrows(UnsupportedOperationException.class,
+				() -> mapped.addVertex("A"));
+		assertEquals(sn.size(), mapped.edges());
+		mapped.close();
+		assertThrows(IllegalStateException.class,
+				() -> mapped.degree("user1"));
+		mapped.close();
+	}
+
+	@Test
+	public void test05_name_dictionary() {
+		NameDictionary names = new NameDictionary();
+		String[] odd = { "", "\u00e9l\u00e8ve", "\ud83d\ude00", "a\ud800b",
+				"\u4e2d\u6587" };
+		for (int i = 0; i < odd.length; i++)
+			assertEquals(i, names.add(odd[i]));
+		for (int i = 0; i < 100000; i++)
+			assertEquals(odd.length + i, names.add("p" + i));
+		assertEquals(odd.length + 100000, names.size());
+
+		// strings and their encodings find the same ids
+		for (int i = 0; i < odd.length; i++) {
+			byte[] b = odd[i].getBytes(StandardCharsets.UTF_8);
+			assertEquals(i, names.id(odd[i]));
+			assertEquals(i, names.add(b, 0, b.length));
+			assertEquals(new String(b, StandardCharsets.UTF_8), names.name(i));
+		}
+		assertEquals(odd.length + 4242, names.id("p4242"));
+		assertEquals("p99999", names.name(names.size() - 1));
+		assertEquals(-1, names.id("p100000"));
+		assertEquals(-1, names.id("\u00e9l\u00e8v"));
+		assertThrows(IndexOutOfBoundsException.class,
+				() -> names.name(names.size()));
+
+		// snapshots look names up in their dictionary
+		CsrGraph g = CsrGraph.of(sn);
+		for (String name : sn.getAllVertices())
+			assertEquals(name, g.name(g.id(name)));
+		assertEquals(-1, g.id("nobody"));
+	}
+
+	@Test
+	public void test06_subgraph_export() throws IOException {
+		sn.addVertex("hermit");
+		List<String> names = Arrays.asList("user0", "user1", "user2",
+				"\u00e9l\u00e8ve", "hermit", "user0", "nobody");
+		CsrGraph sub = sn.induced(names);
+		assertEquals(5, sub.order());
+		SocialNetwork expected = new SocialNetwork();
+		for (String v : Set.copyOf(names))
+			if (sn.getAllVertices().contains(v)) {
+				expected.addVertex(v);
+				for (String u : sn.getAdjacent(v))
+					if (names.contains(u))
+						expected.addEdge(v, u);
+			}
+		SocialNetwork copy = new SocialNetwork();
+		AdjacencyFile.addTo(sub, copy);
+		assertSameGraph(expected, copy);
+
+		// neighbourhoods grow to the component, which CsrGraph agrees on
+		assertEquals(1 + sn.degree("user0"),
+				sn.neighbourhood("user0", 1).order());
+		CsrGraph all = sn.snapshot();
+		CsrGraph component = sn.neighbourhood("user0", Integer.MAX_VALUE);
+		assertEquals(sn.order() - 1, component.order());
+		assertEquals(sn.size(), component.size());
+		assertEquals(component.size(), all.induced(
+				new Bfs(all).within(all.id("user0"), Integer.MAX_VALUE)).size());
+		assertEquals(0, sn.neighbourhood("nobody", 2).order());
+
+		// text export loads back through the parser
+		File text = File.createTempFile("subgraph", ".txt");
+		text.deleteOnExit();
+		Parser.write(sub, text);
+		SocialNetwork loaded = new SocialNetwork();
+		assertEquals(true, new Parser(loaded, null).load(text));
+		assertSameGraph(expected, loaded);
+		Parser.write(component, file);
+		assertSameGraph(copyOf(component), copyOf(AdjacencyFile.read(file)));
+	}
+
+	@Test
+	public void test07_background_save() throws Exception {
+		File dir = Files.createTempDirectory("save").toFile();
+		dir.deleteOnExit();
+		File text = new File(dir, "graph.txt");
+		text.deleteOnExit();
+		Files.write(text.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+		boolean posix = Files.getFileStore(text.toPath())
+				.supportsFileAttributeView(PosixFileAttributeView.class);
+		Set<PosixFilePermission> mode = posix
+				? PosixFilePermissions.fromString("rw-r-----")
+				: null;
+		if (posix)
+			Files.setPosixFilePermissions(text.toPath(), mode);
+		List<Integer> progress = new ArrayList<Integer>();
+		IOException[] error = { new IOException("not finished") };
+		GraphSaver saver = new GraphSaver(sn.snapshot(), text, Runnable::run,
+				new GraphSaver.Listener() {
+					@Override
+					public void written(int vertices, int order) {
+						progress.add(vertices);
+					}
+
+					@Override
+					public void finished(IOException e) {
+						error[0] = e;
+					}
+				});
+		saver.start();
+		sn.removeVertex("user0"); // after the snapshot, not saved
+		saver.join();
+		assertEquals(null, error[0]);
+		assertEquals(sn.order() + 1, (int) progress.get(progress.size() - 1));
+		assertEquals(1, dir.list().length); // the temporary file was renamed
+		if (posix) // the file keeps its permissions
+			assertEquals(mode, Files.getPosixFilePermissions(text.toPath()));
+		SocialNetwork loaded = new SocialNetwork();
+		assertEquals(true, new Parser(loaded, null).load(text));
+		assertEquals(sn.order() + 1, loaded.order());
+		assertEquals(sn.size() + loaded.degree("user0"), loaded.size());
+
+		// a failed save reports the error and leaves nothing behind
+		File missing = new File(new File(dir, "missing"), "graph.txt");
+		saver = new GraphSaver(sn.snapshot(), missing, Runnable::run,
+				new GraphSaver.Listener() {
+					@Override
+					public void written(int vertices, int order) {
+					}
+
+					@Override
+					public void finished(IOException e) {
+						error[0] = e;
+					}
+				});
+		saver.start();
+		saver.join();
+		assertEquals(true, error[0] != null);
+		assertEquals(1, dir.list().length);
+	}
+
+	private static SocialNetwork copyOf(CsrGraph g) {
+		SocialNetwork copy = new SocialNetwork();
+		AdjacencyFile.addTo(g, copy);
+		return copy;
+	}
+}
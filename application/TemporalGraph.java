@@ -0,0 +1,538 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Graph remembering when every person and friendship existed, so that the
+ * graph can be queried as of any earlier time without replaying a log. Every
+ * vertex keeps compact arrays of intervals [from, to): its own lifetimes and
+ * one per friendship, appended in time order. A query at time t binary
+ * searches the intervals started by t and scans only those.
+ *
+ * Changes through the Graph interface are stamped by a clock; changes must
+ * come in non-decreasing time order.
+ *
+ * @author Zhaoyi
+ */
+public class TemporalGraph implements Graph {
+	// end of intervals still open
+	public static final long OPEN = Long.MAX_VALUE;
+
+	private LongSupplier clock;
+	private Map<String, Integer> ids;
+	private List<Timeline> timelines;
+
+	// friendships still open, by pair of ids, to their interval indexes
+	private Map<Long, Long> open;
+
+	private long last; // time of the latest change
+	private int order;
+	private int size;
+
+	/**
+	 * Construct a graph stamping changes with the wall clock
+	 */
+	public TemporalGraph() {
+		this(System::currentTimeMillis);
+	}
+
+	/**
+	 * Construct a graph
+	 *
+	 * @param clock - time of changes made through the Graph interface
+	 */
+	public TemporalGraph(LongSupplier clock) {
+		super();
+		this.clock = clock;
+		ids = new HashMap<String, Integer>();
+		timelines = new ArrayList<Timeline>();
+		open = new HashMap<Long, Long>();
+		last = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Add a vertex now
+	 *
+	 * @param str - vertex name
+	 * @return true if the vertex was not in graph
+	 */
+	@Override
+	public boolean addVertex(String str) {
+		return addVertex(str, clock.getAsLong());
+	}
+
+	/**
+	 * Remove a vertex and its edges now; the history is kept
+	 *
+	 * @param str - vertex name
+	 * @return true if the vertex was in graph
+	 */
+	@Override
+	public boolean removeVertex(String str) {
+		return removeVertex(str, clock.getAsLong());
+	}
+
+	/**
+	 * Add an edge now, adding its vertices if needed
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @return true if the edge was not in graph
+	 */
+	@Override
+	public boolean addEdge(String str1, String str2) {
+		return addEdge(str1, str2, clock.getAsLong());
+	}
+
+	/**
+	 * Remove an edge now; the history is kept
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @return true if the edge was in graph
+	 */
+	@Override
+	public boolean removeEdge(String str1, String str2) {
+		return removeEdge(str1, str2, clock.getAsLong());
+	}
+
+	/**
+	 * Remove every person now; the history is kept
+	 */
+	@Override
+	public void clear() {
+		long t = clock.getAsLong();
+		for (Timeline tl : timelines)
+			if (tl.alive())
+				removeVertex(tl.name, t);
+	}
+
+	/**
+	 * Find the vertices now
+	 *
+	 * @return names of the vertices alive now
+	 */
+	@Override
+	public Collection<String> getAllVertices() {
+		return getAllVertices(OPEN - 1);
+	}
+
+	/**
+	 * Find the adjacent vertices of a vertex now
+	 *
+	 * @param str - vertex name
+	 * @return names of the neighbours, empty if the vertex is not in graph
+	 */
+	@Override
+	public Collection<String> getAdjacent(String str) {
+		return getAdjacent(str, OPEN - 1);
+	}
+
+	/**
+	 * Return number of edges now
+	 *
+	 * @return number of edges
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Return number of vertices now
+	 *
+	 * @return number of vertices
+	 */
+	@Override
+	public int order() {
+		return order;
+	}
+
+	/**
+	 * Add a vertex at a time
+	 *
+	 * @param str - vertex name
+	 * @param t   - time
+	 * @return true if the vertex was not in graph
+	 */
+	public boolean addVertex(String str, long t) {
+		advance(t);
+		Timeline tl = timeline(str);
+		if (tl.alive())
+			return false;
+		tl.born(t);
+		order++;
+		return true;
+	}
+
+	/**
+	 * Remove a vertex and its edges at a time
+	 *
+	 * @param str - vertex name
+	 * @param t   - time
+	 * @return true if the vertex was in graph
+	 */
+	public boolean removeVertex(String str, long t) {
+		advance(t);
+		Integer v = ids.get(str);
+		if (v == null || !timelines.get(v).alive())
+			return false;
+		Timeline tl = timelines.get(v);
+		for (int i = 0; i < tl.edges; i++)
+			if (tl.to[i] == OPEN)
+				removeEdge(v, tl.neighbour[i], t);
+		tl.died(t);
+		order--;
+		return true;
+	}
+
+	/**
+	 * Add an edge at a time, adding its vertices if needed
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @param t    - time
+	 * @return true if the edge was not in graph
+	 */
+	public boolean addEdge(String str1, String str2, long t) {
+		if (str1 == null || str2 == null || str1.equals(str2))
+			return false;
+		addVertex(str1, t);
+		addVertex(str2, t);
+		int a = ids.get(str1), b = ids.get(str2);
+		long key = key(a, b);
+		if (open.containsKey(key))
+			return false;
+		int i = timelines.get(a).add(b, t);
+		int j = timelines.get(b).add(a, t);
+		open.put(key, a < b ? (long) i << 32 | j : (long) j << 32 | i);
+		size++;
+		return true;
+	}
+
+	/**
+	 * Remove an edge at a time
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @param t    - time
+	 * @return true if the edge was in graph
+	 */
+	public boolean removeEdge(String str1, String str2, long t) {
+		advance(t);
+		Integer a = ids.get(str1), b = ids.get(str2);
+		return a != null && b != null && removeEdge(a, b, t);
+	}
+
+	/**
+	 * Find the vertices at a time
+	 *
+	 * @param t - time
+	 * @return names of the vertices alive at the time
+	 */
+	public Collection<String> getAllVertices(long t) {
+		List<String> vertices = new ArrayList<String>();
+		for (Timeline tl : timelines)
+			if (tl.aliveAt(t))
+				vertices.add(tl.name);
+		return vertices;
+	}
+
+	/**
+	 * Find the adjacent vertices of a vertex at a time
+	 *
+	 * @param str - vertex name
+	 * @param t   - time
+	 * @return names of the neighbours at the time, empty if the vertex did
+	 *         not exist
+	 */
+	public Collection<String> getAdjacent(String str, long t) {
+		Integer v = ids.get(str);
+		if (v == null)
+			return Collections.emptyList();
+		List<String> adjacent = new ArrayList<String>();
+		Timeline tl = timelines.get(v);
+		for (int i = tl.before(t) - 1; i >= 0; i--)
+			if (tl.to[i] > t)
+				adjacent.add(timelines.get(tl.neighbour[i]).name);
+		return adjacent;
+	}
+
+	/**
+	 * Find the shortest path between two vertices at a time
+	 *
+	 * @param str1 - vertex name
+	 * @param str2 - vertex name
+	 * @param t    - time
+	 * @return a shortest path, empty if not connected at the time
+	 */
+	public List<String> connection(String str1, String str2, long t) {
+		List<String> path = new ArrayList<String>();
+		Integer s = ids.get(str1), target = ids.get(str2);
+		if (s == null || target == null || !timelines.get(s).aliveAt(t)
+				|| !timelines.get(target).aliveAt(t))
+			return path;
+		int[] pred = new int[timelines.size()];
+		Arrays.fill(pred, -1);
+		int[] queue = new int[timelines.size()];
+		int head = 0, tail = 0;
+		queue[tail++] = s;
+		pred[s] = s;
+		while (head < tail && pred[target] == -1) {
+			Timeline tl = timelines.get(queue[head++]);
+			for (int i = tl.before(t) - 1; i >= 0; i--) {
+				int u = tl.neighbour[i];
+				if (tl.to[i] > t && pred[u] == -1) {
+					pred[u] = queue[head - 1];
+					queue[tail++] = u;
+				}
+			}
+		}
+		if (pred[target] == -1)
+			return path;
+		for (int v = target; v != s; v = pred[v])
+			path.add(timelines.get(v).name);
+		path.add(str1);
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * Find the number of connected components at a time with union-find over
+	 * the intervals open at the time, without building a snapshot
+	 *
+	 * @param t - time
+	 * @return number of components
+	 */
+	public int components(long t) {
+		int[] parent = new int[timelines.size()];
+		int count = 0;
+		for (int v = 0; v < parent.length; v++) {
+			parent[v] = v;
+			if (timelines.get(v).aliveAt(t))
+				count++;
+		}
+		for (int v = 0; v < parent.length; v++) {
+			Timeline tl = timelines.get(v);
+			for (int i = tl.before(t) - 1; i >= 0; i--) {
+				if (tl.to[i] <= t || tl.neighbour[i] < v)
+					continue; // closed, or seen from the other end
+				int a = find(parent, v), b = find(parent, tl.neighbour[i]);
+				if (a != b) {
+					parent[Math.max(a, b)] = Math.min(a, b);
+					count--;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Take a snapshot of the graph at a time, for analytics
+	 *
+	 * @param t - time
+	 * @return graph at the time
+	 */
+	public SocialNetwork snapshot(long t) {
+		SocialNetwork sn = new SocialNetwork();
+		for (Timeline tl : timelines) {
+			if (!tl.aliveAt(t))
+				continue;
+			sn.addVertex(tl.name);
+			for (int i = tl.before(t) - 1; i >= 0; i--)
+				if (tl.to[i] > t)
+					sn.addEdge(tl.name, timelines.get(tl.neighbour[i]).name);
+		}
+		return sn;
+	}
+
+	/**
+	 * Close an open edge
+	 *
+	 * @param a - vertex id
+	 * @param b - vertex id
+	 * @param t - time
+	 * @return true if the edge was open
+	 */
+	private boolean removeEdge(int a, int b, long t) {
+		Long slots = open.remove(key(a, b));
+		if (slots == null)
+			return false;
+		int lo = Math.min(a, b), hi = Math.max(a, b);
+		timelines.get(lo).to[(int) (slots >>> 32)] = t;
+		timelines.get(hi).to[(int) (long) slots] = t;
+		size--;
+		return true;
+	}
+
+	/**
+	 * Find or create the timeline of a vertex
+	 *
+	 * @param str - vertex name
+	 * @return timeline
+	 */
+	private Timeline timeline(String str) {
+		Integer v = ids.get(str);
+		if (v != null)
+			return timelines.get(v);
+		ids.put(str, timelines.size());
+		Timeline tl = new Timeline(str);
+		timelines.add(tl);
+		return tl;
+	}
+
+	/**
+	 * Move the time of the latest change forward
+	 *
+	 * @param t - time of a change
+	 */
+	private void advance(long t) {
+		if (t < last || t >= OPEN)
+			throw new IllegalArgumentException(
+					"time " + t + " is before the latest change " + last);
+		last = t;
+	}
+
+	/**
+	 * Find the root of a union-find tree, halving the path
+	 *
+	 * @param parent - parent of every vertex
+	 * @param v      - vertex
+	 * @return root
+	 */
+	private static int find(int[] parent, int v) {
+		while (parent[v] != v)
+			v = parent[v] = parent[parent[v]];
+		return v;
+	}
+
+	/**
+	 * Key of an unordered pair of ids
+	 *
+	 * @param a - vertex id
+	 * @param b - vertex id
+	 * @return key
+	 */
+	private static long key(int a, int b) {
+		return (long) Math.min(a, b) << 32 | Math.max(a, b);
+	}
+
+	/**
+	 * Lifetimes and friendship intervals of one vertex, in time order
+	 */
+	private static class Timeline {
+		String name;
+
+		// lifetimes as pairs of times
+		long[] life = new long[2];
+		int lives;
+
+		// friendships
+		int[] neighbour = new int[4];
+		long[] from = new long[4];
+		long[] to = new long[4];
+		int edges;
+
+		/**
+		 * Construct an empty timeline
+		 *
+		 * @param name - vertex name
+		 */
+		Timeline(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Check if the vertex exists now
+		 *
+		 * @return true if alive
+		 */
+		boolean alive() {
+			return lives > 0 && life[2 * lives - 1] == OPEN;
+		}
+
+		/**
+		 * Check if the vertex existed at a time
+		 *
+		 * @param t - time
+		 * @return true if alive at the time
+		 */
+		boolean aliveAt(long t) {
+			// last lifetime started by t
+			int lo = 0, hi = lives;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (life[2 * mid] <= t)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo > 0 && life[2 * lo - 1] > t;
+		}
+
+		/**
+		 * Start a lifetime
+		 *
+		 * @param t - time
+		 */
+		void born(long t) {
+			if (2 * lives == life.length)
+				life = Arrays.copyOf(life, life.length * 2);
+			life[2 * lives] = t;
+			life[2 * lives++ + 1] = OPEN;
+		}
+
+		/**
+		 * End the current lifetime
+		 *
+		 * @param t - time
+		 */
+		void died(long t) {
+			life[2 * lives - 1] = t;
+		}
+
+		/**
+		 * Open a friendship interval
+		 *
+		 * @param u - neighbour id
+		 * @param t - time
+		 * @return index of the interval
+		 */
+		int add(int u, long t) {
+			if (edges == neighbour.length) {
+				neighbour = Arrays.copyOf(neighbour, edges * 2);
+				from = Arrays.copyOf(from, edges * 2);
+				to = Arrays.copyOf(to, edges * 2);
+			}
+			neighbour[edges] = u;
+			from[edges] = t;
+			to[edges] = OPEN;
+			return edges++;
+		}
+
+		/**
+		 * Count the friendship intervals started by a time
+		 *
+		 * @param t - time
+		 * @return number of intervals with from at most t
+		 */
+		int before(long t) {
+			int lo = 0, hi = edges;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (from[mid] <= t)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package application;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TemporalGraphTest {
+	private TemporalGraph tg;
+
+	@BeforeEach
+	public void setup() {
+		tg = new TemporalGraph();
+	}
+
+	@Test
+	public void test01_as_of() {
+		tg.addEdge("A", "B", 10);
+		tg.addEdge("B", "C", 20);
+		tg.removeEdge("A", "B", 30);
+		tg.addEdge("A", "B", 40);
+		tg.removeVertex("C", 50);
+		assertEquals(Set.of(), new HashSet<>(tg.getAllVertices(5)));
+		assertEquals(Set.of("B"), new HashSet<>(tg.getAdjacent("A", 10)));
+		assertEquals(Set.of(), new HashSet<>(tg.getAdjacent("A", 35)));
+		assertEquals(Set.of("A", "C"), new HashSet<>(tg.getAdjacent("B", 45)));
+		assertEquals(Set.of("A"), new HashSet<>(tg.getAdjacent("B")));
+		assertEquals(List.of("A", "B", "C"), tg.connection("A", "C", 25));
+		assertEquals(List.of(), tg.connection("A", "C", 35));
+		assertEquals(List.of(), tg.connection("A", "C", 55));
+		assertEquals(1, tg.components(25));
+		assertEquals(2, tg.components(35));
+		assertEquals(1, tg.components(55));
+		assertEquals(2, tg.order());
+		assertEquals(1, tg.size());
+		assertThrows(IllegalArgumentException.class,
+				() -> tg.addVertex("D", 45));
+	}
+
+	@Test
+	public void test02_matches_replay() {
+		Random random = new Random(7);
+		SocialNetwork[] replay = new SocialNetwork[50];
+		SocialNetwork sn = new SocialNetwork();
+		for (int t = 0; t < replay.length; t++) {
+			for (int i = 0; i < 40; i++) {
+				String a = "P" + random.nextInt(30), b = "P" + random.nextInt(30);
+				int op = random.nextInt(10);
+				boolean expected = op < 6 ? sn.addEdge(a, b)
+						: op < 9 ? sn.removeEdge(a, b) : sn.removeVertex(a);
+				boolean actual = op < 6 ? tg.addEdge(a, b, t)
+						: op < 9 ? tg.removeEdge(a, b, t) : tg.removeVertex(a, t);
+				assertEquals(expected, actual);
+			}
+			replay[t] = copy(sn);
+		}
+		for (int t = 0; t < replay.length; t++) {
+			SocialNetwork past = tg.snapshot(t);
+			assertEquals(replay[t].getAllVertices(), past.getAllVertices());
+			for (String v : replay[t].getAllVertices())
+				assertEquals(replay[t].getAdjacent(v),
+						new HashSet<>(tg.getAdjacent(v, t)));
+			assertEquals(replay[t].components(), tg.components(t));
+		}
+	}
+
+	private static SocialNetwork copy(SocialNetwork sn) {
+		SocialNetwork copy = new SocialNetwork();
+		AdjacencyFile.addTo(CsrGraph.of(sn), copy);
+		return copy;
+	}
+}
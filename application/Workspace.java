@@ -0,0 +1,468 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Several immutable graphs held side by side, such as snapshots of a social
+ * network taken a week apart. All graphs share one name dictionary, so a
+ * person has the same id in every graph and a name is stored once. Every
+ * graph is an array of sorted neighbour lists indexed by id, null for
+ * people not in it; a graph added after another reuses the lists of the
+ * other that did not change, so an unchanged person costs one reference.
+ *
+ * Differences between two graphs only look at the lists that are not
+ * shared: edges are found by merging the two versions of a changed list,
+ * and only components containing a changed person are searched.
+ *
+ * @author Zhaoyi
+ */
+public class Workspace {
+	private static final int[] ALONE = new int[0]; // list of isolated people
+
+	private NameDictionary names;
+	private Map<String, Version> graphs;
+	private Version latest; // graph the next one shares lists with
+
+	/**
+	 * Construct an empty workspace
+	 */
+	public Workspace() {
+		super();
+		names = new NameDictionary();
+		graphs = new LinkedHashMap<String, Version>();
+	}
+
+	/**
+	 * Add a snapshot of a social network
+	 *
+	 * @param label - name of the graph, replacing any graph with that name
+	 * @param sn    - social network
+	 */
+	public void add(String label, SocialNetwork sn) {
+		add(label, sn.snapshot());
+	}
+
+	/**
+	 * Add a graph, such as a snapshot read from a file
+	 *
+	 * @param label - name of the graph, replacing any graph with that name
+	 * @param g     - graph
+	 */
+	public void add(String label, CsrGraph g) {
+		int n = g.order();
+		int[] global = new int[n];
+		for (int v = 0; v < n; v++)
+			global[v] = names.add(g.names, v);
+
+		Version base = latest;
+		int[][] lists = new int[names.size()][];
+		for (int v = 0; v < n; v++) {
+			int[] list = ALONE;
+			if (g.degree(v) > 0) {
+				list = new int[g.degree(v)];
+				for (int k = 0; k < list.length; k++)
+					list[k] = global[g.targets[g.offsets[v] + k]];
+				Arrays.sort(list);
+			}
+			int[] old = base == null ? null : base.list(global[v]);
+			lists[global[v]] = old != null && Arrays.equals(old, list) ? old
+					: list;
+		}
+		latest = new Version(lists, n, g.size());
+		graphs.put(label, latest);
+	}
+
+	/**
+	 * Remove a graph; lists it shares with others are kept by them
+	 *
+	 * @param label - name of the graph
+	 * @return true if the graph was in the workspace
+	 */
+	public boolean remove(String label) {
+		Version removed = graphs.remove(label);
+		if (removed != null && removed == latest)
+			latest = null;
+		return removed != null;
+	}
+
+	/**
+	 * Return the names of the graphs, in the order they were added
+	 *
+	 * @return an unmodifiable set of names
+	 */
+	public Set<String> labels() {
+		return Collections.unmodifiableSet(graphs.keySet());
+	}
+
+	/**
+	 * Return number of people of a graph
+	 *
+	 * @param label - name of the graph
+	 * @return number of vertices
+	 */
+	public int order(String label) {
+		return version(label).order;
+	}
+
+	/**
+	 * Return number of friendships of a graph
+	 *
+	 * @param label - name of the graph
+	 * @return number of edges
+	 */
+	public int size(String label) {
+		return version(label).size;
+	}
+
+	/**
+	 * Extract a graph with dense ids, for analytics or to load it into a
+	 * social network through AdjacencyFile.addTo
+	 *
+	 * @param label - name of the graph
+	 * @return graph
+	 */
+	public CsrGraph graph(String label) {
+		Version g = version(label);
+		int[] dense = new int[g.lists.length];
+		NameDictionary sub = new NameDictionary(g.order, g.order * 8);
+		int[] offsets = new int[g.order + 1];
+		for (int id = 0, v = 0; id < g.lists.length; id++)
+			if (g.lists[id] != null) {
+				dense[id] = v;
+				sub.add(names, id);
+				offsets[v + 1] = offsets[v] + g.lists[id].length;
+				v++;
+			}
+		// ascending ids map to ascending ids, so lists stay sorted
+		int[] targets = new int[offsets[g.order]];
+		for (int id = 0, k = 0; id < g.lists.length; id++)
+			if (g.lists[id] != null)
+				for (int u : g.lists[id])
+					targets[k++] = dense[u];
+		return new CsrGraph(sub, offsets, targets);
+	}
+
+	/**
+	 * Compare two graphs
+	 *
+	 * @param from - name of the earlier graph
+	 * @param to   - name of the later graph
+	 * @return differences from the earlier graph to the later one
+	 */
+	public Diff diff(String from, String to) {
+		return new Diff(version(from), version(to));
+	}
+
+	/**
+	 * Return the memory taken by the names and the neighbour lists of all
+	 * graphs, counting shared lists once
+	 *
+	 * @return number of bytes
+	 */
+	public long memory() {
+		long bytes = names.memory();
+		Map<int[], Boolean> seen = new IdentityHashMap<int[], Boolean>();
+		for (Version g : graphs.values()) {
+			bytes += 4L * g.lists.length; // compressed references
+			for (int[] list : g.lists)
+				if (list != null && seen.put(list, true) == null)
+					bytes += 16 + 4L * list.length;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Count the neighbour lists two graphs share
+	 *
+	 * @param label1 - name of a graph
+	 * @param label2 - name of a graph
+	 * @return number of people whose list is shared
+	 */
+	public int shared(String label1, String label2) {
+		Version a = version(label1), b = version(label2);
+		int shared = 0;
+		for (int id = 0; id < Math.min(a.lists.length, b.lists.length); id++)
+			if (a.lists[id] != null && a.lists[id] == b.lists[id])
+				shared++;
+		return shared;
+	}
+
+	/**
+	 * Find a graph
+	 *
+	 * @param label - name of the graph
+	 * @return graph
+	 */
+	private Version version(String label) {
+		Version g = graphs.get(label);
+		if (g == null)
+			throw new IllegalArgumentException("no graph " + label);
+		return g;
+	}
+
+	/**
+	 * Graph of the workspace
+	 */
+	private static class Version {
+		int[][] lists; // neighbours by id, null if not in graph
+		int order;
+		int size;
+
+		/**
+		 * Construct a graph
+		 *
+		 * @param lists - neighbour lists
+		 * @param order - number of vertices
+		 * @param size  - number of edges
+		 */
+		Version(int[][] lists, int order, int size) {
+			this.lists = lists;
+			this.order = order;
+			this.size = size;
+		}
+
+		/**
+		 * Find the neighbours of a person
+		 *
+		 * @param id - id
+		 * @return neighbours, or null if not in graph
+		 */
+		int[] list(int id) {
+			return id < lists.length ? lists[id] : null;
+		}
+	}
+
+	/**
+	 * Differences from one graph of the workspace to another
+	 */
+	public class Diff {
+		private Version a;
+		private Version b;
+		private List<Integer> added;
+		private List<Integer> removed;
+		private List<Long> addedEdges; // pairs of ids, smaller id first
+		private List<Long> removedEdges;
+		private List<Integer> changed; // people of b whose list changed
+
+		/**
+		 * Compare two graphs
+		 *
+		 * @param a - earlier graph
+		 * @param b - later graph
+		 */
+		private Diff(Version a, Version b) {
+			this.a = a;
+			this.b = b;
+			added = new ArrayList<Integer>();
+			removed = new ArrayList<Integer>();
+			addedEdges = new ArrayList<Long>();
+			removedEdges = new ArrayList<Long>();
+			changed = new ArrayList<Integer>();
+			int n = Math.max(a.lists.length, b.lists.length);
+			for (int id = 0; id < n; id++) {
+				int[] la = a.list(id), lb = b.list(id);
+				if (la == lb) // shared or absent from both
+					continue;
+				if (la == null)
+					added.add(id);
+				if (lb == null)
+					removed.add(id);
+				else
+					changed.add(id);
+				merge(id, la == null ? ALONE : la, lb == null ? ALONE : lb);
+			}
+		}
+
+		/**
+		 * Collect the edges of a person only in one of two lists; an edge is
+		 * collected at its smaller id
+		 *
+		 * @param id - id
+		 * @param la - earlier neighbours
+		 * @param lb - later neighbours
+		 */
+		private void merge(int id, int[] la, int[] lb) {
+			int i = 0, j = 0;
+			while (i < la.length || j < lb.length) {
+				if (j == lb.length || i < la.length && la[i] < lb[j]) {
+					if (id < la[i])
+						removedEdges.add((long) id << 32 | la[i]);
+					i++;
+				} else if (i == la.length || lb[j] < la[i]) {
+					if (id < lb[j])
+						addedEdges.add((long) id << 32 | lb[j]);
+					j++;
+				} else {
+					i++;
+					j++;
+				}
+			}
+		}
+
+		/**
+		 * Return the people only in the later graph
+		 *
+		 * @return names
+		 */
+		public List<String> addedPeople() {
+			return decode(added);
+		}
+
+		/**
+		 * Return the people only in the earlier graph
+		 *
+		 * @return names
+		 */
+		public List<String> removedPeople() {
+			return decode(removed);
+		}
+
+		/**
+		 * Return the friendships only in the later graph
+		 *
+		 * @return pairs of names
+		 */
+		public List<String[]> addedEdges() {
+			return decodePairs(addedEdges);
+		}
+
+		/**
+		 * Return the friendships only in the earlier graph
+		 *
+		 * @return pairs of names
+		 */
+		public List<String[]> removedEdges() {
+			return decodePairs(removedEdges);
+		}
+
+		/**
+		 * Return number of friendships only in the later graph
+		 *
+		 * @return number of edges
+		 */
+		public int addedEdgeCount() {
+			return addedEdges.size();
+		}
+
+		/**
+		 * Return number of friendships only in the earlier graph
+		 *
+		 * @return number of edges
+		 */
+		public int removedEdgeCount() {
+			return removedEdges.size();
+		}
+
+		/**
+		 * Find the connected components of the later graph that are not
+		 * components of the earlier one: formed by new people, merged,
+		 * split or grown. A component without changed people is a component
+		 * of both graphs, so only those with changed people are searched.
+		 *
+		 * @return people of every new component
+		 */
+		public List<Set<String>> newComponents() {
+			int n = Math.max(a.lists.length, b.lists.length);
+			int[] label = new int[n]; // component in b, plus one
+			int[] mark = new int[n]; // search in a, plus one
+			int[] queue = new int[n];
+			List<Set<String>> components = new ArrayList<Set<String>>();
+			int count = 0;
+			for (int s : changed) {
+				if (label[s] != 0)
+					continue;
+				int size = search(b, s, ++count, label, queue);
+				if (isNew(s, size, count, label, mark, queue)) {
+					Set<String> people = new HashSet<String>();
+					for (int i = 0; i < size; i++)
+						people.add(names.name(queue[i]));
+					components.add(people);
+				}
+			}
+			return components;
+		}
+
+		/**
+		 * Check if the component of a person in the later graph differs from
+		 * its component in the earlier graph
+		 *
+		 * @param s     - person
+		 * @param size  - size of its component in the later graph
+		 * @param c     - label of that component
+		 * @param label - component labels in the later graph
+		 * @param mark  - search marks in the earlier graph
+		 * @param queue - queue holding the component in the later graph
+		 * @return true if new
+		 */
+		private boolean isNew(int s, int size, int c, int[] label, int[] mark,
+				int[] queue) {
+			if (a.list(s) == null)
+				return true;
+			int[] members = Arrays.copyOf(queue, size);
+			int found = search(a, s, c, mark, queue);
+			boolean same = found == size;
+			for (int i = 0; same && i < found; i++)
+				same = queue[i] < label.length && label[queue[i]] == c;
+			System.arraycopy(members, 0, queue, 0, size);
+			return !same;
+		}
+
+		/**
+		 * Label the component of a person by breadth-first search
+		 *
+		 * @param g     - graph
+		 * @param s     - person
+		 * @param c     - label
+		 * @param label - labels, updated
+		 * @param queue - receives the people of the component
+		 * @return size of the component
+		 */
+		private int search(Version g, int s, int c, int[] label, int[] queue) {
+			int head = 0, tail = 0;
+			label[s] = c;
+			queue[tail++] = s;
+			while (head < tail)
+				for (int u : g.lists[queue[head++]])
+					if (label[u] != c) {
+						label[u] = c;
+						queue[tail++] = u;
+					}
+			return tail;
+		}
+
+		/**
+		 * Decode ids
+		 *
+		 * @param ids - ids
+		 * @return names
+		 */
+		private List<String> decode(List<Integer> ids) {
+			List<String> decoded = new ArrayList<String>();
+			for (int id : ids)
+				decoded.add(names.name(id));
+			return decoded;
+		}
+
+		/**
+		 * Decode pairs of ids
+		 *
+		 * @param pairs - pairs of ids
+		 * @return pairs of names
+		 */
+		private List<String[]> decodePairs(List<Long> pairs) {
+			List<String[]> decoded = new ArrayList<String[]>();
+			for (long pair : pairs)
+				decoded.add(new String[] { names.name((int) (pair >>> 32)),
+						names.name((int) pair) });
+			return decoded;
+		}
+	}
+}